@@ -0,0 +1,200 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import lox.parse.MissingTokenException;
+import lox.parse.UnexpectedEofException;
+import lox.parse.UnexpectedTokenException;
+import lox.token.Tokens.Lexemes;
+import lox.token.UnexpectedCharacterException;
+import lox.token.UnterminatedStringException;
+import lox.util.Runs;
+
+/**
+ * Errors found in a program, recorded without throwing.
+ *
+ * The Scanner and Parser report each error as a code, an offset and an int
+ * argument (e.g. the unexpected character or lexeme) kept in parallel arrays,
+ * so a broken input with thousands of errors costs a few bytes per error
+ * instead of an exception each. Other errors are kept as the exceptions they
+ * are. Exception objects for the reported ones are only created by
+ * {@link #errors()}, e.g. for printing.
+ *
+ * Errors carried over from an earlier scan of an edited source are shared
+ * with the diagnostics of that scan, as runs of its store, not copied.
+ */
+public final class Diagnostics {
+
+    public enum Code {
+        UNEXPECTED_CHARACTER,
+        UNTERMINATED_STRING,
+        UNEXPECTED_EOF,
+        // the argument is the lexeme's ordinal
+        UNEXPECTED_TOKEN,
+        // the argument is missing(expected, actual)
+        MISSING_TOKEN,
+        // an error that was thrown or created as an exception, kept as is
+        THROWN,
+    }
+
+    private static final Code[] CODES = Code.values();
+    private static final Lexemes[] LEXEMES = Lexemes.values();
+    // runs next to an edit this short are copied rather than shared
+    private static final int SHORT_RUN = 64;
+
+    private final LineIndex lines;
+    // the errors reported here, and the runs of them and of other
+    // diagnostics' stores that make up the list of errors
+    private final Reported own = new Reported();
+    private final Runs<Reported> runs = new Runs<>();
+    private final List<Throwable> thrown = new ArrayList<>();
+
+    /**
+     * Diagnostics for errors that are only ever thrown.
+     */
+    public Diagnostics() {
+        this(null);
+    }
+
+    /**
+     * @param lines resolves the lines of reported errors
+     */
+    public Diagnostics(final LineIndex lines) {
+        this.lines = lines;
+    }
+
+    public void report(final Code code, final long offset, final int argument) {
+        own.add(code, offset, argument);
+        runs.add(own, own.size - 1, own.size, 0);
+    }
+
+    /**
+     * @returns the argument of a {@link Code#MISSING_TOKEN} error
+     */
+    public static int missing(final Lexemes expected, final Lexemes actual) {
+        return expected.ordinal() * LEXEMES.length + actual.ordinal();
+    }
+
+    public void report(final Throwable error) {
+        thrown.add(error);
+        report(Code.THROWN, 0, thrown.size() - 1);
+    }
+
+    /**
+     * Report the errors reported to {@code other} at offsets from {@code from}
+     * up to {@code to}, moved by {@code delta}. Thrown errors have no offset and
+     * are not copied. Without any, the errors of a scan are in offset order
+     * and are shared with {@code other} rather than copied.
+     */
+    public void addAll(final Diagnostics other, final long from, final long to, final long delta) {
+        if (other.thrown.isEmpty()) {
+            runs.addAll(other.runs, other.indexOf(from), other.indexOf(to), delta, SHORT_RUN, this::copy);
+            return;
+        }
+
+        for (int i = 0; i < other.size(); i++) {
+            final var code = other.code(i);
+            final long offset = other.offset(i);
+            if (code != Code.THROWN && offset >= from && offset < to) {
+                final int run = other.runs.find(i);
+                report(code, offset + delta, other.runs.store(run).arguments[other.runs.local(run, i)]);
+            }
+        }
+    }
+
+    public int size() {
+        return runs.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public Code code(final int index) {
+        final int run = runs.find(Objects.checkIndex(index, size()));
+        return CODES[runs.store(run).codes[runs.local(run, index)]];
+    }
+
+    public long offset(final int index) {
+        final int run = runs.find(Objects.checkIndex(index, size()));
+        return runs.store(run).offsets[runs.local(run, index)] + runs.delta(run);
+    }
+
+    /**
+     * @returns the error at {@code index} as an exception, created on demand
+     *          for reported errors
+     */
+    public Throwable error(final int index) {
+        final int run = runs.find(Objects.checkIndex(index, size()));
+        final int argument = runs.store(run).arguments[runs.local(run, index)];
+        return switch (code(index)) {
+            case UNEXPECTED_CHARACTER -> new UnexpectedCharacterException(argument, lines, offset(index));
+            case UNTERMINATED_STRING -> new UnterminatedStringException(null, lines, offset(index));
+            case UNEXPECTED_EOF -> new UnexpectedEofException();
+            case UNEXPECTED_TOKEN -> new UnexpectedTokenException(LEXEMES[argument].value());
+            case MISSING_TOKEN -> new MissingTokenException(
+                    LEXEMES[argument / LEXEMES.length].value(), LEXEMES[argument % LEXEMES.length].value());
+            case THROWN -> thrown.get(argument);
+        };
+    }
+
+    /**
+     * @returns every error as an exception, in the order they were found
+     */
+    public List<Throwable> errors() {
+        final var errors = new ArrayList<Throwable>(size());
+        for (int i = 0; i < size(); i++) {
+            errors.add(error(i));
+        }
+
+        return errors;
+    }
+
+    // index of the first error at or after offset
+    private int indexOf(final long offset) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (offset(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    // report errors from to to of store, moved by delta
+    private void copy(final Reported store, final int from, final int to, final long delta) {
+        for (int i = from; i < to; i++) {
+            report(CODES[store.codes[i]], store.offsets[i] + delta, store.arguments[i]);
+        }
+    }
+
+    private static final class Reported {
+        private byte[] codes = new byte[0];
+        private long[] offsets = new long[0];
+        // the argument of a reported error, or the index of a thrown one
+        private int[] arguments = new int[0];
+        private int size;
+
+        void add(final Code code, final long offset, final int argument) {
+            if (size == codes.length) {
+                final int capacity = Math.max(8, size * 2);
+                codes = Arrays.copyOf(codes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                arguments = Arrays.copyOf(arguments, capacity);
+            }
+
+            codes[size] = (byte) code.ordinal();
+            offsets[size] = offset;
+            arguments[size] = argument;
+            ++size;
+        }
+    }
+}
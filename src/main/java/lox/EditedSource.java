@@ -0,0 +1,140 @@
+package lox;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Objects;
+
+import lox.util.Cursor;
+import lox.util.PieceCursor;
+
+/**
+ * A char source after one or more edits, kept as a piece table.
+ *
+ * The text is a list of pieces, each a range of a char array: of the
+ * original text, or of the text an edit inserted. An edit splits the pieces
+ * at its ends and drops the ones it removes, so it takes time in the number
+ * of pieces rather than in the length of the text, and the unchanged text is
+ * shared with the source before the edit. Short neighbouring pieces are
+ * merged, so typing in one place does not leave a piece per keystroke.
+ */
+final class EditedSource implements Source {
+
+    // neighbouring pieces up to this many chars long together are merged
+    private static final int SHORT_PIECE = 4096;
+
+    private final char[][] arrays;
+    private final int[] froms;
+    // the offset of each piece, followed by the length of the text
+    private final long[] starts;
+
+    EditedSource(final char[] chars) {
+        this(chars.length == 0 ? new char[0][] : new char[][] { chars },
+                chars.length == 0 ? new int[0] : new int[] { 0 },
+                chars.length == 0 ? new long[] { 0 } : new long[] { 0, chars.length });
+    }
+
+    private EditedSource(final char[][] arrays, final int[] froms, final long[] starts) {
+        this.arrays = arrays;
+        this.froms = froms;
+        this.starts = starts;
+    }
+
+    @Override
+    public long length() {
+        return starts[arrays.length];
+    }
+
+    @Override
+    public Cursor cursor(final long start) {
+        return new PieceCursor(arrays, froms, starts, start);
+    }
+
+    @Override
+    public boolean charOffsets() {
+        return true;
+    }
+
+    @Override
+    public Source edit(final long offset, final long removed, final CharSequence inserted) {
+        Objects.checkFromIndexSize(offset, removed, length());
+        final var pieces = new Pieces(arrays.length + 3);
+        for (int i = 0; i < arrays.length && starts[i] < offset; i++) {
+            pieces.add(arrays[i], froms[i], (int) (Math.min(offset, starts[i + 1]) - starts[i]));
+        }
+        if (inserted.length() > 0) {
+            final var chars = inserted.toString().toCharArray();
+            pieces.add(chars, 0, chars.length);
+        }
+        final long resume = offset + removed;
+        for (int i = 0; i < arrays.length; i++) {
+            if (starts[i + 1] > resume) {
+                final int skip = (int) Math.max(0, resume - starts[i]);
+                pieces.add(arrays[i], froms[i] + skip, (int) (starts[i + 1] - starts[i]) - skip);
+            }
+        }
+
+        return pieces.source();
+    }
+
+    @Override
+    public void digest(final MessageDigest digest) {
+        for (int i = 0; i < arrays.length; i++) {
+            final int length = (int) (starts[i + 1] - starts[i]);
+            final var bytes = ByteBuffer.allocate(length * Character.BYTES);
+            bytes.asCharBuffer().put(arrays[i], froms[i], length);
+            digest.update(bytes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return cursor().text(0, length());
+    }
+
+    // the pieces of an edited source, merging short neighbours as they are added
+    private static final class Pieces {
+        private char[][] arrays;
+        private int[] froms;
+        private long[] starts;
+        private int count;
+
+        Pieces(final int capacity) {
+            arrays = new char[capacity][];
+            froms = new int[capacity];
+            starts = new long[capacity + 1];
+        }
+
+        void add(final char[] array, final int from, final int length) {
+            if (length == 0) {
+                return;
+            }
+
+            final int last = count - 1;
+            if (last >= 0 && starts[count] - starts[last] + length <= SHORT_PIECE) {
+                final int previous = (int) (starts[count] - starts[last]);
+                final var merged = Arrays.copyOfRange(arrays[last], froms[last], froms[last] + previous + length);
+                System.arraycopy(array, from, merged, previous, length);
+                arrays[last] = merged;
+                froms[last] = 0;
+                starts[count] += length;
+                return;
+            }
+
+            if (count == arrays.length) {
+                arrays = Arrays.copyOf(arrays, count * 2);
+                froms = Arrays.copyOf(froms, count * 2);
+                starts = Arrays.copyOf(starts, count * 2 + 1);
+            }
+            arrays[count] = array;
+            froms[count] = from;
+            starts[count + 1] = starts[count] + length;
+            ++count;
+        }
+
+        EditedSource source() {
+            return new EditedSource(Arrays.copyOf(arrays, count), Arrays.copyOf(froms, count),
+                    Arrays.copyOf(starts, count + 1));
+        }
+    }
+}
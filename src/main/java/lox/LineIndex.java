@@ -0,0 +1,174 @@
+package lox;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import lox.util.BinaryIo;
+import lox.util.Runs;
+
+/**
+ * The start offset of every line in a source, recorded by the Scanner as it
+ * passes each newline.
+ *
+ * Tokens and errors only carry offsets; line and column numbers are found by
+ * binary search when something actually asks for them, e.g. when an error is
+ * printed. Lines and columns are 1-based, columns are in the source's offset
+ * units.
+ *
+ * Like a {@link lox.token.TokenBuffer}, the index of an edited source shares
+ * the line starts before and after the edit with the index it was made from,
+ * as runs of that index's store; only the lines that were re-scanned are
+ * stored anew.
+ */
+public final class LineIndex {
+
+    // runs next to an edit this short are copied rather than shared
+    private static final int SHORT_RUN = 256;
+
+    // the line starts recorded by this index, and the runs of them and of
+    // other indexes' stores that make up its lines
+    private final Starts own = new Starts();
+    private final Runs<Starts> runs = new Runs<>();
+
+    public LineIndex() {
+        this(true);
+    }
+
+    // without the first line's start, for upTo and readFrom to fill in
+    private LineIndex(final boolean firstLine) {
+        if (firstLine) {
+            add(0);
+        }
+    }
+
+    /**
+     * Record that a new line starts at {@code offset}, i.e. just after a
+     * newline. Offsets must be added in increasing order.
+     */
+    public void add(final long offset) {
+        own.add(offset);
+        runs.add(own, own.size - 1, own.size, 0);
+    }
+
+    /**
+     * Append the line starts recorded by {@code following}, an index of a later
+     * part of the same source.
+     */
+    public void addAll(final LineIndex following) {
+        for (int i = 1; i < following.size(); i++) {
+            add(following.start(i));
+        }
+    }
+
+    /**
+     * Append the line starts of {@code other} after {@code offset}, moved by
+     * {@code delta}; used to carry over the unchanged end of an edited source.
+     * They are shared with {@code other}, not copied.
+     */
+    public void addAll(final LineIndex other, final long offset, final long delta) {
+        runs.addAll(other.runs, lineIndex(offset, other) + 1, other.size(), delta, SHORT_RUN, this::copy);
+    }
+
+    /**
+     * @returns an index holding only the line starts up to {@code offset},
+     *          shared with this one
+     */
+    public LineIndex upTo(final long offset) {
+        final var prefix = new LineIndex(false);
+        prefix.runs.addAll(runs, 0, lineIndex(offset, this) + 1, 0, SHORT_RUN, prefix::copy);
+        return prefix;
+    }
+
+    /**
+     * @returns the number of lines seen so far
+     */
+    public long lines() {
+        return size();
+    }
+
+    public long line(final long offset) {
+        return lineIndex(offset) + 1;
+    }
+
+    public long column(final long offset) {
+        return offset - start(lineIndex(offset)) + 1;
+    }
+
+    public Span span(final long offset, final long length) {
+        return Span.of(line(offset), offset, length);
+    }
+
+    /**
+     * Write the line starts to {@code out}, to be read back by
+     * {@link #readFrom(ByteBuffer)}.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        final var starts = new long[size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = start(i);
+        }
+        BinaryIo.writeLongs(out, starts, starts.length);
+    }
+
+    public static LineIndex readFrom(final ByteBuffer in) {
+        final var starts = BinaryIo.readLongs(in);
+        if (starts.length < 1 || starts[0] != 0) {
+            throw new IllegalArgumentException("invalid line starts");
+        }
+
+        final var lines = new LineIndex(false);
+        lines.own.starts = starts;
+        lines.own.size = starts.length;
+        lines.runs.add(lines.own, 0, starts.length, 0);
+        return lines;
+    }
+
+    private int size() {
+        return runs.size();
+    }
+
+    private long start(final int index) {
+        final int run = runs.find(index);
+        return runs.store(run).starts[runs.local(run, index)] + runs.delta(run);
+    }
+
+    // append line starts from to to of store, moved by delta
+    private void copy(final Starts store, final int from, final int to, final long delta) {
+        for (int i = from; i < to; i++) {
+            add(store.starts[i] + delta);
+        }
+    }
+
+    private int lineIndex(final long offset) {
+        return lineIndex(offset, this);
+    }
+
+    // index of the last line start at or before offset
+    private static int lineIndex(final long offset, final LineIndex lines) {
+        int low = 0;
+        int high = lines.size() - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (lines.start(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static final class Starts {
+        private long[] starts = new long[64];
+        private int size;
+
+        void add(final long offset) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            starts[size++] = offset;
+        }
+    }
+}
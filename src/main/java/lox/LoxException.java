@@ -1,19 +1,33 @@
 package lox;
 
+import lox.util.LogUtil;
+
+/**
+ * The base of every error in a Lox program.
+ *
+ * Evaluation errors are thrown to unwind out of the program, and the errors
+ * reported by the Scanner and Parser are created as exceptions for printing,
+ * so they don't capture a stack trace unless debugging (see
+ * {@link LogUtil#debug()}).
+ */
 public abstract class LoxException extends RuntimeException {
+
+    private static final boolean STACK_TRACES = LogUtil.debug();
+
     public LoxException() {
+        this(null, null);
     }
 
     public LoxException(String message) {
-        super(message);
+        this(message, null);
     }
 
     public LoxException(String message, Throwable cause) {
-        super(message, cause);
+        super(message, cause, true, STACK_TRACES);
     }
 
     public LoxException(Throwable cause) {
-        super(cause);
+        this(cause == null ? null : cause.toString(), cause);
     }
 
     @Override
@@ -5,20 +5,27 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
+import lox.eval.ConstantFolder;
 import lox.eval.EvalException;
 import lox.eval.EvaluationResult;
 import lox.eval.DoubleResult;
 import lox.eval.Interpreter;
 import lox.eval.NilResult;
+import lox.eval.Resolver;
 import lox.parse.Ast;
+import lox.parse.ParseCache;
 import lox.parse.ParseException;
 import lox.parse.Parser;
 import lox.token.Scanner;
 import lox.token.Token;
+import lox.vm.BytecodeCompiler;
+import lox.vm.Disassembler;
 
 public class Main {
 
@@ -29,9 +36,45 @@ public class Main {
         run,
     }
 
-    public static void main(String[] args) {
+    enum Flags {
+        // parse: print the tree after constant folding; run: print the folded
+        // program instead of running it
+        folded,
+        // run: print the bytecode of each statement instead of running it
+        disassemble,
+        // run: print the operator rewrites of the specializing engine to
+        // stderr after running
+        stats,
+    }
+
+    public static void main(String[] commandLine) {
+        // --flags may be given anywhere after the command
+        final var flags = EnumSet.noneOf(Flags.class);
+        final var positional = new ArrayList<String>();
+        var engine = Interpreter.Engine.TREE;
+        for (var arg : commandLine) {
+            if (arg.startsWith("--engine=") && !positional.isEmpty()) {
+                try {
+                    engine = Interpreter.Engine.valueOf(arg.substring("--engine=".length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown engine: " + arg);
+                    System.exit(1);
+                }
+            } else if (arg.startsWith("--") && !positional.isEmpty()) {
+                try {
+                    flags.add(Flags.valueOf(arg.substring(2)));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown flag: " + arg);
+                    System.exit(1);
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+        final String[] args = positional.toArray(String[]::new);
+
         if (args.length < 1) {
-            System.err.println("Usage: ./your_program.sh <command> [filename]");
+            System.err.println("Usage: ./your_program.sh <command> [--folded] [--disassemble] [--stats] [--engine=tree|closure|vm|jit|specializing] [filename]");
             System.err.println("Commands: tokenize, parse, evaluate (require filename), run (no filename)");
             System.exit(1);
         }
@@ -53,7 +96,7 @@ public class Main {
         String filename = args.length > 1 ? args[1] : null;
 
         int rc = 0;
-        Optional<String> fileContents;
+        Optional<Source> fileContents = Optional.empty();
         switch (command) {
             case tokenize:
                 fileContents = readFile(filename);
@@ -87,16 +130,14 @@ public class Main {
                     }
 
                     if (parse.isOk()) {
-                        for (var ast : parse.success()) {
-                            System.out.println(ast);
-                        }
+                        printAll(parse.success(), flags.contains(Flags.folded));
                     }
                 }
                 break;
             case evaluate:
                 fileContents = readFile(filename);
                 if (fileContents.isPresent()) {
-                    var result = new Interpreter(true).evaluate(fileContents.get());
+                    var result = new Interpreter(true, engine).evaluate(fileContents.get());
 
                     if (result.hasErr()) {
                         rc = determineErrorCode(result.error().stream());
@@ -117,8 +158,32 @@ public class Main {
                 if (filename != null) {
                     // Run file
                     fileContents = readFile(filename);
-                    if (fileContents.isPresent()) {
-                        var result = new Interpreter(false).evaluate(fileContents.get());
+                    if (fileContents.isPresent() && flags.contains(Flags.folded)) {
+                        var parse = new Parser(fileContents.get(), false).parse();
+                        if (parse.hasErr()) {
+                            rc = 65;
+                            for (var error : parse.error()) {
+                                System.err.println(error);
+                            }
+                        } else {
+                            printAll(parse.success(), true);
+                        }
+                    } else if (fileContents.isPresent() && flags.contains(Flags.disassemble)) {
+                        var parse = new Parser(fileContents.get(), false).parse();
+                        if (parse.hasErr()) {
+                            rc = 65;
+                            for (var error : parse.error()) {
+                                System.err.println(error);
+                            }
+                        } else {
+                            disassembleAll(parse.success());
+                        }
+                    } else if (fileContents.isPresent()) {
+                        var interpreter = new Interpreter(false, engine);
+                        var result = evaluate(fileContents.get(), interpreter);
+                        if (flags.contains(Flags.stats)) {
+                            System.err.print(interpreter.rewrites());
+                        }
 
                         if (result.hasErr()) {
                             rc = determineErrorCode(result.error().stream());
@@ -136,27 +201,28 @@ public class Main {
                     }
                 } else {
                     // Run REPL
-                    runRepl();
+                    runRepl(engine);
                 }
                 break;
         }
 
+        fileContents.ifPresent(Source::close);
         System.exit(rc);
 
     }
 
     /**
-     * Read file contents to a String.
+     * Map file contents to a Source.
      *
-     * Read the file contents and return the data as a String. If the file is empty,
-     * or there is an error reading the file, the Optional will be empty.
+     * The file is memory-mapped rather than read and decoded up front. If the file
+     * is empty, or there is an error reading the file, the Optional will be empty.
      */
-    private static Optional<String> readFile(String filename) {
-        String fileContents = null;
+    private static Optional<Source> readFile(String filename) {
+        Source fileContents = null;
         try {
             Path path = Path.of(filename);
             if (Files.size(path) > 0) {
-                fileContents = Files.readString(path);
+                fileContents = Source.map(path);
             }
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
@@ -165,9 +231,45 @@ public class Main {
         return Optional.ofNullable(fileContents);
     }
 
-    private static void runRepl() {
+    private static void printAll(final List<Ast> program, final boolean folded) {
+        final var folder = new ConstantFolder();
+        for (var ast : program) {
+            System.out.println(folded ? folder.fold(ast) : ast);
+        }
+    }
+
+    // as the VM engine compiles it, a statement at a time
+    private static void disassembleAll(final List<Ast> program) {
+        final var folder = new ConstantFolder();
+        final var resolver = new Resolver();
+        final var compiler = new BytecodeCompiler();
+        for (int i = 0; i < program.size(); i++) {
+            final var statement = folder.fold(program.get(i));
+            resolver.resolve(statement);
+            System.out.println("== statement " + i);
+            System.out.print(Disassembler.disassemble(compiler.compile(statement)));
+        }
+    }
+
+    // run a script, through the parse cache if one is configured
+    private static Result<Optional<EvaluationResult<?>>, List<Throwable>> evaluate(final Source source,
+            final Interpreter interpreter) {
+        final var cache = ParseCache.configured();
+        if (cache.isEmpty()) {
+            return interpreter.evaluate(source);
+        }
+
+        final var parse = cache.get().parse(source, false, interpreter.symbols());
+        if (parse.hasErr()) {
+            return new Result<>(null, parse.error());
+        }
+
+        return interpreter.evaluate(parse.success());
+    }
+
+    private static void runRepl(final Interpreter.Engine engine) {
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = new Interpreter(false, engine);
 
         System.out.print("> ");
         try {
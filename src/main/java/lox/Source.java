@@ -0,0 +1,162 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lox.util.CharCursor;
+import lox.util.Cursor;
+import lox.util.Utf8Cursor;
+
+/**
+ * Program text handed to the Scanner.
+ *
+ * A source is either an in-memory CharSequence or a memory-mapped UTF-8 file.
+ * Mapped sources are lexed straight from the mapping, without first decoding
+ * the whole file into a String, and may be larger than 2GB. Closing a mapped
+ * source unmaps it.
+ */
+public interface Source extends AutoCloseable {
+
+    long length();
+
+    /**
+     * @returns a new cursor positioned at {@code start}
+     */
+    Cursor cursor(long start);
+
+    /**
+     * @returns a new cursor positioned at the start of the source
+     */
+    default Cursor cursor() {
+        return cursor(0);
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Feed the source's code units to {@code digest}. Sources whose offsets
+     * are in different units, e.g. chars and UTF-8 bytes, feed different bytes
+     * for the same text.
+     */
+    default void digest(final MessageDigest digest) {
+        final var chars = cursor();
+        for (long i = 0; i < length(); i++) {
+            final int unit = chars.unitAt(i);
+            digest.update((byte) (unit >> 8));
+            digest.update((byte) unit);
+        }
+    }
+
+    /**
+     * @returns whether offsets are in chars, like the text of an edit; false
+     *          for a mapped source, whose offsets are UTF-8 bytes
+     */
+    boolean charOffsets();
+
+    /**
+     * @returns a new source with {@code removed} chars at {@code offset}
+     *          replaced by {@code inserted}. The unchanged text is shared with
+     *          this source, not copied.
+     * @throws UnsupportedOperationException if offsets are not in chars
+     */
+    default Source edit(final long offset, final long removed, final CharSequence inserted) {
+        throw new UnsupportedOperationException("cannot edit " + this + ": its offsets are not chars");
+    }
+
+    static Source of(final CharSequence text) {
+        final char[] chars = text.toString().toCharArray();
+        return new Source() {
+            @Override
+            public long length() {
+                return chars.length;
+            }
+
+            @Override
+            public Cursor cursor(long start) {
+                return new CharCursor(chars, (int) start);
+            }
+
+            @Override
+            public void digest(final MessageDigest digest) {
+                final var bytes = ByteBuffer.allocate(chars.length * Character.BYTES);
+                bytes.asCharBuffer().put(chars);
+                digest.update(bytes);
+            }
+
+            @Override
+            public boolean charOffsets() {
+                return true;
+            }
+
+            @Override
+            public Source edit(final long offset, final long removed, final CharSequence inserted) {
+                return new EditedSource(chars).edit(offset, removed, inserted);
+            }
+
+            @Override
+            public String toString() {
+                return new String(chars);
+            }
+        };
+    }
+
+    /**
+     * Map a UTF-8 file.
+     *
+     * @throws java.nio.charset.MalformedInputException if it is not valid
+     *         UTF-8, as reading it into a String would
+     */
+    static Source map(final Path path) throws IOException {
+        final var arena = Arena.ofShared();
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var segment = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            Utf8Cursor.validate(segment);
+            return new Source() {
+                @Override
+                public long length() {
+                    return segment.byteSize();
+                }
+
+                @Override
+                public Cursor cursor(long start) {
+                    return new Utf8Cursor(segment, start);
+                }
+
+                @Override
+                public void digest(final MessageDigest digest) {
+                    digest.update((byte) 0xff); // UTF-8 offsets
+                    for (long at = 0; at < segment.byteSize(); at += Integer.MAX_VALUE) {
+                        final long length = Math.min(Integer.MAX_VALUE, segment.byteSize() - at);
+                        digest.update(segment.asSlice(at, length).asByteBuffer());
+                    }
+                }
+
+                @Override
+                public boolean charOffsets() {
+                    return false;
+                }
+
+                @Override
+                public void close() {
+                    arena.close();
+                }
+
+                @Override
+                public String toString() {
+                    return path.toString();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package lox.eval;
 
 public class BooleanResult implements EvaluationResult<Boolean> {
-    private final Boolean value;
+    public static final BooleanResult TRUE = new BooleanResult(true);
+    public static final BooleanResult FALSE = new BooleanResult(false);
 
-    public BooleanResult(final Boolean value) {
+    private final boolean value;
+
+    private BooleanResult(final boolean value) {
         this.value = value;
     }
 
+    /**
+     * @returns the shared result for the value, without allocating
+     */
+    public static BooleanResult of(final boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     @Override
     public Boolean value() {
         return value;
     }
 
+    public boolean booleanValue() {
+        return value;
+    }
+
     @Override
     public String toString() {
-        return value.toString();
+        return Boolean.toString(value);
     }
 
 }
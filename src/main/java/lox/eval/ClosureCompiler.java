@@ -0,0 +1,723 @@
+package lox.eval;
+
+import lox.NotImplementedException;
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Stmt;
+import lox.token.DoubleToken;
+import lox.token.IdentifierToken;
+import lox.token.Symbol;
+import lox.token.Token;
+import lox.token.Tokens.Lexemes;
+import lox.util.Util;
+
+/**
+ * Compiles a folded and resolved program into a tree of executable nodes, for
+ * the {@link Interpreter.Engine#CLOSURE} engine.
+ *
+ * Each operator, statement and kind of variable access is a class of its own
+ * with its children already compiled, so running a node is a virtual call
+ * with no switch on the node type or the operator. Operators handle the
+ * common operand types inline and hand anything else to the Interpreter's
+ * shared operator code, which gives the result or error the tree-walking
+ * engine would.
+ *
+ * Nodes carry numbers unboxed, as {@link EvalState} does: a node evaluating
+ * to {@link EvalState#NUMBER} has its value in the state's number, which the
+ * node using it reads before evaluating anything else. Only
+ * {@link Node#execute(EvalState)} boxes, for whoever runs the compiled tree.
+ *
+ * Compiled with {@link RewriteStats}, for the
+ * {@link Interpreter.Engine#SPECIALIZING} engine, a binary operator is instead
+ * held in a {@link Slot}, in which it replaces itself with a node specialized
+ * to the operand types it sees.
+ */
+public final class ClosureCompiler {
+
+    /**
+     * A compiled node.
+     */
+    public interface Node {
+        /**
+         * @returns the value of the expression or statement, null if it has
+         *          none
+         */
+        EvaluationResult<?> execute(EvalState state);
+
+        /**
+         * As {@link #execute(EvalState)}, but a number may be
+         * {@link EvalState#NUMBER}.
+         */
+        default EvaluationResult<?> evaluate(final EvalState state) {
+            return execute(state);
+        }
+    }
+
+    // a node of this compiler, which evaluates numbers unboxed
+    interface Unboxed extends Node {
+        @Override
+        EvaluationResult<?> evaluate(EvalState state);
+
+        @Override
+        default EvaluationResult<?> execute(final EvalState state) {
+            return state.boxed(evaluate(state));
+        }
+    }
+
+    // null unless operators specialize
+    private final RewriteStats stats;
+
+    public ClosureCompiler() {
+        this(null);
+    }
+
+    public ClosureCompiler(final RewriteStats stats) {
+        this.stats = stats;
+    }
+
+    public Node compile(final Ast ast) {
+        return switch (ast) {
+            case Expr e -> compile(e);
+            case Var v -> new Declare(v.depth(), v.slot(), symbol(v.identifier()),
+                    v.initializer().map(this::compile).orElse(null));
+            case Block b -> {
+                final var statements = b.block().stream().map(this::compile).toArray(Node[]::new);
+                yield b.slots() == 0 ? new Sequence(statements) : new Scope(b.slots(), statements);
+            }
+            case Stmt.IfStmt i -> new If(compile(i.condition()), compile(i.thenStmt()),
+                    i.elseStmt().map(this::compile).orElse(null));
+            case Stmt.WhileStmt w -> new While(compile(w.condition()), compile(w.body()));
+            case Stmt.PrintStmt p -> new Print(compile(p.expr()));
+            case Stmt.ExprStmt e -> compile(e.expr());
+            // fails when run, as in the tree-walking engine
+            default -> new Unsupported(ast);
+        };
+    }
+
+    public Node compile(final Expr expr) {
+        return switch (expr) {
+            case Expr.Terminal t -> switch (t.token().lexeme()) {
+                case IDENTIFIER -> t.depth() < 0
+                        ? new Undefined(symbol(t.token()))
+                        : new Read(t.depth(), t.slot(), symbol(t.token()));
+                case NUMBER -> new NumberLiteral(((DoubleToken) t.token()).doubleValue());
+                case STRING, TRUE, FALSE, NIL -> new Literal(Interpreter.literal(t.token()));
+                // fails when run, as in the tree-walking engine
+                default -> new LiteralFallback(t.token());
+            };
+            case Expr.Group g -> compile(g.group());
+            case Expr.Unary u -> {
+                final var operand = compile(u.expr());
+                yield switch (u.token().lexeme()) {
+                    case MINUS -> new Negate(u.token(), operand);
+                    case BANG -> new Not(u.token(), operand);
+                    default -> new UnaryFallback(u.token(), operand);
+                };
+            }
+            case Expr.Binary b -> binary(b.op(), compile(b.left()), compile(b.right()));
+            case Expr.Logical l -> switch (l.op().lexeme()) {
+                case OR -> new Or(compile(l.left()), compile(l.right()));
+                default -> new And(compile(l.left()), compile(l.right()));
+            };
+            case Expr.Assignment a -> new Assign(a.depth(), a.slot(), symbol(a.identifier()),
+                    compile(a.expression()));
+        };
+    }
+
+    private Node binary(final Token op, final Node left, final Node right) {
+        if (stats != null) {
+            return new Slot(op, left, right, stats);
+        }
+
+        return switch (op.lexeme()) {
+            case PLUS -> new Add(op, left, right);
+            case MINUS -> new Subtract(op, left, right);
+            case STAR -> new Multiply(op, left, right);
+            case SLASH -> new Divide(op, left, right);
+            case EQUAL_EQUAL -> new Equal(op, left, right);
+            case BANG_EQUAL -> new NotEqual(op, left, right);
+            case LESS -> new Less(op, left, right);
+            case LESS_EQUAL -> new LessEqual(op, left, right);
+            case GREATER -> new Greater(op, left, right);
+            case GREATER_EQUAL -> new GreaterEqual(op, left, right);
+            default -> new BinaryFallback(op, left, right);
+        };
+    }
+
+    private static Symbol symbol(final Token token) {
+        return ((IdentifierToken) token).symbol();
+    }
+
+    // statements
+
+    record Declare(int depth, int slot, Symbol name, Node initializer) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            state.addVariable(depth, slot, name, initializer != null ? initializer.evaluate(state) : null);
+            return null;
+        }
+    }
+
+    // a block that declares nothing
+    record Sequence(Node[] statements) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            EvaluationResult<?> result = null;
+            for (var statement : statements) {
+                result = statement.evaluate(state);
+            }
+            return result;
+        }
+    }
+
+    record Scope(int slots, Node[] statements) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            state.push(slots);
+            try {
+                EvaluationResult<?> result = null;
+                for (var statement : statements) {
+                    result = statement.evaluate(state);
+                }
+                return result;
+            } finally {
+                state.pop();
+            }
+        }
+    }
+
+    record If(Node condition, Node thenStmt, Node elseStmt) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            if (Util.isTruthy(condition.evaluate(state))) {
+                return thenStmt.evaluate(state);
+            } else if (elseStmt != null) {
+                return elseStmt.evaluate(state);
+            }
+            return null;
+        }
+    }
+
+    record While(Node condition, Node body) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            while (Util.isTruthy(condition.evaluate(state))) {
+                body.evaluate(state);
+            }
+            return null;
+        }
+    }
+
+    record Print(Node expr) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            System.out.println(state.boxed(expr.evaluate(state)));
+            return null;
+        }
+    }
+
+    record Unsupported(Ast ast) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            throw new NotImplementedException(ast.toString());
+        }
+    }
+
+    // variables
+
+    record Literal(EvaluationResult<?> value) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return value;
+        }
+    }
+
+    record NumberLiteral(double value) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return state.unboxed(value);
+        }
+    }
+
+    record LiteralFallback(Token token) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return Interpreter.literal(token);
+        }
+    }
+
+    record Read(int depth, int slot, Symbol name) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return state.load(depth, slot, name);
+        }
+    }
+
+    // a use of a name not declared where it is used
+    record Undefined(Symbol name) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            throw new UndefinedVarException(name.name());
+        }
+    }
+
+    record Assign(int depth, int slot, Symbol name, Node value) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var result = value.evaluate(state);
+            state.assign(depth, slot, name, result);
+            return result;
+        }
+    }
+
+    // logical operators
+
+    record Or(Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var result = left.evaluate(state);
+            return Util.isTruthy(result) ? result : right.evaluate(state);
+        }
+    }
+
+    record And(Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var result = left.evaluate(state);
+            return !Util.isTruthy(result) ? result : right.evaluate(state);
+        }
+    }
+
+    // unary operators
+
+    record Negate(Token op, Node operand) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var value = operand.evaluate(state);
+            return value == EvalState.NUMBER ? state.unboxed(-state.number) : Interpreter.unary(op, value);
+        }
+    }
+
+    record Not(Token op, Node operand) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var value = operand.evaluate(state);
+            if (value == EvalState.NUMBER) {
+                // numbers are truthy
+                return BooleanResult.FALSE;
+            }
+            return value instanceof BooleanResult b ? BooleanResult.of(!b.booleanValue()) : Interpreter.unary(op, value);
+        }
+    }
+
+    record UnaryFallback(Token op, Node operand) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return Interpreter.unary(op, state.boxed(operand.evaluate(state)));
+        }
+    }
+
+    // binary operators; both operands are evaluated, left first, before any
+    // error is raised
+
+    record Add(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a + state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Subtract(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a - state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Multiply(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a * state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Divide(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a / state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Equal(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(DoubleResult.equal(a, state.number));
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NotEqual(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(!DoubleResult.equal(a, state.number));
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Less(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a < state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record LessEqual(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a <= state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record Greater(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a > state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record GreaterEqual(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a >= state.number);
+            }
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record BinaryFallback(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    /**
+     * The mutable child slot a parent holds for a binary operator that
+     * specializes itself to the operands it sees.
+     *
+     * The slot starts out holding an {@link Uninitialized} node. The first
+     * time it runs, that node replaces itself in the slot with a node of its
+     * own class for the operands: one per numeric operator, {@link
+     * StringConcat} for + on strings, else {@link Generic}. A number or string
+     * node that then sees other operands replaces itself with a generic one
+     * for good, so an operator is replaced at most twice. Each of these
+     * classes only does its own operation, guarded by an operand type check;
+     * none of them dispatches on what it has specialized to.
+     */
+    static final class Slot implements Unboxed {
+        private final RewriteStats stats;
+        private Node node;
+        // what node is, for the stats and tests only
+        private RewriteStats.Kind kind;
+
+        Slot(final Token op, final Node left, final Node right, final RewriteStats stats) {
+            this.stats = stats;
+            this.node = new Uninitialized(op, left, right, this);
+        }
+
+        /**
+         * @returns what the operator has specialized to, null until it first
+         *          runs
+         */
+        RewriteStats.Kind kind() {
+            return kind;
+        }
+
+        Node node() {
+            return node;
+        }
+
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            return node.evaluate(state);
+        }
+
+        // replace the uninitialized node by one for the operands l and r
+        void specialize(final Token op, final Node left, final Node right, final EvaluationResult<?> l,
+                final EvaluationResult<?> r) {
+            Node specialized = null;
+            if (l instanceof DoubleResult && r instanceof DoubleResult) {
+                specialized = number(op, left, right);
+            } else if (l instanceof StringResult && r instanceof StringResult && op.lexeme() == Lexemes.PLUS) {
+                specialized = new StringConcat(op, left, right, this);
+            }
+
+            if (specialized == null) {
+                generalize(op, left, right);
+            } else {
+                replace(specialized, specialized instanceof StringConcat
+                        ? RewriteStats.Kind.STRING
+                        : RewriteStats.Kind.NUMBER, op);
+            }
+        }
+
+        // replace a specialized node that saw other operands, and apply the
+        // operator to them
+        EvaluationResult<?> generalize(final Token op, final Node left, final Node right,
+                final EvaluationResult<?> l, final EvaluationResult<?> r) {
+            generalize(op, left, right);
+            return Interpreter.binary(op, l, r);
+        }
+
+        private void generalize(final Token op, final Node left, final Node right) {
+            replace(new Generic(op, left, right), RewriteStats.Kind.GENERIC, op);
+        }
+
+        private void replace(final Node node, final RewriteStats.Kind kind, final Token op) {
+            this.node = node;
+            this.kind = kind;
+            stats.rewrite(op.lexeme(), kind);
+        }
+
+        private Node number(final Token op, final Node left, final Node right) {
+            return switch (op.lexeme()) {
+                case PLUS -> new NumberAdd(op, left, right, this);
+                case MINUS -> new NumberSubtract(op, left, right, this);
+                case STAR -> new NumberMultiply(op, left, right, this);
+                case SLASH -> new NumberDivide(op, left, right, this);
+                case EQUAL_EQUAL -> new NumberEqual(op, left, right, this);
+                case BANG_EQUAL -> new NumberNotEqual(op, left, right, this);
+                case LESS -> new NumberLess(op, left, right, this);
+                case LESS_EQUAL -> new NumberLessEqual(op, left, right, this);
+                case GREATER -> new NumberGreater(op, left, right, this);
+                case GREATER_EQUAL -> new NumberGreaterEqual(op, left, right, this);
+                default -> null;
+            };
+        }
+    }
+
+    record Uninitialized(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final var x = EvalState.boxed(l, state.number);
+            final var y = state.boxed(right.evaluate(state));
+            slot.specialize(op, left, right, x, y);
+            return Interpreter.binary(op, x, y);
+        }
+    }
+
+    record Generic(Token op, Node left, Node right) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            return Interpreter.binary(op, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record StringConcat(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l instanceof StringResult x && r instanceof StringResult y) {
+                return new StringResult(x.value().toString() + y.value());
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberAdd(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a + state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberSubtract(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a - state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberMultiply(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a * state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberDivide(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return state.unboxed(a / state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberEqual(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(DoubleResult.equal(a, state.number));
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberNotEqual(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(!DoubleResult.equal(a, state.number));
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberLess(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a < state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberLessEqual(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a <= state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberGreater(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a > state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+
+    record NumberGreaterEqual(Token op, Node left, Node right, Slot slot) implements Unboxed {
+        @Override
+        public EvaluationResult<?> evaluate(final EvalState state) {
+            final var l = left.evaluate(state);
+            final double a = state.number;
+            final var r = right.evaluate(state);
+            if (l == EvalState.NUMBER && r == EvalState.NUMBER) {
+                return BooleanResult.of(a >= state.number);
+            }
+            return slot.generalize(op, left, right, EvalState.boxed(l, a), state.boxed(r));
+        }
+    }
+}
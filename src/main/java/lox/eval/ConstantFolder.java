@@ -0,0 +1,213 @@
+package lox.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Stmt;
+import lox.token.Token;
+import lox.token.Tokens;
+import lox.token.Tokens.Lexemes;
+import lox.util.Util;
+
+/**
+ * Folds constant expressions and removes branches that can never run, between
+ * the Parser and the Interpreter.
+ *
+ * Group, unary, binary and logical expressions over literals are replaced by a
+ * literal of their value, computed by the Interpreter's own operators. An
+ * operation that would fail is left as it is, so the program fails at runtime
+ * with the same error at the same point.
+ *
+ * An if statement with a constant condition is replaced by the branch that
+ * would run, and a while loop whose condition is constantly false by an empty
+ * block. The replacement evaluates to the same value as the statement, so the
+ * result of a program is unchanged too.
+ *
+ * Nodes that fold to themselves are reused rather than copied.
+ */
+public final class ConstantFolder {
+
+    // stands in for a statement that would do nothing; evaluates to null
+    private static final Block EMPTY = new Block(List.of());
+
+    public Ast fold(final Ast ast) {
+        return switch (ast) {
+            case Expr e -> fold(e);
+            case Var v -> {
+                final var initializer = v.initializer().orElse(null);
+                final var folded = initializer != null ? fold(initializer) : null;
+                yield folded == initializer ? v : new Var(v.identifier(), folded);
+            }
+            case Block b -> block(b);
+            case Stmt.IfStmt i -> ifStmt(i);
+            case Stmt.WhileStmt w -> whileStmt(w);
+            case Stmt.PrintStmt p -> {
+                final var expr = fold(p.expr());
+                yield expr == p.expr() ? p : new Stmt.PrintStmt(expr);
+            }
+            case Stmt.ExprStmt e -> {
+                final var expr = fold(e.expr());
+                yield expr == e.expr() ? e : new Stmt.ExprStmt(expr);
+            }
+            // not implemented by the Interpreter either
+            default -> ast;
+        };
+    }
+
+    public Expr fold(final Expr expr) {
+        return switch (expr) {
+            case Expr.Terminal t -> t;
+            case Expr.Group g -> {
+                final var inner = fold(g.group());
+                if (constant(inner) != null) {
+                    yield inner;
+                }
+                yield inner == g.group() ? g : new Expr.Group(inner);
+            }
+            case Expr.Unary u -> {
+                final var operand = fold(u.expr());
+                final var value = constant(operand);
+                final var folded = value != null ? literal(unary(u.token(), value), u) : null;
+                if (folded != null) {
+                    yield folded;
+                }
+                yield operand == u.expr() ? u : new Expr.Unary(u.token(), operand);
+            }
+            case Expr.Binary b -> {
+                final var left = fold(b.left());
+                final var right = fold(b.right());
+                final var leftValue = constant(left);
+                final var rightValue = constant(right);
+                final var folded = leftValue != null && rightValue != null
+                        ? literal(binary(b.op(), leftValue, rightValue), b)
+                        : null;
+                if (folded != null) {
+                    yield folded;
+                }
+                yield left == b.left() && right == b.right() ? b : new Expr.Binary(b.op(), left, right);
+            }
+            case Expr.Logical l -> {
+                final var left = fold(l.left());
+                final var right = fold(l.right());
+                final var value = constant(left);
+                if (value != null) {
+                    // the operand the logical expression would evaluate to
+                    final boolean or = l.op().lexeme() == Lexemes.OR;
+                    yield or == Util.isTruthy(value.value()) ? left : right;
+                }
+                yield left == l.left() && right == l.right() ? l : new Expr.Logical(left, l.op(), right);
+            }
+            case Expr.Assignment a -> {
+                final var value = fold(a.expression());
+                yield value == a.expression() ? a : new Expr.Assignment(a.identifier(), value);
+            }
+        };
+    }
+
+    private Ast block(final Block block) {
+        List<Ast> statements = null;
+        final int size = block.block().size();
+        for (int i = 0; i < size; i++) {
+            final var statement = block.block().get(i);
+            final var folded = fold(statement);
+            if (folded != statement && statements == null) {
+                statements = new ArrayList<>(block.block().subList(0, i));
+            }
+            // a block's value is its last statement's, so only that one has
+            // to stay when it does nothing
+            if (statements != null && (folded != EMPTY || i == size - 1)) {
+                statements.add(folded);
+            }
+        }
+
+        return statements == null ? block : new Block(statements);
+    }
+
+    private Ast ifStmt(final Stmt.IfStmt ifStmt) {
+        final var condition = fold(ifStmt.condition());
+        final var value = constant(condition);
+        if (value != null) {
+            if (Util.isTruthy(value.value())) {
+                return fold(ifStmt.thenStmt());
+            }
+            return ifStmt.elseStmt().map(this::fold).orElse(EMPTY);
+        }
+
+        final var thenStmt = fold(ifStmt.thenStmt());
+        final var elseStmt = ifStmt.elseStmt().map(this::fold).orElse(null);
+        if (condition == ifStmt.condition() && thenStmt == ifStmt.thenStmt()
+                && elseStmt == ifStmt.elseStmt().orElse(null)) {
+            return ifStmt;
+        }
+
+        return new Stmt.IfStmt(condition, thenStmt, elseStmt);
+    }
+
+    private Ast whileStmt(final Stmt.WhileStmt whileStmt) {
+        final var condition = fold(whileStmt.condition());
+        final var value = constant(condition);
+        if (value != null && !Util.isTruthy(value.value())) {
+            return EMPTY;
+        }
+
+        final var body = fold(whileStmt.body());
+        if (condition == whileStmt.condition() && body == whileStmt.body()) {
+            return whileStmt;
+        }
+
+        return new Stmt.WhileStmt(condition, body);
+    }
+
+    // the value of a literal, or null if the expression is not one
+    private static EvaluationResult<?> constant(final Expr expr) {
+        return expr instanceof Expr.Terminal t ? Interpreter.literal(t.token()) : null;
+    }
+
+    private static EvaluationResult<?> unary(final Token op, final EvaluationResult<?> operand) {
+        try {
+            return Interpreter.unary(op, operand);
+        } catch (EvalException e) {
+            // left for the Interpreter to report
+            return null;
+        }
+    }
+
+    private static EvaluationResult<?> binary(final Token op, final EvaluationResult<?> left,
+            final EvaluationResult<?> right) {
+        try {
+            return Interpreter.binary(op, left, right);
+        } catch (EvalException e) {
+            return null;
+        }
+    }
+
+    // a literal with the value, placed where the folded expression started;
+    // null if there is no value or it has no literal form
+    private static Expr literal(final EvaluationResult<?> value, final Expr folded) {
+        final var builder = switch (value) {
+            case null -> null;
+            case DoubleResult d -> Tokens.ofType(Lexemes.NUMBER).withValue(d.value());
+            case StringResult s -> Tokens.ofType(Lexemes.STRING).withValue(s.value().toString());
+            case BooleanResult b -> Tokens.ofType(b.value() ? Lexemes.TRUE : Lexemes.FALSE);
+            case NilResult n -> Tokens.ofType(Lexemes.NIL);
+            default -> null;
+        };
+
+        return builder != null ? new Expr.Terminal(builder.withOffset(offset(folded)).build()) : null;
+    }
+
+    private static long offset(final Expr expr) {
+        return switch (expr) {
+            case Expr.Terminal t -> t.token().offset();
+            case Expr.Group g -> offset(g.group());
+            case Expr.Unary u -> u.token().offset();
+            case Expr.Binary b -> offset(b.left());
+            case Expr.Logical l -> offset(l.left());
+            case Expr.Assignment a -> a.identifier().offset();
+        };
+    }
+}
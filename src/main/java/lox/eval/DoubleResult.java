@@ -1,14 +1,11 @@
 package lox.eval;
 
-import lox.token.DoubleToken;
-
 public class DoubleResult implements EvaluationResult<Double> {
-    private final Double value;
-    private final String original;
+    // unboxed, and formatted only when printed
+    private final double value;
 
-    public DoubleResult(Double value) {
+    public DoubleResult(final double value) {
         this.value = value;
-        this.original = value.toString();
     }
 
     @Override
@@ -16,8 +13,28 @@ public class DoubleResult implements EvaluationResult<Double> {
         return value;
     }
 
+    public double doubleValue() {
+        return value;
+    }
+
+    /**
+     * @returns whether the numbers are equal as Doubles are: NaN equals
+     *          itself, and 0.0 does not equal -0.0
+     */
+    public boolean equalTo(final DoubleResult other) {
+        return equal(value, other.value);
+    }
+
+    /**
+     * @returns whether the numbers are equal, as for {@link #equalTo(DoubleResult)}
+     */
+    public static boolean equal(final double a, final double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
     @Override
     public String toString() {
+        final var original = Double.toString(value);
         return original.endsWith(".0") ? original.substring(0, original.length() - 2) : original;
     }
 }
@@ -1,48 +1,242 @@
 package lox.eval;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
+import java.util.Arrays;
 
+import lox.token.Symbol;
+import lox.token.SymbolTable;
+
+/**
+ * The variables of a running program, as a stack of frames of slots.
+ *
+ * The Interpreter addresses a variable by the (depth, slot) the
+ * {@link Resolver} gave it: depth 0 is the global frame and each block that
+ * declares variables has the frame one deeper than the block around it, so a
+ * read or write is a direct array access. The frame of a block is reused by
+ * the next block at the same depth, e.g. the next time around a loop.
+ *
+ * Variables can also be declared and looked up by name, innermost frame
+ * first, for callers that have not resolved them.
+ *
+ * A number is kept unboxed, in a double beside its slot, so a loop counting
+ * in a variable does not allocate. The engines that evaluate here carry
+ * numbers the same way: an evaluation giving {@link #NUMBER} has its value in
+ * {@link #number}, until the next one. The public methods take and give
+ * {@link DoubleResult}s.
+ */
 public class EvalState {
-    private final Deque<Map<String, EvaluationResult<?>>> state;
+    private static final int INITIAL_SLOTS = 8;
+
+    /**
+     * The value of a slot, or of an evaluation, that is an unboxed number.
+     */
+    static final EvaluationResult<Double> NUMBER = () -> {
+        throw new IllegalStateException("unboxed number");
+    };
+
+    // the last evaluation that gave NUMBER gave this
+    double number;
+
+    // values and names of each frame's slots; a null value is undeclared, and
+    // a NUMBER one has its value in numbers
+    private EvaluationResult<?>[][] values = new EvaluationResult<?>[8][];
+    private double[][] numbers = new double[8][];
+    private Symbol[][] names = new Symbol[8][];
+    // slots in use in each frame
+    private int[] sizes = new int[8];
+    private int depth;
+    private final SymbolTable symbols;
 
     public EvalState() {
-        state = new ArrayDeque<>();
-        state.addFirst(new HashMap<>());
+        this(new SymbolTable());
+    }
+
+    public EvalState(final SymbolTable symbols) {
+        this.symbols = symbols;
+        values[0] = new EvaluationResult<?>[INITIAL_SLOTS];
+        numbers[0] = new double[INITIAL_SLOTS];
+        names[0] = new Symbol[INITIAL_SLOTS];
+    }
+
+    /**
+     * @returns {@link #NUMBER}, with {@code value} as its number
+     */
+    EvaluationResult<?> unboxed(final double value) {
+        number = value;
+        return NUMBER;
+    }
+
+    /**
+     * @returns the result of an evaluation, a number boxed
+     */
+    EvaluationResult<?> boxed(final EvaluationResult<?> value) {
+        return boxed(value, number);
+    }
+
+    /**
+     * @returns the result of an evaluation that gave {@code number} if it was
+     *          {@link #NUMBER}, a number boxed
+     */
+    static EvaluationResult<?> boxed(final EvaluationResult<?> value, final double number) {
+        return value == NUMBER ? new DoubleResult(number) : value;
     }
 
     public void push() {
-        state.addFirst(new HashMap<>());
+        push(0);
+    }
+
+    /**
+     * Enter a frame one deeper than the current one, with {@code slots}
+     * undeclared slots.
+     */
+    public void push(final int slots) {
+        if (++depth == values.length) {
+            values = Arrays.copyOf(values, depth * 2);
+            numbers = Arrays.copyOf(numbers, depth * 2);
+            names = Arrays.copyOf(names, depth * 2);
+            sizes = Arrays.copyOf(sizes, depth * 2);
+        }
+
+        if (values[depth] == null || values[depth].length < slots) {
+            values[depth] = new EvaluationResult<?>[Math.max(slots, INITIAL_SLOTS)];
+            numbers[depth] = new double[values[depth].length];
+            names[depth] = new Symbol[values[depth].length];
+        } else {
+            // left over from the last frame at this depth
+            Arrays.fill(values[depth], 0, Math.max(slots, sizes[depth]), null);
+        }
+        sizes[depth] = slots;
     }
 
     public void pop() {
-        state.removeFirst();
+        --depth;
+    }
+
+    /**
+     * @returns the value in a slot
+     * @throws UndefinedVarException if {@code name} has not been declared
+     *                               there, or {@code depth} is negative
+     */
+    public EvaluationResult<?> variable(final int depth, final int slot, final Symbol name) {
+        final var value = load(depth, slot, name);
+        return value == NUMBER ? new DoubleResult(number) : value;
+    }
+
+    /**
+     * As {@link #variable(int, int, Symbol)}, but a number is {@link #NUMBER}.
+     */
+    EvaluationResult<?> load(final int depth, final int slot, final Symbol name) {
+        final var value = depth >= 0 && slot < sizes[depth] ? values[depth][slot] : null;
+        if (value == null) {
+            throw new UndefinedVarException(name.name());
+        }
+
+        if (value == NUMBER) {
+            number = numbers[depth][slot];
+        }
+        return value;
+    }
+
+    /**
+     * Assign to a declared slot.
+     *
+     * @returns the previous value
+     * @throws UndefinedVarException as for {@link #variable(int, int, Symbol)}
+     */
+    public EvaluationResult<?> updateVariable(final int depth, final int slot, final Symbol name,
+            final EvaluationResult<?> value) {
+        final var previous = variable(depth, slot, name);
+        put(depth, slot, value);
+        return previous;
+    }
+
+    /**
+     * As {@link #updateVariable(int, int, Symbol, EvaluationResult)}, without
+     * the previous value; {@code value} may be {@link #NUMBER}.
+     */
+    void assign(final int depth, final int slot, final Symbol name, final EvaluationResult<?> value) {
+        if (depth < 0 || slot >= sizes[depth] || values[depth][slot] == null) {
+            throw new UndefinedVarException(name.name());
+        }
+
+        put(depth, slot, value);
+    }
+
+    /**
+     * Declare {@code name} in a slot of the current frame or, for globals, of
+     * frame 0; a null value declares it as nil. Within the engines,
+     * {@code value} may be {@link #NUMBER}.
+     */
+    public void addVariable(final int depth, final int slot, final Symbol name, final EvaluationResult<?> value) {
+        if (slot >= values[depth].length) {
+            // only the global frame and frames filled by name grow
+            final int length = Math.max(slot + 1, values[depth].length * 2);
+            values[depth] = Arrays.copyOf(values[depth], length);
+            numbers[depth] = Arrays.copyOf(numbers[depth], length);
+            names[depth] = Arrays.copyOf(names[depth], length);
+        }
+
+        put(depth, slot, value != null ? value : NilResult.NIL);
+        names[depth][slot] = name;
+        sizes[depth] = Math.max(sizes[depth], slot + 1);
     }
 
     public EvaluationResult<?> variable(final String varName) {
-        for (var context : state) {
-            if (context.containsKey(varName)) {
-                return context.get(varName);
+        return variable(symbols.intern(varName));
+    }
+
+    public EvaluationResult<?> variable(final Symbol varName) {
+        for (int d = depth; d >= 0; d--) {
+            final int slot = find(d, varName);
+            if (slot >= 0) {
+                return variable(d, slot, varName);
             }
         }
 
-        throw new UndefinedVarException(varName);
+        throw new UndefinedVarException(varName.name());
     }
 
     public EvaluationResult<?> updateVariable(final String name, final EvaluationResult<?> value) {
-        for (var context : state) {
-            if (context.containsKey(name)) {
-                return context.replace(name, value);
+        return updateVariable(symbols.intern(name), value);
+    }
+
+    public EvaluationResult<?> updateVariable(final Symbol name, final EvaluationResult<?> value) {
+        for (int d = depth; d >= 0; d--) {
+            final int slot = find(d, name);
+            if (slot >= 0) {
+                return updateVariable(d, slot, name, value);
             }
         }
 
-        throw new UndefinedVarException(name);
+        throw new UndefinedVarException(name.name());
     }
 
     public void addVariable(final String name, final EvaluationResult<?> value) {
-        state.getFirst().put(name, value != null ? value : new NilResult());
+        addVariable(symbols.intern(name), value);
+    }
+
+    public void addVariable(final Symbol name, final EvaluationResult<?> value) {
+        final int slot = find(depth, name);
+        addVariable(depth, slot >= 0 ? slot : sizes[depth], name, value);
+    }
+
+    // store a value, unboxing a number
+    private void put(final int depth, final int slot, final EvaluationResult<?> value) {
+        if (value == NUMBER || value instanceof DoubleResult) {
+            numbers[depth][slot] = value == NUMBER ? number : ((DoubleResult) value).doubleValue();
+            values[depth][slot] = NUMBER;
+        } else {
+            values[depth][slot] = value;
+        }
+    }
+
+    // the declared slot holding name in a frame, or -1
+    private int find(final int depth, final Symbol name) {
+        for (int slot = 0; slot < sizes[depth]; slot++) {
+            if (names[depth][slot] == name && values[depth][slot] != null) {
+                return slot;
+            }
+        }
+
+        return -1;
     }
 }
@@ -1,5 +1,6 @@
 package lox.eval;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Optional;
@@ -8,7 +9,9 @@ import java.util.List;
 import lox.LoxException;
 import lox.NotImplementedException;
 import lox.Result;
+import lox.Source;
 import lox.parse.Ast;
+import lox.parse.AstArena;
 import lox.parse.Expr;
 import lox.parse.Parser;
 import lox.parse.ParseException;
@@ -19,24 +22,80 @@ import lox.token.DoubleToken;
 import lox.token.Token;
 import lox.token.IdentifierToken;
 import lox.token.Tokens.Lexemes;
+import lox.jit.JitCompiler;
 import lox.util.Util;
+import lox.vm.BytecodeCompiler;
+import lox.vm.VirtualMachine;
 import lox.token.StringToken;
+import lox.token.SymbolTable;
 import lox.token.ValueToken;
 
 import static lox.util.LogUtil.trace;
+import static lox.util.LogUtil.tracing;
 
 public class Interpreter {
+
+    /**
+     * How statements are run once folded and resolved.
+     */
+    public enum Engine {
+        // walk the Ast
+        TREE,
+        // compile each statement with the ClosureCompiler and run that
+        CLOSURE,
+        // compile each statement to bytecode and run it on the VirtualMachine
+        VM,
+        // compile statements with loops to JVM bytecode, the others as CLOSURE
+        JIT,
+        // as CLOSURE, with operators that specialize to the operands they see
+        SPECIALIZING
+    }
+
     private final boolean expressionMode;
-    private final EvalState state = new EvalState();
+    private final Engine engine;
+    // shared by every evaluate() call so names resolve to the same symbols
+    private final SymbolTable symbols = new SymbolTable();
+    private final EvalState state = new EvalState(symbols);
+    private final ConstantFolder folder = new ConstantFolder();
+    private final Resolver resolver = new Resolver();
+    private final RewriteStats rewrites = new RewriteStats();
+    // only those the engine uses are created
+    private ClosureCompiler compiler;
+    private BytecodeCompiler bytecode;
+    private VirtualMachine vm;
+    private JitCompiler jit;
 
     public Interpreter(boolean expressionMode) {
+        this(expressionMode, Engine.TREE);
+    }
+
+    public Interpreter(boolean expressionMode, Engine engine) {
         this.expressionMode = expressionMode;
+        this.engine = engine;
+        switch (engine) {
+            case TREE -> {
+            }
+            case CLOSURE -> compiler = new ClosureCompiler();
+            case VM -> {
+                bytecode = new BytecodeCompiler();
+                vm = new VirtualMachine();
+            }
+            case JIT -> {
+                jit = new JitCompiler();
+                compiler = new ClosureCompiler();
+            }
+            case SPECIALIZING -> compiler = new ClosureCompiler(rewrites);
+        }
     }
 
     public Result<Optional<EvaluationResult<?>>, List<Throwable>> evaluate(final CharSequence source) {
+        return evaluate(Source.of(source));
+    }
+
+    public Result<Optional<EvaluationResult<?>>, List<Throwable>> evaluate(final Source source) {
         trace("evaluate: " + source);
 
-        var parser = new Parser(source, this.expressionMode).parse();
+        var parser = new Parser(source, this.expressionMode, symbols).parse();
 
         if (parser.hasErr()) {
             return new Result<>(null, parser.error());
@@ -49,12 +108,61 @@ public class Interpreter {
         return new Result<>(result, errors);
     }
 
+    /**
+     * @returns the table names are interned into; parse with it to evaluate
+     *          the result here
+     */
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * @returns the rewrites of the {@link Engine#SPECIALIZING} engine's
+     *          operators so far
+     */
+    public RewriteStats rewrites() {
+        return rewrites;
+    }
+
+    /**
+     * Evaluate a program held in an arena, parsed with {@link #symbols()}.
+     * Each top-level statement is turned into Ast objects just before it runs,
+     * so they can be collected as soon as it has.
+     */
+    public Result<Optional<EvaluationResult<?>>, List<Throwable>> evaluate(final AstArena program) {
+        final var errors = new ArrayList<Throwable>();
+        final var statements = new AbstractList<Ast>() {
+            @Override
+            public Ast get(final int index) {
+                return program.ast(program.statement(index));
+            }
+
+            @Override
+            public int size() {
+                return program.statementCount();
+            }
+        };
+
+        return new Result<>(eval(statements, errors), errors);
+    }
+
     private Optional<EvaluationResult<?>> eval(final List<Ast> tree, final List<Throwable> errors) {
         trace("eval");
         EvaluationResult result = null;
         for (var ast : tree) {
             try {
-                result = evalAst(ast);
+                // folded and resolved one statement at a time, just before it runs
+                final var statement = folder.fold(ast);
+                resolver.resolve(statement);
+                result = switch (engine) {
+                    case TREE -> state.boxed(evalAst(statement));
+                    case CLOSURE, SPECIALIZING -> compiler.compile(statement).execute(state);
+                    case VM -> vm.execute(bytecode.compile(statement));
+                    case JIT -> {
+                        final var compiled = jit.compile(statement, state);
+                        yield (compiled != null ? compiled : compiler.compile(statement)).execute(state);
+                    }
+                };
             } catch (ParseException e) {
                 errors.add(e);
             } catch (EvalException e) {
@@ -66,6 +174,9 @@ public class Interpreter {
         return Optional.ofNullable(result);
     }
 
+    // the tree is evaluated with numbers unboxed: an evaluation giving
+    // EvalState.NUMBER has its value in state.number, read before evaluating
+    // anything else
     private EvaluationResult<?> evalAst(final Ast ast) {
         trace("evalAst");
         return switch (ast) {
@@ -79,11 +190,21 @@ public class Interpreter {
 
     private EvaluationResult<?> evalBlock(final Block block) {
         trace("evalBlock");
-        this.state.push();
         EvaluationResult result = null;
+        // indexed rather than iterated, so running the block allocates nothing
+        final var statements = block.block();
+        if (block.slots() == 0) {
+            // declares nothing, so needs no frame
+            for (int i = 0; i < statements.size(); i++) {
+                result = evalAst(statements.get(i));
+            }
+            return result;
+        }
+
+        this.state.push(block.slots());
         try {
-            for (var s : block.block()) {
-                result = evalAst(s);
+            for (int i = 0; i < statements.size(); i++) {
+                result = evalAst(statements.get(i));
             }
         } finally {
             this.state.pop();
@@ -107,8 +228,7 @@ public class Interpreter {
     private EvaluationResult<?> ifStmt(Stmt.IfStmt ast) {
         trace("ifStmt");
         var cond = evalExpr(ast.condition());
-        var val = cond.value();
-        if (Util.isTruthy(val)) {
+        if (Util.isTruthy(cond)) {
             trace("executing then branch");
             return switch (ast.thenStmt()) {
                 case Stmt s -> evalStatement(s);
@@ -130,7 +250,7 @@ public class Interpreter {
 
     private EvaluationResult<?> whileStmt(Stmt.WhileStmt ast) {
         trace("whileStmt");
-        while (Util.isTruthy(evalExpr(ast.condition()).value())) {
+        while (Util.isTruthy(evalExpr(ast.condition()))) {
             trace("executing while body");
             switch (ast.body()) {
                 case Stmt s -> evalStatement(s);
@@ -143,7 +263,7 @@ public class Interpreter {
     }
 
     private EvaluationResult<?> printStmt(Stmt.PrintStmt ast) {
-        System.out.println(evalExpr(ast.expr()));
+        System.out.println(state.boxed(evalExpr(ast.expr())));
         return null;
     }
 
@@ -164,10 +284,10 @@ public class Interpreter {
     }
 
     private EvaluationResult<?> evalAssignment(final Expr.Assignment assignment) {
-        var id = ((IdentifierToken) assignment.identifier()).value();
+        var id = ((IdentifierToken) assignment.identifier()).symbol();
         var val = evalExpr(assignment.expression());
 
-        this.state.updateVariable(id, val);
+        this.state.assign(assignment.depth(), assignment.slot(), id, val);
 
         return val;
     }
@@ -178,12 +298,12 @@ public class Interpreter {
         var left = evalExpr(logical.left());
 
         if (lexeme == Lexemes.OR) {
-            if (Util.isTruthy(left.value())) {
+            if (Util.isTruthy(left)) {
                 return left;
             }
         } else {
             // lexeme == Lexemes.AND
-            if (!Util.isTruthy(left.value())) {
+            if (!Util.isTruthy(left)) {
                 return left;
             }
         }
@@ -193,30 +313,50 @@ public class Interpreter {
 
     private EvaluationResult<?> evalUnary(final Expr.Unary unary) {
         trace("evalUnary");
-        EvaluationResult<?> e = evalExpr(unary.expr());
-        var token = unary.token();
-        var lexeme = token.lexeme();
+        final var lexeme = unary.token().lexeme();
+        final var value = evalExpr(unary.expr());
+        if (value == EvalState.NUMBER && lexeme == Lexemes.MINUS) {
+            return state.unboxed(-state.number);
+        } else if (value == EvalState.NUMBER && lexeme == Lexemes.BANG) {
+            // numbers are truthy
+            return BooleanResult.FALSE;
+        }
+        return unary(unary.token(), state.boxed(value));
+    }
+
+    // the operators are shared with the ConstantFolder and the other
+    // engines, so every one of them gives exactly the same value or error
+    static EvaluationResult<?> unary(final Token op, final EvaluationResult<?> e) {
+        return unary(op.lexeme(), e);
+    }
+
+    /**
+     * Apply a unary operator.
+     *
+     * @throws EvalException if it does not apply to the operand
+     */
+    public static EvaluationResult<?> unary(final Lexemes lexeme, final EvaluationResult<?> e) {
         return switch (lexeme) {
             case Lexemes.BANG -> {
                 switch (e) {
                     case BooleanResult br -> {
                         // e.g. !true
-                        yield new BooleanResult(!(boolean) br.value());
+                        yield BooleanResult.of(!br.booleanValue());
                     }
                     case DoubleResult nr -> {
                         // e.g. !10
-                        yield new BooleanResult(false);
+                        yield BooleanResult.of(false);
                     }
                     case NilResult nr -> {
                         // e.g. !nil
-                        yield new BooleanResult(true);
+                        yield BooleanResult.of(true);
                     }
                     case null, default -> throw new EvalException("invalid operation " + lexeme.value() + " for " + e);
                 }
             }
             case Lexemes.MINUS -> {
                 if (e instanceof DoubleResult nr) {
-                    yield new DoubleResult(-nr.value());
+                    yield new DoubleResult(-nr.doubleValue());
                 } else {
                     throw new EvalException("invalid operation " + lexeme.value() + " for " + e);
                 }
@@ -227,9 +367,53 @@ public class Interpreter {
 
     private EvaluationResult<?> evalBinary(final Expr.Binary binary) {
         trace("evalBinary");
-        EvaluationResult<?> left = evalExpr(binary.left());
-        EvaluationResult<?> right = evalExpr(binary.right());
-        var lexeme = binary.op().lexeme();
+        final var left = evalExpr(binary.left());
+        final double a = state.number;
+        final var right = evalExpr(binary.right());
+        if (left == EvalState.NUMBER && right == EvalState.NUMBER) {
+            final var result = numbers(state, binary.op().lexeme(), a, state.number);
+            if (result != null) {
+                return result;
+            }
+        }
+        return binary(binary.op(), EvalState.boxed(left, a), state.boxed(right));
+    }
+
+    /**
+     * Apply a binary operator to two numbers, giving a number unboxed in
+     * {@code state}.
+     *
+     * @returns the result, or null if the operator does not apply to numbers
+     */
+    static EvaluationResult<?> numbers(final EvalState state, final Lexemes lexeme, final double a,
+            final double b) {
+        return switch (lexeme) {
+            case PLUS -> state.unboxed(a + b);
+            case MINUS -> state.unboxed(a - b);
+            case STAR -> state.unboxed(a * b);
+            case SLASH -> state.unboxed(a / b);
+            case EQUAL_EQUAL -> BooleanResult.of(DoubleResult.equal(a, b));
+            case BANG_EQUAL -> BooleanResult.of(!DoubleResult.equal(a, b));
+            case LESS -> BooleanResult.of(a < b);
+            case LESS_EQUAL -> BooleanResult.of(a <= b);
+            case GREATER -> BooleanResult.of(a > b);
+            case GREATER_EQUAL -> BooleanResult.of(a >= b);
+            default -> null;
+        };
+    }
+
+    static EvaluationResult<?> binary(final Token op, final EvaluationResult<?> left,
+            final EvaluationResult<?> right) {
+        return binary(op.lexeme(), left, right);
+    }
+
+    /**
+     * Apply a binary operator.
+     *
+     * @throws EvalException if it does not apply to the operands
+     */
+    public static EvaluationResult<?> binary(final Lexemes lexeme, final EvaluationResult<?> left,
+            final EvaluationResult<?> right) {
         return switch (lexeme) {
             case Lexemes.PLUS -> {
                 if (left instanceof StringResult lr && right instanceof StringResult rr) {
@@ -237,7 +421,7 @@ public class Interpreter {
                     yield new StringResult(lr.value().toString() + rr.value());
                 } else if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
                     // number addition
-                    yield new DoubleResult(lr.value() + rr.value());
+                    yield new DoubleResult(lr.doubleValue() + rr.doubleValue());
                 } else {
                     throw new EvalException("Operands must be two numbers or two strings.");
                 }
@@ -246,7 +430,7 @@ public class Interpreter {
                 // e.g. 1 - 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
                     // number addition
-                    yield new DoubleResult(lr.value() - rr.value());
+                    yield new DoubleResult(lr.doubleValue() - rr.doubleValue());
                 } else {
                     throw new EvalException("invalid operation " + lexeme);
                 }
@@ -255,7 +439,7 @@ public class Interpreter {
                 // e.g. 1 * 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
                     // number addition
-                    yield new DoubleResult(lr.value() * rr.value());
+                    yield new DoubleResult(lr.doubleValue() * rr.doubleValue());
                 } else {
                     throw new EvalException("invalid operation " + lexeme);
                 }
@@ -264,7 +448,7 @@ public class Interpreter {
                 // e.g. 1 / 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
                     // number addition
-                    yield new DoubleResult(lr.value() / rr.value());
+                    yield new DoubleResult(lr.doubleValue() / rr.doubleValue());
                 } else {
                     throw new EvalException("invalid operation " + lexeme);
                 }
@@ -272,31 +456,31 @@ public class Interpreter {
             case Lexemes.EQUAL_EQUAL -> {
                 // e.g. 1 == 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(lr.equalTo(rr));
                 } else if (left instanceof StringResult lr && right instanceof StringResult rr) {
-                    yield new BooleanResult(Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(Objects.equals(lr.value(), rr.value()));
                 } else if (left instanceof BooleanResult lr && right instanceof BooleanResult rr) {
-                    yield new BooleanResult(Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(lr.booleanValue() == rr.booleanValue());
                 } else {
-                    yield new BooleanResult(false);
+                    yield BooleanResult.of(false);
                 }
             }
             case Lexemes.BANG_EQUAL -> {
                 // e.g. 1 != 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(!Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(!lr.equalTo(rr));
                 } else if (left instanceof StringResult lr && right instanceof StringResult rr) {
-                    yield new BooleanResult(!Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(!Objects.equals(lr.value(), rr.value()));
                 } else if (left instanceof BooleanResult lr && right instanceof BooleanResult rr) {
-                    yield new BooleanResult(!Objects.equals(lr.value(), rr.value()));
+                    yield BooleanResult.of(lr.booleanValue() != rr.booleanValue());
                 } else {
-                    yield new BooleanResult(false);
+                    yield BooleanResult.of(false);
                 }
             }
             case Lexemes.LESS -> {
                 // e.g. 1 < 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(lr.value() < rr.value());
+                    yield BooleanResult.of(lr.doubleValue() < rr.doubleValue());
                 } else {
                     throw new EvalException("Operands must be numbers.");
                 }
@@ -304,7 +488,7 @@ public class Interpreter {
             case Lexemes.LESS_EQUAL -> {
                 // e.g. 1 <= 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(lr.value() <= rr.value());
+                    yield BooleanResult.of(lr.doubleValue() <= rr.doubleValue());
                 } else {
                     throw new EvalException("Operands must be numbers.");
                 }
@@ -312,7 +496,7 @@ public class Interpreter {
             case Lexemes.GREATER -> {
                 // e.g. 1 > 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(lr.value() > rr.value());
+                    yield BooleanResult.of(lr.doubleValue() > rr.doubleValue());
                 } else {
                     throw new EvalException("Operands must be numbers.");
                 }
@@ -320,7 +504,7 @@ public class Interpreter {
             case Lexemes.GREATER_EQUAL -> {
                 // e.g. 1 >= 2
                 if (left instanceof DoubleResult lr && right instanceof DoubleResult rr) {
-                    yield new BooleanResult(lr.value() >= rr.value());
+                    yield BooleanResult.of(lr.doubleValue() >= rr.doubleValue());
                 } else {
                     throw new EvalException("Operands must be numbers.");
                 }
@@ -332,27 +516,39 @@ public class Interpreter {
     private EvaluationResult<?> evalTerminal(final Expr.Terminal terminal) {
         trace("evalTerminal");
         Token token = terminal.token();
+        var result = switch (token.lexeme()) {
+            case IDENTIFIER -> state.load(terminal.depth(), terminal.slot(), ((IdentifierToken) token).symbol());
+            case NUMBER -> state.unboxed(((DoubleToken) token).doubleValue());
+            default -> literal(token);
+        };
+        if (tracing()) {
+            trace("evalTerminal result: " + state.boxed(result));
+        }
+        return result;
+    }
+
+    /**
+     * @returns the value of a literal token, or null for an identifier
+     */
+    static EvaluationResult<?> literal(final Token token) {
         Lexemes lexeme = token.lexeme();
-        var result = switch (lexeme) {
-            case NUMBER -> new DoubleResult(((DoubleToken) token).value());
+        return switch (lexeme) {
+            case NUMBER -> new DoubleResult(((DoubleToken) token).doubleValue());
             case STRING -> new StringResult(((StringToken) token).value());
-            case TRUE -> new BooleanResult(true);
-            case FALSE -> new BooleanResult(false);
-            case NIL -> new NilResult();
-            case IDENTIFIER -> {
-                var id = ((IdentifierToken) token).value();
-                yield state.variable(id);
-            }
+            case TRUE -> BooleanResult.of(true);
+            case FALSE -> BooleanResult.of(false);
+            case NIL -> NilResult.NIL;
+            case IDENTIFIER -> null;
             default -> throw new NotImplementedException(lexeme.toString());
         };
-        trace("evalTerminal result: " + result);
-        return result;
     }
 
     private EvaluationResult<?> evalVarDecl(Ast.Var varDecl) {
-        trace("evalVarDecl: " + varDecl.identifier());
+        if (tracing()) {
+            trace("evalVarDecl: " + varDecl.identifier());
+        }
         Optional<Expr> initializer = varDecl.initializer();
-        state.addVariable(((IdentifierToken) varDecl.identifier()).value(),
+        state.addVariable(varDecl.depth(), varDecl.slot(), ((IdentifierToken) varDecl.identifier()).symbol(),
                 initializer.isPresent() ? evalExpr(initializer.get()) : null);
 
         return null;
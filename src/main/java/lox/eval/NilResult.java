@@ -1,6 +1,9 @@
 package lox.eval;
 
 public class NilResult implements EvaluationResult<Void> {
+    // the one needed, as all nils are the same
+    public static final NilResult NIL = new NilResult();
+
     @Override
     public Void value() {
         return null;
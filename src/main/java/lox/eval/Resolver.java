@@ -0,0 +1,135 @@
+package lox.eval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Stmt;
+import lox.token.IdentifierToken;
+import lox.token.Symbol;
+import lox.token.Token;
+import lox.token.Tokens.Lexemes;
+
+/**
+ * Gives every variable declaration and use its (depth, slot) address in the
+ * {@link EvalState}, so the Interpreter never looks a name up.
+ *
+ * Declarations only appear directly in a block or at the top level, and a
+ * block's statements run in order, so the innermost scope declaring a name
+ * before a use is the one the name refers to when the use runs. A use with no
+ * such declaration is resolved to depth -1 and fails as an undefined variable
+ * without any lookup. It is not reported before it runs, because the
+ * statements before it still have to run first.
+ *
+ * Only blocks that declare something get a frame, and so a depth, of their
+ * own. The global scope is kept from one program to the next, as the global
+ * variables are.
+ */
+public final class Resolver {
+
+    // name to slot in each scope with a frame, the global scope first
+    private final List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+
+    public Resolver() {
+        scopes.add(new HashMap<>());
+    }
+
+    /**
+     * Resolve a top-level statement, declaring its globals for the statements
+     * after it.
+     */
+    public void resolve(final Ast ast) {
+        switch (ast) {
+            case Expr e -> resolve(e);
+            case Var v -> {
+                v.initializer().ifPresent(this::resolve);
+                final var scope = scopes.getLast();
+                final int slot = scope.computeIfAbsent(symbol(v.identifier()), name -> scope.size());
+                v.resolve(scopes.size() - 1, slot);
+            }
+            case Block b -> block(b);
+            case Stmt.IfStmt i -> {
+                resolve(i.condition());
+                resolve(i.thenStmt());
+                i.elseStmt().ifPresent(this::resolve);
+            }
+            case Stmt.WhileStmt w -> {
+                resolve(w.condition());
+                resolve(w.body());
+            }
+            case Stmt.PrintStmt p -> resolve(p.expr());
+            case Stmt.ExprStmt e -> resolve(e.expr());
+            // not implemented by the Interpreter either
+            default -> {
+            }
+        }
+    }
+
+    private void resolve(final Expr expr) {
+        switch (expr) {
+            case Expr.Terminal t -> {
+                if (t.token().lexeme() == Lexemes.IDENTIFIER) {
+                    final var name = symbol(t.token());
+                    final int depth = depth(name);
+                    t.resolve(depth, slot(depth, name));
+                }
+            }
+            case Expr.Group g -> resolve(g.group());
+            case Expr.Unary u -> resolve(u.expr());
+            case Expr.Binary b -> {
+                resolve(b.left());
+                resolve(b.right());
+            }
+            case Expr.Logical l -> {
+                resolve(l.left());
+                resolve(l.right());
+            }
+            case Expr.Assignment a -> {
+                resolve(a.expression());
+                final var name = symbol(a.identifier());
+                final int depth = depth(name);
+                a.resolve(depth, slot(depth, name));
+            }
+        }
+    }
+
+    private void block(final Block block) {
+        if (block.block().stream().noneMatch(Var.class::isInstance)) {
+            block.resolve(0);
+            block.block().forEach(this::resolve);
+            return;
+        }
+
+        scopes.add(new HashMap<>());
+        try {
+            block.block().forEach(this::resolve);
+            block.resolve(scopes.getLast().size());
+        } finally {
+            scopes.removeLast();
+        }
+    }
+
+    // the depth of the innermost scope declaring name, or -1
+    private int depth(final Symbol name) {
+        for (int depth = scopes.size() - 1; depth >= 0; depth--) {
+            if (scopes.get(depth).containsKey(name)) {
+                return depth;
+            }
+        }
+
+        return -1;
+    }
+
+    private int slot(final int depth, final Symbol name) {
+        return depth >= 0 ? scopes.get(depth).get(name) : 0;
+    }
+
+    private static Symbol symbol(final Token token) {
+        return ((IdentifierToken) token).symbol();
+    }
+}
@@ -0,0 +1,71 @@
+package lox.eval;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import lox.token.Tokens.Lexemes;
+
+/**
+ * Counts the rewrites of the self-specializing operator nodes of the
+ * {@link Interpreter.Engine#SPECIALIZING} engine, by operator and the kind of
+ * node rewritten to.
+ */
+public final class RewriteStats {
+
+    /**
+     * What an operator node has specialized to.
+     */
+    public enum Kind {
+        // both operands numbers: arithmetic or comparison on doubles
+        NUMBER,
+        // both operands strings, for +: concatenation
+        STRING,
+        // anything else, or a node that saw more than one kind of operands:
+        // the Interpreter's operator code
+        GENERIC
+    }
+
+    private final Map<Lexemes, int[]> counts = new EnumMap<>(Lexemes.class);
+
+    void rewrite(final Lexemes op, final Kind to) {
+        counts.computeIfAbsent(op, o -> new int[Kind.values().length])[to.ordinal()]++;
+    }
+
+    public int count(final Lexemes op, final Kind to) {
+        final var kinds = counts.get(op);
+        return kinds == null ? 0 : kinds[to.ordinal()];
+    }
+
+    public int total() {
+        int total = 0;
+        for (var kinds : counts.values()) {
+            for (var count : kinds) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * One line per operator and kind rewritten to, e.g.
+     *
+     * <pre>
+     * rewrites: 3
+     *   PLUS -> NUMBER: 2
+     *   PLUS -> GENERIC: 1
+     * </pre>
+     */
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder("rewrites: ").append(total()).append('\n');
+        counts.forEach((op, kinds) -> {
+            for (var kind : Kind.values()) {
+                if (kinds[kind.ordinal()] > 0) {
+                    sb.append("  ").append(op.name()).append(" -> ").append(kind).append(": ")
+                            .append(kinds[kind.ordinal()]).append('\n');
+                }
+            }
+        });
+        return sb.toString();
+    }
+}
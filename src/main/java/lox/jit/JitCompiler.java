@@ -0,0 +1,713 @@
+package lox.jit;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.attribute.CodeAttribute;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lox.eval.ClosureCompiler;
+import lox.eval.EvalState;
+import lox.eval.EvaluationResult;
+import lox.eval.NilResult;
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Stmt;
+import lox.token.DoubleToken;
+import lox.token.IdentifierToken;
+import lox.token.StringToken;
+import lox.token.Symbol;
+import lox.token.Token;
+import lox.token.Tokens.Lexemes;
+
+import static java.lang.constant.ConstantDescs.CD_Double;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_String;
+import static java.lang.constant.ConstantDescs.CD_boolean;
+import static java.lang.constant.ConstantDescs.CD_double;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+
+/**
+ * Compiles hot top-level statements to JVM bytecode, for the
+ * {@link lox.eval.Interpreter.Engine#JIT} engine.
+ *
+ * A statement is hot if it has a loop in it, as that is the only code that
+ * runs more than once. Each becomes a static method of its own hidden class,
+ * which HotSpot compiles like any other Java code once it has run enough. The
+ * class is not kept once the statement has run, so it can be unloaded.
+ *
+ * Locals of blocks become JVM locals, laid out as the frames of the
+ * {@link lox.vm.BytecodeCompiler}'s are. The globals the statement uses are
+ * read from the {@link EvalState} into JVM locals when it starts, and the ones
+ * it assigns are written back when it finishes, also when it fails, so the
+ * next statement sees them as the Interpreter would have left them. Values are
+ * as described in {@link JitRuntime}, but for numbers in variables that only
+ * ever hold numbers: a global holding one when the statement starts, or a
+ * local declared with one, that the statement only assigns numbers to. Those
+ * are kept as doubles in their JVM locals, and arithmetic and comparisons on
+ * them are done on doubles, boxing only where the value leaves them.
+ */
+public final class JitCompiler {
+
+    // a statement whose method has more bytecode than this is left to the
+    // closure engine: HotSpot does not compile methods over 8000 bytes of
+    // bytecode (-XX:-DontCompileHugeMethods), and they would only ever be
+    // interpreted
+    private static final int MAX_METHOD_SIZE = 8000;
+
+    private static final ClassDesc CD_STATEMENT = ClassDesc.of("lox.jit.Statement");
+    private static final ClassDesc CD_RUNTIME = ClassDesc.of(JitRuntime.class.getName());
+    private static final ClassDesc CD_STATE = ClassDesc.of(EvalState.class.getName());
+    private static final ClassDesc CD_RESULT = ClassDesc.of(EvaluationResult.class.getName());
+    private static final ClassDesc CD_SYMBOL = ClassDesc.of(Symbol.class.getName());
+    private static final ClassDesc CD_NIL = ClassDesc.of(NilResult.class.getName());
+
+    private static final MethodTypeDesc RUN = MethodTypeDesc.of(CD_RESULT, CD_STATE, CD_Object.arrayType());
+    private static final MethodTypeDesc UNARY = MethodTypeDesc.of(CD_Object, CD_Object);
+    private static final MethodTypeDesc BINARY = MethodTypeDesc.of(CD_Object, CD_Object, CD_Object);
+    private static final MethodTypeDesc TRUTHY = MethodTypeDesc.of(CD_boolean, CD_Object);
+    private static final MethodTypeDesc PRINT = MethodTypeDesc.of(CD_void, CD_Object);
+    private static final MethodTypeDesc GLOBAL = MethodTypeDesc.of(CD_Object, CD_STATE, CD_int, CD_SYMBOL);
+    private static final MethodTypeDesc STORE = MethodTypeDesc.of(CD_void, CD_STATE, CD_int, CD_SYMBOL, CD_Object);
+    private static final MethodTypeDesc RESULT = MethodTypeDesc.of(CD_RESULT, CD_Object);
+    private static final MethodTypeDesc FAILURE = MethodTypeDesc.of(
+            ClassDesc.of(RuntimeException.class.getName()), CD_String);
+    private static final MethodTypeDesc SAME = MethodTypeDesc.of(CD_boolean, CD_double, CD_double);
+    private static final MethodTypeDesc BOX = MethodTypeDesc.of(CD_Double, CD_double);
+    private static final MethodTypeDesc UNBOX = MethodTypeDesc.of(CD_double);
+
+    // the parameters and fixed locals of the compiled method; each variable
+    // has two JVM locals after them, room for a double
+    private static final int STATE = 0;
+    private static final int CONSTANTS = 1;
+    private static final int RESULT_LOCAL = 2;
+    private static final int THROWN = 3;
+    private static final int FIRST_LOCAL = 4;
+
+    /**
+     * A compiled statement.
+     */
+    private record Compiled(MethodHandle run, Object[] constants) implements ClosureCompiler.Node {
+        @Override
+        public EvaluationResult<?> execute(final EvalState state) {
+            try {
+                return (EvaluationResult<?>) run.invokeExact(state, constants);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    /**
+     * @param state the state the statement is to run in, whose globals
+     *              holding numbers it may keep as doubles
+     * @returns the statement compiled to JVM bytecode, or null if it is not
+     *          worth compiling or cannot be
+     */
+    public ClosureCompiler.Node compile(final Ast statement, final EvalState state) {
+        if (!hot(statement)) {
+            return null;
+        }
+
+        final var method = new Method();
+        if (!method.scan(statement)) {
+            return null;
+        }
+        method.type(state);
+
+        final byte[] bytes;
+        try {
+            bytes = ClassFile.of().build(CD_STATEMENT, cb -> cb
+                    .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+                    .withSuperclass(CD_Object)
+                    .withMethodBody("run", RUN, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                            code -> method.emit(code, statement)));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // e.g. a jump too far for the class file format
+            return null;
+        }
+        if (codeLength(bytes) > MAX_METHOD_SIZE) {
+            return null;
+        }
+
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            final var run = lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(EvaluationResult.class, EvalState.class, Object[].class));
+            return new Compiled(run, method.constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the length of the bytecode of the methods of a compiled class
+    private static int codeLength(final byte[] bytes) {
+        return ClassFile.of().parse(bytes).methods().stream()
+                .flatMap(method -> method.code().stream())
+                .mapToInt(code -> ((CodeAttribute) code).codeLength())
+                .max()
+                .orElse(0);
+    }
+
+    private static boolean hot(final Ast ast) {
+        return switch (ast) {
+            case Stmt.WhileStmt w -> true;
+            case Block b -> b.block().stream().anyMatch(JitCompiler::hot);
+            case Stmt.IfStmt i -> hot(i.thenStmt()) || i.elseStmt().map(JitCompiler::hot).orElse(false);
+            default -> false;
+        };
+    }
+
+    // the compilation of one statement
+    private static final class Method {
+
+        // a variable the statement uses; a number if it only ever holds
+        // numbers, and is so kept as a double
+        private static final class Variable {
+            boolean number = true;
+        }
+
+        // a value the statement stores in a variable: null for nil
+        private record Store(Variable variable, Expr value) {
+        }
+
+        final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndex = new LinkedHashMap<>();
+        // the JVM local caching each global the statement uses, and whether
+        // it assigns it
+        private final Map<Integer, Integer> globals = new LinkedHashMap<>();
+        private final Map<Integer, Symbol> globalNames = new LinkedHashMap<>();
+        private final Map<Integer, Boolean> assigned = new LinkedHashMap<>();
+        private final Map<Integer, Variable> globalVariables = new LinkedHashMap<>();
+        // the variable each declaration, read and assignment is of, and what
+        // is stored in them
+        private final Map<Ast, Variable> variables = new IdentityHashMap<>();
+        private final List<Store> stores = new ArrayList<>();
+        private Variable[] frame = new Variable[8];
+        // frame layout, as in the scan and again while emitting
+        private int[] bases = new int[8];
+        private int depth;
+        private int top;
+        private int maxLocals;
+
+        private CodeBuilder code;
+        private int firstBlockLocal;
+
+        /**
+         * Find the globals the statement uses and the locals it needs.
+         *
+         * @returns false if it cannot be compiled
+         */
+        boolean scan(final Ast ast) {
+            return switch (ast) {
+                case Expr e -> scan(e);
+                case Stmt.ExprStmt e -> scan(e.expr());
+                case Stmt.PrintStmt p -> scan(p.expr());
+                // only ever at the top level, where there is no loop
+                case Var v -> {
+                    if (v.depth() <= 0 || !v.initializer().map(this::scan).orElse(true)) {
+                        yield false;
+                    }
+                    final int index = bases[v.depth()] + v.slot();
+                    if (index >= frame.length) {
+                        frame = Arrays.copyOf(frame, Math.max(index + 1, frame.length * 2));
+                    }
+                    frame[index] = new Variable();
+                    variables.put(v, frame[index]);
+                    stores.add(new Store(frame[index], v.initializer().orElse(null)));
+                    yield true;
+                }
+                case Block b -> {
+                    enter(b);
+                    final boolean ok = b.block().stream().allMatch(s -> scan(s));
+                    leave(b);
+                    yield ok;
+                }
+                case Stmt.IfStmt i -> scan(i.condition()) && scan(i.thenStmt())
+                        && i.elseStmt().map(s -> scan(s)).orElse(true);
+                case Stmt.WhileStmt w -> scan(w.condition()) && scan(w.body());
+                default -> true;
+            };
+        }
+
+        private boolean scan(final Expr expr) {
+            return switch (expr) {
+                case Expr.Terminal t -> {
+                    if (t.token().lexeme() == Lexemes.IDENTIFIER) {
+                        variable(t, t.depth(), t.slot(), t.token(), false);
+                    }
+                    yield true;
+                }
+                case Expr.Group g -> scan(g.group());
+                case Expr.Unary u -> scan(u.expr());
+                case Expr.Binary b -> scan(b.left()) && scan(b.right());
+                case Expr.Logical l -> scan(l.left()) && scan(l.right());
+                case Expr.Assignment a -> {
+                    final var variable = variable(a, a.depth(), a.slot(), a.identifier(), true);
+                    if (variable != null) {
+                        stores.add(new Store(variable, a.expression()));
+                    }
+                    yield scan(a.expression());
+                }
+            };
+        }
+
+        // the variable read or assigned, or null if it is undefined
+        private Variable variable(final Ast use, final int depth, final int slot, final Token name,
+                final boolean assign) {
+            final Variable variable;
+            if (depth == 0) {
+                globalNames.putIfAbsent(slot, ((IdentifierToken) name).symbol());
+                assigned.merge(slot, assign, Boolean::logicalOr);
+                variable = globalVariables.computeIfAbsent(slot, s -> new Variable());
+            } else if (depth > 0 && bases[depth] + slot < frame.length) {
+                variable = frame[bases[depth] + slot];
+            } else {
+                variable = null;
+            }
+            if (variable != null) {
+                variables.put(use, variable);
+            }
+            return variable;
+        }
+
+        /**
+         * Find the variables that only ever hold numbers: all of them to
+         * start with, but for globals not holding one now, until none is
+         * stored anything else.
+         */
+        void type(final EvalState state) {
+            for (var entry : globalVariables.entrySet()) {
+                entry.getValue().number = JitRuntime.global(state, entry.getKey(),
+                        globalNames.get(entry.getKey())) instanceof Double;
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (var store : stores) {
+                    if (store.variable().number && (store.value() == null || !numeric(store.value()))) {
+                        store.variable().number = false;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        // whether the variable of a declaration, read or assignment is kept
+        // as a double
+        private boolean isDouble(final Ast use) {
+            final var variable = variables.get(use);
+            return variable != null && variable.number;
+        }
+
+        // whether the expression evaluates to a number, if it does not fail
+        private boolean numeric(final Expr expr) {
+            return switch (expr) {
+                case Expr.Terminal t -> t.token().lexeme() == Lexemes.NUMBER || isDouble(t);
+                case Expr.Group g -> numeric(g.group());
+                case Expr.Unary u -> u.token().lexeme() == Lexemes.MINUS;
+                case Expr.Binary b -> switch (b.op().lexeme()) {
+                    case MINUS, STAR, SLASH -> true;
+                    case PLUS -> numeric(b.left()) && numeric(b.right());
+                    default -> false;
+                };
+                case Expr.Assignment a -> numeric(a.expression());
+                case Expr.Logical l -> false;
+            };
+        }
+
+        // whether the expression can be evaluated as a double, without
+        // boxing the number
+        private boolean unboxed(final Expr expr) {
+            return switch (expr) {
+                case Expr.Terminal t -> t.token().lexeme() == Lexemes.NUMBER || isDouble(t);
+                case Expr.Group g -> unboxed(g.group());
+                case Expr.Unary u -> u.token().lexeme() == Lexemes.MINUS && numeric(u.expr());
+                case Expr.Binary b -> switch (b.op().lexeme()) {
+                    case PLUS, MINUS, STAR, SLASH -> numeric(b.left()) && numeric(b.right());
+                    default -> false;
+                };
+                case Expr.Assignment a -> isDouble(a);
+                case Expr.Logical l -> false;
+            };
+        }
+
+        // a comparison of two numbers
+        private boolean comparison(final Expr expr) {
+            return expr instanceof Expr.Binary b && switch (b.op().lexeme()) {
+                case EQUAL_EQUAL, BANG_EQUAL, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL ->
+                        numeric(b.left()) && numeric(b.right());
+                default -> false;
+            };
+        }
+
+        void emit(final CodeBuilder code, final Ast statement) {
+            this.code = code;
+            depth = top = 0;
+
+            // the locals of the blocks follow the cached globals
+            int local = FIRST_LOCAL;
+            for (var slot : globalNames.keySet()) {
+                globals.put(slot, local);
+                local += 2;
+            }
+            firstBlockLocal = local;
+
+            code.aconst_null().astore(RESULT_LOCAL);
+            for (var entry : globals.entrySet()) {
+                code.aload(STATE).loadConstant(entry.getKey());
+                constant(globalNames.get(entry.getKey()));
+                code.invokestatic(CD_RUNTIME, "global", GLOBAL);
+                if (globalVariables.get(entry.getKey()).number) {
+                    unbox();
+                    code.dstore(entry.getValue());
+                } else {
+                    code.astore(entry.getValue());
+                }
+            }
+            for (int i = 0; i < maxLocals; i++) {
+                code.aconst_null().astore(firstBlockLocal + 2 * i);
+            }
+
+            final Label start = code.newLabel();
+            final Label end = code.newLabel();
+            final Label handler = code.newLabel();
+            code.labelBinding(start);
+            statement(statement, true);
+            code.labelBinding(end);
+            writeBack();
+            code.aload(RESULT_LOCAL).invokestatic(CD_RUNTIME, "result", RESULT).areturn();
+
+            code.labelBinding(handler);
+            code.astore(THROWN);
+            writeBack();
+            code.aload(THROWN).athrow();
+            code.exceptionCatchAll(start, end, handler);
+        }
+
+        // store the assigned globals still defined back into the state
+        private void writeBack() {
+            for (var entry : globals.entrySet()) {
+                if (!assigned.get(entry.getKey())) {
+                    continue;
+                }
+                final Label skip = code.newLabel();
+                final boolean number = globalVariables.get(entry.getKey()).number;
+                if (!number) {
+                    code.aload(entry.getValue()).ifnull(skip);
+                }
+                code.aload(STATE).loadConstant(entry.getKey());
+                constant(globalNames.get(entry.getKey()));
+                if (number) {
+                    code.dload(entry.getValue());
+                    box();
+                } else {
+                    code.aload(entry.getValue());
+                }
+                code.invokestatic(CD_RUNTIME, "store", STORE);
+                code.labelBinding(skip);
+            }
+        }
+
+        private void statement(final Ast ast, final boolean tail) {
+            switch (ast) {
+                case Expr e -> {
+                    if (tail) {
+                        expression(e);
+                        code.astore(RESULT_LOCAL);
+                    } else if (unboxed(e)) {
+                        number(e);
+                        code.pop2();
+                    } else {
+                        expression(e);
+                        code.pop();
+                    }
+                }
+                case Stmt.ExprStmt e -> statement(e.expr(), tail);
+                case Stmt.PrintStmt p -> {
+                    expression(p.expr());
+                    code.invokestatic(CD_RUNTIME, "print", PRINT);
+                }
+                case Var v -> {
+                    if (isDouble(v)) {
+                        number(v.initializer().get());
+                        code.dstore(local(v.depth(), v.slot()));
+                    } else {
+                        if (v.initializer().isPresent()) {
+                            expression(v.initializer().get());
+                        } else {
+                            nil();
+                        }
+                        code.astore(local(v.depth(), v.slot()));
+                    }
+                }
+                case Block b -> {
+                    enter(b);
+                    final var statements = b.block();
+                    for (int i = 0; i < statements.size(); i++) {
+                        statement(statements.get(i), tail && i == statements.size() - 1);
+                    }
+                    leave(b);
+                }
+                case Stmt.IfStmt i -> {
+                    final Label otherwise = code.newLabel();
+                    final Label end = code.newLabel();
+                    condition(i.condition(), otherwise);
+                    statement(i.thenStmt(), tail);
+                    if (i.elseStmt().isPresent()) {
+                        code.goto_(end);
+                        code.labelBinding(otherwise);
+                        statement(i.elseStmt().get(), tail);
+                    } else {
+                        code.labelBinding(otherwise);
+                    }
+                    code.labelBinding(end);
+                }
+                case Stmt.WhileStmt w -> {
+                    final Label start = code.newBoundLabel();
+                    final Label end = code.newLabel();
+                    condition(w.condition(), end);
+                    statement(w.body(), false);
+                    code.goto_(start);
+                    code.labelBinding(end);
+                }
+                // fails when run, as in the tree-walking engine
+                default -> fail("unsupported", ast.toString());
+            }
+        }
+
+        // jump to otherwise if the condition is falsy
+        private void condition(final Expr condition, final Label otherwise) {
+            if (comparison(condition)) {
+                compare((Expr.Binary) condition, otherwise);
+            } else {
+                expression(condition);
+                code.invokestatic(CD_RUNTIME, "truthy", TRUTHY).ifeq(otherwise);
+            }
+        }
+
+        // jump to otherwise if the comparison of two numbers is false; a NaN
+        // operand makes all but != false
+        private void compare(final Expr.Binary comparison, final Label otherwise) {
+            number(comparison.left());
+            number(comparison.right());
+            switch (comparison.op().lexeme()) {
+                case EQUAL_EQUAL -> code.invokestatic(CD_RUNTIME, "same", SAME).ifeq(otherwise);
+                case BANG_EQUAL -> code.invokestatic(CD_RUNTIME, "same", SAME).ifne(otherwise);
+                case LESS -> code.dcmpg().ifge(otherwise);
+                case LESS_EQUAL -> code.dcmpg().ifgt(otherwise);
+                case GREATER -> code.dcmpl().ifle(otherwise);
+                case GREATER_EQUAL -> code.dcmpl().iflt(otherwise);
+                default -> throw new IllegalArgumentException("comparison " + comparison.op());
+            }
+        }
+
+        private void expression(final Expr expr) {
+            if (unboxed(expr) && !(expr instanceof Expr.Terminal t && t.token().lexeme() == Lexemes.NUMBER)) {
+                number(expr);
+                box();
+                return;
+            } else if (comparison(expr)) {
+                final Label otherwise = code.newLabel();
+                final Label end = code.newLabel();
+                compare((Expr.Binary) expr, otherwise);
+                code.getstatic(ConstantDescs.CD_Boolean, "TRUE", ConstantDescs.CD_Boolean).goto_(end);
+                code.labelBinding(otherwise);
+                code.getstatic(ConstantDescs.CD_Boolean, "FALSE", ConstantDescs.CD_Boolean);
+                code.labelBinding(end);
+                return;
+            }
+            switch (expr) {
+                case Expr.Terminal t -> {
+                    final var token = t.token();
+                    switch (token.lexeme()) {
+                        case IDENTIFIER -> read(t.depth(), t.slot(), token);
+                        case NUMBER -> constant(((DoubleToken) token).doubleValue());
+                        case STRING -> constant(((StringToken) token).value());
+                        case TRUE -> code.getstatic(ConstantDescs.CD_Boolean, "TRUE", ConstantDescs.CD_Boolean);
+                        case FALSE -> code.getstatic(ConstantDescs.CD_Boolean, "FALSE", ConstantDescs.CD_Boolean);
+                        case NIL -> nil();
+                        default -> fail("unsupported", token.lexeme().toString());
+                    }
+                }
+                case Expr.Group g -> expression(g.group());
+                case Expr.Unary u -> {
+                    expression(u.expr());
+                    code.invokestatic(CD_RUNTIME, switch (u.token().lexeme()) {
+                        case MINUS -> "negate";
+                        case BANG -> "not";
+                        default -> throw new IllegalArgumentException("unary " + u.token());
+                    }, UNARY);
+                }
+                case Expr.Binary b -> {
+                    expression(b.left());
+                    expression(b.right());
+                    code.invokestatic(CD_RUNTIME, switch (b.op().lexeme()) {
+                        case PLUS -> "add";
+                        case MINUS -> "subtract";
+                        case STAR -> "multiply";
+                        case SLASH -> "divide";
+                        case EQUAL_EQUAL -> "equal";
+                        case BANG_EQUAL -> "notEqual";
+                        case LESS -> "less";
+                        case LESS_EQUAL -> "lessEqual";
+                        case GREATER -> "greater";
+                        case GREATER_EQUAL -> "greaterEqual";
+                        default -> throw new IllegalArgumentException("binary " + b.op());
+                    }, BINARY);
+                }
+                case Expr.Logical l -> {
+                    // keep the left operand if it decides the result
+                    final Label end = code.newLabel();
+                    expression(l.left());
+                    code.dup().invokestatic(CD_RUNTIME, "truthy", TRUTHY);
+                    if (l.op().lexeme() == Lexemes.OR) {
+                        code.ifne(end);
+                    } else {
+                        code.ifeq(end);
+                    }
+                    code.pop();
+                    expression(l.right());
+                    code.labelBinding(end);
+                }
+                case Expr.Assignment a -> {
+                    expression(a.expression());
+                    assign(a.depth(), a.slot(), a.identifier());
+                }
+            }
+        }
+
+        // evaluate a numeric expression to a double
+        private void number(final Expr expr) {
+            if (!unboxed(expr)) {
+                expression(expr);
+                unbox();
+                return;
+            }
+            switch (expr) {
+                case Expr.Terminal t when t.token().lexeme() == Lexemes.NUMBER ->
+                        code.loadConstant(((DoubleToken) t.token()).doubleValue());
+                case Expr.Terminal t -> code.dload(local(t.depth(), t.slot()));
+                case Expr.Group g -> number(g.group());
+                case Expr.Unary u -> {
+                    number(u.expr());
+                    code.dneg();
+                }
+                case Expr.Binary b -> {
+                    number(b.left());
+                    number(b.right());
+                    switch (b.op().lexeme()) {
+                        case PLUS -> code.dadd();
+                        case MINUS -> code.dsub();
+                        case STAR -> code.dmul();
+                        case SLASH -> code.ddiv();
+                        default -> throw new IllegalArgumentException("binary " + b.op());
+                    }
+                }
+                case Expr.Assignment a -> {
+                    number(a.expression());
+                    code.dup2().dstore(local(a.depth(), a.slot()));
+                }
+                case Expr.Logical l -> throw new IllegalArgumentException("logical " + l.op());
+            }
+        }
+
+        private void box() {
+            code.invokestatic(CD_Double, "valueOf", BOX);
+        }
+
+        private void unbox() {
+            code.checkcast(CD_Double).invokevirtual(CD_Double, "doubleValue", UNBOX);
+        }
+
+        private void read(final int depth, final int slot, final Token name) {
+            if (depth < 0) {
+                fail("undefined", ((IdentifierToken) name).symbol().name());
+            } else if (depth == 0) {
+                final Label defined = code.newLabel();
+                code.aload(globals.get(slot)).dup().ifnonnull(defined);
+                code.pop();
+                fail("undefined", ((IdentifierToken) name).symbol().name());
+                code.labelBinding(defined);
+            } else {
+                code.aload(local(depth, slot));
+            }
+        }
+
+        // the value is on the stack, and stays there
+        private void assign(final int depth, final int slot, final Token name) {
+            if (depth < 0) {
+                fail("undefined", ((IdentifierToken) name).symbol().name());
+            } else if (depth == 0) {
+                final Label defined = code.newLabel();
+                code.aload(globals.get(slot)).ifnonnull(defined);
+                fail("undefined", ((IdentifierToken) name).symbol().name());
+                code.labelBinding(defined);
+                code.dup().astore(globals.get(slot));
+            } else {
+                code.dup().astore(local(depth, slot));
+            }
+        }
+
+        // throw the exception a JitRuntime method makes
+        private void fail(final String method, final String message) {
+            constant(message);
+            code.checkcast(CD_String).invokestatic(CD_RUNTIME, method, FAILURE).athrow();
+        }
+
+        private void nil() {
+            code.getstatic(CD_RUNTIME, "NIL", CD_NIL);
+        }
+
+        // load a constant, from the array passed in
+        private void constant(final Object value) {
+            final int index = constantIndex.computeIfAbsent(value instanceof Double d
+                    ? Double.doubleToRawLongBits(d) : value, v -> {
+                        constants.add(value);
+                        return constants.size() - 1;
+                    });
+            code.aload(CONSTANTS).loadConstant(index).aaload();
+            if (value instanceof Symbol) {
+                code.checkcast(CD_SYMBOL);
+            }
+        }
+
+        // the JVM local of a variable, a global or of a block
+        private int local(final int depth, final int slot) {
+            return depth == 0 ? globals.get(slot) : firstBlockLocal + 2 * (bases[depth] + slot);
+        }
+
+        private void enter(final Block block) {
+            if (block.slots() > 0) {
+                if (++depth == bases.length) {
+                    bases = Arrays.copyOf(bases, depth * 2);
+                }
+                bases[depth] = top;
+                top += block.slots();
+                maxLocals = Math.max(maxLocals, top);
+            }
+        }
+
+        private void leave(final Block block) {
+            if (block.slots() > 0) {
+                top = bases[depth--];
+            }
+        }
+    }
+}
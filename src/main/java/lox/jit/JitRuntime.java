@@ -0,0 +1,149 @@
+package lox.jit;
+
+import lox.NotImplementedException;
+import lox.eval.BooleanResult;
+import lox.eval.DoubleResult;
+import lox.eval.EvalState;
+import lox.eval.EvaluationResult;
+import lox.eval.Interpreter;
+import lox.eval.NilResult;
+import lox.eval.StringResult;
+import lox.eval.UndefinedVarException;
+import lox.token.Symbol;
+import lox.token.Tokens.Lexemes;
+
+/**
+ * What code compiled by the {@link JitCompiler} calls.
+ *
+ * In compiled code a Lox value is a JVM object: a number is a Double, a
+ * boolean a Boolean, a string a CharSequence and nil {@link #NIL}; numbers in
+ * variables that only hold numbers are doubles instead, and the code compiled
+ * for their operators does not call here, but for {@link #same}. Operators
+ * do numbers, and strings for +, directly; anything else is boxed into
+ * {@link EvaluationResult}s for the Interpreter's operator code, so the value
+ * or error is the one the Interpreter would give.
+ */
+final class JitRuntime {
+
+    static final NilResult NIL = NilResult.NIL;
+
+    private JitRuntime() {
+    }
+
+    static Object add(final Object l, final Object r) {
+        if (l instanceof Double a && r instanceof Double b) {
+            return a + b;
+        } else if (l instanceof CharSequence a && r instanceof CharSequence b) {
+            return a.toString() + b;
+        }
+        return binary(Lexemes.PLUS, l, r);
+    }
+
+    static Object subtract(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a - b : binary(Lexemes.MINUS, l, r);
+    }
+
+    static Object multiply(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a * b : binary(Lexemes.STAR, l, r);
+    }
+
+    static Object divide(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a / b : binary(Lexemes.SLASH, l, r);
+    }
+
+    static Object equal(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a.equals(b) : binary(Lexemes.EQUAL_EQUAL, l, r);
+    }
+
+    // whether numbers kept as doubles are equal, as Lox compares numbers
+    static boolean same(final double l, final double r) {
+        return Double.compare(l, r) == 0;
+    }
+
+    static Object notEqual(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? !a.equals(b) : binary(Lexemes.BANG_EQUAL, l, r);
+    }
+
+    static Object less(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a < b : binary(Lexemes.LESS, l, r);
+    }
+
+    static Object lessEqual(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a <= b : binary(Lexemes.LESS_EQUAL, l, r);
+    }
+
+    static Object greater(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a > b : binary(Lexemes.GREATER, l, r);
+    }
+
+    static Object greaterEqual(final Object l, final Object r) {
+        return l instanceof Double a && r instanceof Double b ? a >= b : binary(Lexemes.GREATER_EQUAL, l, r);
+    }
+
+    static Object negate(final Object operand) {
+        return operand instanceof Double d ? -d : unbox(Interpreter.unary(Lexemes.MINUS, box(operand)));
+    }
+
+    static Object not(final Object operand) {
+        return switch (operand) {
+            case Boolean b -> !b;
+            case Double d -> false;
+            case NilResult n -> true;
+            default -> unbox(Interpreter.unary(Lexemes.BANG, box(operand)));
+        };
+    }
+
+    static boolean truthy(final Object value) {
+        return value instanceof Boolean b ? b : value != NIL;
+    }
+
+    static void print(final Object value) {
+        System.out.println(box(value));
+    }
+
+    /**
+     * @returns the value of a global, or null if it is not defined
+     */
+    static Object global(final EvalState state, final int slot, final Symbol name) {
+        try {
+            return unbox(state.variable(0, slot, name));
+        } catch (UndefinedVarException e) {
+            return null;
+        }
+    }
+
+    static void store(final EvalState state, final int slot, final Symbol name, final Object value) {
+        state.updateVariable(0, slot, name, box(value));
+    }
+
+    // for the value of the statement: null if it has none
+    static EvaluationResult<?> result(final Object value) {
+        return value == null ? null : box(value);
+    }
+
+    static RuntimeException undefined(final String name) {
+        return new UndefinedVarException(name);
+    }
+
+    static RuntimeException unsupported(final String what) {
+        return new NotImplementedException(what);
+    }
+
+    private static Object binary(final Lexemes op, final Object l, final Object r) {
+        return unbox(Interpreter.binary(op, box(l), box(r)));
+    }
+
+    static EvaluationResult<?> box(final Object value) {
+        return switch (value) {
+            case Double d -> new DoubleResult(d);
+            case Boolean b -> BooleanResult.of(b);
+            case CharSequence s -> new StringResult(s);
+            case NilResult n -> n;
+            default -> throw new IllegalStateException("not a Lox value: " + value);
+        };
+    }
+
+    static Object unbox(final EvaluationResult<?> value) {
+        return value instanceof NilResult ? NIL : value.value();
+    }
+}
@@ -33,6 +33,9 @@ public abstract sealed class Ast permits
     public static final class Var extends Ast {
         private final Token identifier;
         private final Optional<Expr> initializer;
+        // where the variable is declared, once resolved
+        private int depth = -1;
+        private int slot;
 
         public Var(Token identifier) {
             this(identifier, null);
@@ -51,6 +54,23 @@ public abstract sealed class Ast permits
             return initializer;
         }
 
+        /**
+         * Set by the Resolver: the frame depth and slot the variable is
+         * declared in.
+         */
+        public void resolve(final int depth, final int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
         @Override
         public <T> T accept(AstVisitor<T> visitor) {
             return visitor.visitVar(this);
@@ -59,6 +79,7 @@ public abstract sealed class Ast permits
 
     public static final class Block extends Ast {
         private final List<Ast> block;
+        private int slots;
 
         public Block(final List<Ast> block) {
             this.block = block;
@@ -68,6 +89,18 @@ public abstract sealed class Ast permits
             return block;
         }
 
+        /**
+         * Set by the Resolver: the number of variables the block declares; it
+         * only needs a frame of its own if there are any.
+         */
+        public void resolve(final int slots) {
+            this.slots = slots;
+        }
+
+        public int slots() {
+            return slots;
+        }
+
         @Override
         public <T> T accept(AstVisitor<T> visitor) {
             return visitor.visitBlock(this);
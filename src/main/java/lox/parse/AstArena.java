@@ -0,0 +1,411 @@
+package lox.parse;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import lox.NotImplementedException;
+import lox.Source;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Clazz;
+import lox.parse.Ast.Func;
+import lox.parse.Ast.Var;
+import lox.parse.Stmt.ExprStmt;
+import lox.parse.Stmt.ForStmt;
+import lox.parse.Stmt.IfStmt;
+import lox.parse.Stmt.PrintStmt;
+import lox.parse.Stmt.ReturnStmt;
+import lox.parse.Stmt.WhileStmt;
+import lox.token.SymbolTable;
+import lox.token.Token;
+import lox.token.TokenBuffer;
+import lox.util.BinaryIo;
+
+/**
+ * A program's AST flattened into parallel primitive arrays.
+ *
+ * A node is an int id. Each node has a {@link Kind}, the index of its token in
+ * a {@link TokenBuffer} and up to three child ids, with -1 for a child or
+ * token it does not have. Optional children (a var's initializer, an if's
+ * else branch) are simply -1. The statements of a block, and the program's
+ * top-level statements, are a run of ids in a shared list array. A program
+ * of a million nodes is a handful of arrays of about 17 bytes per node,
+ * instead of a million node objects, their Tokens and Optionals.
+ *
+ * Nodes are read through the accessors by id, or turned back into regular
+ * {@link Ast} objects one subtree at a time with {@link #ast(int)}, so an
+ * {@link AstVisitor} or the Interpreter can walk a statement without the
+ * whole program ever being held as objects.
+ */
+public final class AstArena {
+
+    public enum Kind {
+        LOGICAL,
+        TERMINAL,
+        GROUP,
+        UNARY,
+        BINARY,
+        ASSIGNMENT,
+        EXPR_STMT,
+        PRINT_STMT,
+        IF_STMT,
+        WHILE_STMT,
+        VAR,
+        BLOCK,
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final TokenBuffer tokens;
+
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] tokenIndexes = new int[INITIAL_CAPACITY];
+    // children; a BLOCK keeps the start and length of its run in lists instead
+    private int[] first = new int[INITIAL_CAPACITY];
+    private int[] second = new int[INITIAL_CAPACITY];
+    private int[] third = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private int[] lists = new int[INITIAL_CAPACITY];
+    private int listSize;
+    private int statementsStart;
+    private int statementCount;
+
+    private AstArena(final TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Flatten {@code program}, parsed from the source of {@code tokens}.
+     */
+    public static AstArena of(final List<Ast> program, final TokenBuffer tokens) {
+        final var arena = new AstArena(tokens);
+        final var flattener = arena.new Flattener();
+        final var statements = new int[program.size()];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = flattener.node(program.get(i));
+        }
+        arena.statementsStart = arena.addList(statements);
+        arena.statementCount = statements.length;
+        arena.trim();
+
+        return arena;
+    }
+
+    /**
+     * Write the nodes and their tokens to {@code out}, to be read back by
+     * {@link #readFrom}.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        tokens.writeTo(out);
+        BinaryIo.writeBytes(out, kinds, size);
+        BinaryIo.writeInts(out, tokenIndexes, size);
+        BinaryIo.writeInts(out, first, size);
+        BinaryIo.writeInts(out, second, size);
+        BinaryIo.writeInts(out, third, size);
+        BinaryIo.writeInts(out, lists, listSize);
+        out.writeInt(statementsStart);
+        out.writeInt(statementCount);
+    }
+
+    /**
+     * Read an arena written by {@link #writeTo} for {@code source}, interning
+     * its identifiers into {@code symbols}.
+     *
+     * @throws IllegalArgumentException if the input is not a valid arena
+     */
+    public static AstArena readFrom(final ByteBuffer in, final Source source, final SymbolTable symbols) {
+        final var arena = new AstArena(TokenBuffer.readFrom(in, source, symbols));
+        arena.kinds = BinaryIo.readBytes(in);
+        arena.tokenIndexes = BinaryIo.readInts(in);
+        arena.first = BinaryIo.readInts(in);
+        arena.second = BinaryIo.readInts(in);
+        arena.third = BinaryIo.readInts(in);
+        arena.lists = BinaryIo.readInts(in);
+        arena.size = arena.kinds.length;
+        arena.listSize = arena.lists.length;
+        arena.statementsStart = BinaryIo.readCount(in, 0, arena.listSize);
+        arena.statementCount = BinaryIo.readCount(in, 0, arena.listSize - arena.statementsStart);
+        arena.validate();
+
+        return arena;
+    }
+
+    // check every id and index refers to something that exists, so a damaged
+    // arena fails here instead of while it is being walked
+    private void validate() {
+        if (tokenIndexes.length != size || first.length != size || second.length != size || third.length != size) {
+            throw new IllegalArgumentException("node arrays differ in length");
+        }
+
+        for (int node = 0; node < size; node++) {
+            if (kinds[node] < 0 || kinds[node] >= KINDS.length) {
+                throw new IllegalArgumentException("invalid node kind " + kinds[node]);
+            }
+
+            final var kind = kind(node);
+            final boolean hasToken = switch (kind) {
+                case LOGICAL, TERMINAL, UNARY, BINARY, ASSIGNMENT, VAR -> true;
+                default -> false;
+            };
+            check(hasToken ? tokenIndexes[node] >= 0 && tokenIndexes[node] < tokens.size()
+                    : tokenIndexes[node] == -1, node);
+
+            // children are added before their parents, so their ids are lower
+            switch (kind) {
+                case TERMINAL -> check(first[node] == -1 && second[node] == -1 && third[node] == -1, node);
+                case GROUP, UNARY, ASSIGNMENT, EXPR_STMT, PRINT_STMT ->
+                    check(isExpr(first[node], node) && second[node] == -1 && third[node] == -1, node);
+                case LOGICAL, BINARY ->
+                    check(isExpr(first[node], node) && isExpr(second[node], node) && third[node] == -1, node);
+                case VAR -> check((first[node] == -1 || isExpr(first[node], node))
+                        && second[node] == -1 && third[node] == -1, node);
+                case IF_STMT -> check(isExpr(first[node], node) && isStmt(second[node], node)
+                        && (third[node] == -1 || isStmt(third[node], node)), node);
+                case WHILE_STMT -> check(isExpr(first[node], node) && isStmt(second[node], node)
+                        && third[node] == -1, node);
+                case BLOCK -> {
+                    check(first[node] >= 0 && second[node] >= 0 && second[node] <= listSize - first[node]
+                            && third[node] == -1, node);
+                    for (int i = first[node]; i < first[node] + second[node]; i++) {
+                        check(isStmt(lists[i], node), node);
+                    }
+                }
+            }
+        }
+
+        for (int i = statementsStart; i < statementsStart + statementCount; i++) {
+            check(isStmt(lists[i], size), -1);
+        }
+    }
+
+    private boolean isExpr(final int id, final int parent) {
+        return id >= 0 && id < parent && kinds[id] <= Kind.ASSIGNMENT.ordinal();
+    }
+
+    private boolean isStmt(final int id, final int parent) {
+        return id >= 0 && id < parent;
+    }
+
+    private static void check(final boolean valid, final int node) {
+        if (!valid) {
+            throw new IllegalArgumentException("invalid node " + node);
+        }
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @returns the number of top-level statements
+     */
+    public int statementCount() {
+        return statementCount;
+    }
+
+    /**
+     * @returns the node id of the top-level statement at {@code index}
+     */
+    public int statement(final int index) {
+        return lists[statementsStart + Objects.checkIndex(index, statementCount)];
+    }
+
+    public Kind kind(final int node) {
+        return KINDS[kinds[node]];
+    }
+
+    /**
+     * @returns the index of the node's token in {@link #tokens()}, or -1
+     */
+    public int token(final int node) {
+        return tokenIndexes[node];
+    }
+
+    /**
+     * @returns the node's first child: the operand, left operand, condition,
+     *          initializer or assigned value; -1 if it has none
+     */
+    public int first(final int node) {
+        return kind(node) == Kind.BLOCK ? -1 : first[node];
+    }
+
+    /**
+     * @returns the node's second child: the right operand, then branch or loop
+     *          body; -1 if it has none
+     */
+    public int second(final int node) {
+        return kind(node) == Kind.BLOCK ? -1 : second[node];
+    }
+
+    /**
+     * @returns the node's third child, the else branch; -1 if it has none
+     */
+    public int third(final int node) {
+        return third[node];
+    }
+
+    /**
+     * @returns the number of statements in a BLOCK node
+     */
+    public int childCount(final int node) {
+        return kind(node) == Kind.BLOCK ? second[node] : 0;
+    }
+
+    /**
+     * @returns the id of statement {@code index} of a BLOCK node
+     */
+    public int child(final int node, final int index) {
+        return lists[first[node] + Objects.checkIndex(index, childCount(node))];
+    }
+
+    /**
+     * @returns the node and its descendants as regular Ast objects, created on
+     *          each call
+     */
+    public Ast ast(final int node) {
+        return switch (kind(node)) {
+            case EXPR_STMT -> new ExprStmt(expr(first[node]));
+            case PRINT_STMT -> new PrintStmt(expr(first[node]));
+            case IF_STMT -> new IfStmt(expr(first[node]), ast(second[node]),
+                    third[node] < 0 ? null : ast(third[node]));
+            case WHILE_STMT -> new WhileStmt(expr(first[node]), ast(second[node]));
+            case VAR -> new Var(tokenObject(node), first[node] < 0 ? null : expr(first[node]));
+            case BLOCK -> {
+                final var block = new ArrayList<Ast>(second[node]);
+                for (int i = 0; i < second[node]; i++) {
+                    block.add(ast(lists[first[node] + i]));
+                }
+                yield new Block(block);
+            }
+            default -> expr(node);
+        };
+    }
+
+    /**
+     * @returns the expression node and its descendants as regular Expr objects
+     */
+    public Expr expr(final int node) {
+        return switch (kind(node)) {
+            case LOGICAL -> new Expr.Logical(expr(first[node]), tokenObject(node), expr(second[node]));
+            case TERMINAL -> new Expr.Terminal(tokenObject(node));
+            case GROUP -> new Expr.Group(expr(first[node]));
+            case UNARY -> new Expr.Unary(tokenObject(node), expr(first[node]));
+            case BINARY -> new Expr.Binary(tokenObject(node), expr(first[node]), expr(second[node]));
+            case ASSIGNMENT -> new Expr.Assignment(tokenObject(node), expr(first[node]));
+            default -> throw new IllegalArgumentException("node " + node + " is a " + kind(node) + ", not an expression");
+        };
+    }
+
+    private Token tokenObject(final int node) {
+        return tokens.token(tokenIndexes[node]);
+    }
+
+    private int add(final Kind kind, final int token, final int a, final int b, final int c) {
+        if (size == kinds.length) {
+            final int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            third = Arrays.copyOf(third, capacity);
+        }
+
+        kinds[size] = (byte) kind.ordinal();
+        tokenIndexes[size] = token;
+        first[size] = a;
+        second[size] = b;
+        third[size] = c;
+        return size++;
+    }
+
+    private int addList(final int[] ids) {
+        if (listSize + ids.length > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listSize + ids.length));
+        }
+
+        System.arraycopy(ids, 0, lists, listSize, ids.length);
+        final int start = listSize;
+        listSize += ids.length;
+        return start;
+    }
+
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        tokenIndexes = Arrays.copyOf(tokenIndexes, size);
+        first = Arrays.copyOf(first, size);
+        second = Arrays.copyOf(second, size);
+        third = Arrays.copyOf(third, size);
+        lists = Arrays.copyOf(lists, listSize);
+    }
+
+    // copies an object tree into the arrays, children before their parent
+    private final class Flattener {
+
+        // the parser creates a node's tokens in source order, and so does
+        // node() walk them, so each one is found by stepping forward from the
+        // previous one's index rather than by searching the whole buffer
+        private int next;
+
+        private int index(final Token token) {
+            final long offset = token.offset();
+            while (next < tokens.size() && tokens.start(next) < offset) {
+                ++next;
+            }
+            if (next == tokens.size() || tokens.start(next) != offset) {
+                throw new IllegalArgumentException("no token at offset " + offset + " for " + token);
+            }
+
+            return next;
+        }
+
+        private int node(final Ast ast) {
+            return switch (ast) {
+                case null -> -1;
+                case Expr.Logical e -> {
+                    final int left = node(e.left());
+                    yield add(Kind.LOGICAL, index(e.op()), left, node(e.right()), -1);
+                }
+                case Expr.Terminal e -> add(Kind.TERMINAL, index(e.token()), -1, -1, -1);
+                case Expr.Group e -> add(Kind.GROUP, -1, node(e.group()), -1, -1);
+                case Expr.Unary e -> add(Kind.UNARY, index(e.token()), node(e.expr()), -1, -1);
+                case Expr.Binary e -> {
+                    final int left = node(e.left());
+                    yield add(Kind.BINARY, index(e.op()), left, node(e.right()), -1);
+                }
+                case Expr.Assignment e -> add(Kind.ASSIGNMENT, index(e.identifier()), node(e.expression()), -1, -1);
+                case ExprStmt s -> add(Kind.EXPR_STMT, -1, node(s.expr()), -1, -1);
+                case PrintStmt s -> add(Kind.PRINT_STMT, -1, node(s.expr()), -1, -1);
+                case IfStmt s -> {
+                    final int condition = node(s.condition());
+                    final int thenStmt = node(s.thenStmt());
+                    yield add(Kind.IF_STMT, -1, condition, thenStmt, node(s.elseStmt().orElse(null)));
+                }
+                case WhileStmt s -> {
+                    final int condition = node(s.condition());
+                    yield add(Kind.WHILE_STMT, -1, condition, node(s.body()), -1);
+                }
+                case Var v -> add(Kind.VAR, index(v.identifier()), node(v.initializer().orElse(null)), -1, -1);
+                case Block b -> {
+                    final var statements = new int[b.block().size()];
+                    for (int i = 0; i < statements.length; i++) {
+                        statements[i] = node(b.block().get(i));
+                    }
+                    yield add(Kind.BLOCK, -1, addList(statements), statements.length, -1);
+                }
+                case ReturnStmt s -> throw new NotImplementedException("return statement");
+                case ForStmt s -> throw new NotImplementedException("for statement");
+                case Clazz c -> throw new NotImplementedException("class");
+                case Func f -> throw new NotImplementedException("fun");
+            };
+        }
+    }
+}
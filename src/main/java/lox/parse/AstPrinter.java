@@ -106,8 +106,7 @@ public class AstPrinter implements AstVisitor<String> {
 
     @Override
     public String visitExprStmt(ExprStmt exprStmt) {
-        throw new UnsupportedOperationException(
-                "Unimplemented method 'visitExprStmt'");
+        return exprStmt.expr().toString();
     }
 
     @Override
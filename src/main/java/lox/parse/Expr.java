@@ -42,6 +42,9 @@ public abstract sealed class Expr extends Ast {
     public static final class Terminal extends Expr {
 
         private final Token token;
+        // where an IDENTIFIER's variable is, once resolved
+        private int depth = -1;
+        private int slot;
 
         public Terminal(Token token) {
             Objects.nonNull(token);
@@ -52,6 +55,23 @@ public abstract sealed class Expr extends Ast {
             return token;
         }
 
+        /**
+         * Set by the Resolver: the frame depth and slot of the variable, or a
+         * depth of -1 if it is not declared where it is used.
+         */
+        public void resolve(final int depth, final int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
         @Override
         public <T> T accept(AstVisitor<T> visitor) {
             return visitor.visitTerminal(this);
@@ -140,6 +160,9 @@ public abstract sealed class Expr extends Ast {
 
         private final Token id;
         private final Expr expr;
+        // where the variable is, once resolved
+        private int depth = -1;
+        private int slot;
 
         public Assignment(final Token id, final Expr expr) {
             this.id = id;
@@ -154,6 +177,23 @@ public abstract sealed class Expr extends Ast {
             return expr;
         }
 
+        /**
+         * Set by the Resolver: the frame depth and slot of the variable, or a
+         * depth of -1 if it is not declared where it is used.
+         */
+        public void resolve(final int depth, final int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
         @Override
         public <T> T accept(AstVisitor<T> visitor) {
             return visitor.visitAssignment(this);
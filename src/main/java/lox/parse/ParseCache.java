@@ -0,0 +1,183 @@
+package lox.parse;
+
+import static lox.util.LogUtil.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import lox.Result;
+import lox.Source;
+import lox.token.SymbolTable;
+
+/**
+ * A directory of parsed programs, so an unchanged script is not scanned and
+ * parsed again on every run.
+ *
+ * Each entry is an {@link AstArena} in binary form, named by a SHA-256 hash
+ * of the source's code units, the parse mode and {@link #VERSION}; a changed
+ * script or a new format simply misses. Entries are memory-mapped when read.
+ * An entry carries its key and a checksum and is checked through before it is
+ * used; one that does not check out is deleted and the script parsed again.
+ * Entries are written to a temporary file and moved into place, so readers
+ * never see a partial one. Programs with errors are not cached.
+ *
+ * Enabled for {@code run} with {@code -Dlox.cache=<directory>}.
+ */
+public final class ParseCache {
+
+    // bump whenever the serialized form or the meaning of a parse changes
+    static final int VERSION = 2;
+
+    private static final int MAGIC = 0x4c4f5841; // "LOXA"
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = Integer.BYTES * 2 + KEY_LENGTH;
+    private static final String SUFFIX = ".ast";
+
+    private final Path directory;
+
+    public ParseCache(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @returns the cache in the directory named by the {@code lox.cache}
+     *          system property, if it is set
+     */
+    public static Optional<ParseCache> configured() {
+        return Optional.ofNullable(System.getProperty("lox.cache"))
+                .filter(dir -> !dir.isEmpty())
+                .map(dir -> new ParseCache(Path.of(dir)));
+    }
+
+    /**
+     * Load the program from the cache or, on a miss, parse it and store it.
+     * Identifiers are interned into {@code symbols} either way.
+     */
+    public Result<AstArena, List<Throwable>> parse(final Source source, final boolean expressionMode,
+            final SymbolTable symbols) {
+        final byte[] key = key(source, expressionMode);
+        final Path entry = directory.resolve(HexFormat.of().formatHex(key) + SUFFIX);
+
+        final var cached = load(entry, key, source, symbols);
+        if (cached.isPresent()) {
+            return new Result<>(cached.get(), List.of());
+        }
+
+        final var result = new Parser(source, expressionMode, symbols).parseArena();
+        if (!result.hasErr()) {
+            store(entry, key, result.success());
+        }
+
+        return result;
+    }
+
+    Optional<AstArena> load(final Path entry, final byte[] key, final Source source, final SymbolTable symbols) {
+        if (!Files.isRegularFile(entry)) {
+            return Optional.empty();
+        }
+
+        try (var channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH + Integer.BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("bad length " + channel.size());
+            }
+
+            final ByteBuffer in = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            final int payloadEnd = in.limit() - Integer.BYTES;
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("not a version " + VERSION + " entry");
+            }
+            final var stored = new byte[KEY_LENGTH];
+            in.get(stored);
+            if (!MessageDigest.isEqual(stored, key)) {
+                throw new IllegalArgumentException("key mismatch");
+            }
+
+            final var crc = new CRC32C();
+            crc.update(in.slice(HEADER_LENGTH, payloadEnd - HEADER_LENGTH));
+            if ((int) crc.getValue() != in.getInt(payloadEnd)) {
+                throw new IllegalArgumentException("checksum mismatch");
+            }
+
+            final var arena = AstArena.readFrom(in.limit(payloadEnd), source, symbols);
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("trailing bytes");
+            }
+
+            trace("parse cache hit: " + entry);
+            return Optional.of(arena);
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException
+                | IndexOutOfBoundsException e) {
+            trace("discarding parse cache entry " + entry + ": " + e);
+            delete(entry);
+            return Optional.empty();
+        }
+    }
+
+    void store(final Path entry, final byte[] key, final AstArena arena) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+
+            final var crc = new CRC32C();
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(key);
+
+                // checksum the payload as it is written
+                final var payload = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(out, crc)));
+                arena.writeTo(payload);
+                payload.flush();
+                out.writeInt((int) crc.getValue());
+            }
+
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            trace("parse cache stored: " + entry);
+        } catch (IOException | RuntimeException e) {
+            // the cache is only an optimization; carry on without it
+            trace("parse cache not stored: " + e);
+            if (temp != null) {
+                delete(temp);
+            }
+        }
+    }
+
+    static byte[] key(final Source source, final boolean expressionMode) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update((byte) VERSION);
+        digest.update((byte) (expressionMode ? 1 : 0));
+        source.digest(digest);
+        return digest.digest();
+    }
+
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            trace(e);
+        }
+    }
+}
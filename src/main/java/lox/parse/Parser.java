@@ -1,368 +1,472 @@
 package lox.parse;
 
 import static lox.util.LogUtil.trace;
+import static lox.util.LogUtil.tracing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Optional;
-import lox.LoxException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import lox.Diagnostics;
+import lox.Diagnostics.Code;
 import lox.NotImplementedException;
 import lox.Result;
+import lox.Source;
 import lox.parse.Ast.Var;
 import lox.token.IdentifierToken;
 import lox.token.Scanner;
+import lox.token.SymbolTable;
 import lox.token.Token;
+import lox.token.TokenBuffer;
+import lox.token.TokenSet;
+import lox.token.TokenStream;
 import lox.token.Tokens.Lexemes;
-import lox.util.IterablePeekableIterator;
-import lox.util.PeekableIterator;
 
 public class Parser {
 
+    // programs at least this long are parsed in parallel, in about
+    // RANGES_PER_THREAD ranges of top-level declarations per pool thread
+    static final long PARALLEL_THRESHOLD = 1 << 20;
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static final TokenSet IDENTIFIER = TokenSet.of(Lexemes.IDENTIFIER);
+    private static final TokenSet UNARY = TokenSet.of(Lexemes.BANG, Lexemes.MINUS);
+    private static final TokenSet LITERAL = TokenSet.of(
+            Lexemes.TRUE, Lexemes.FALSE, Lexemes.NIL,
+            Lexemes.NUMBER, Lexemes.STRING, Lexemes.IDENTIFIER);
+
+    // how an infix operator combines its operands
+    @FunctionalInterface
+    private interface Infix {
+        Expr combine(Expr left, Token op, Expr right);
+    }
+
+    // binding power and handler of each binary operator, indexed by lexeme
+    // ordinal; 0 for a lexeme that is not one
+    private static final int LOWEST = 1;
+    private static final int[] POWERS = new int[Lexemes.values().length];
+    private static final Infix[] INFIX = new Infix[Lexemes.values().length];
+
+    static {
+        final Infix logical = Expr.Logical::new;
+        final Infix binary = (left, op, right) -> new Expr.Binary(op, left, right);
+        infix(LOWEST, logical, Lexemes.OR);
+        infix(LOWEST + 1, logical, Lexemes.AND);
+        infix(LOWEST + 2, binary, Lexemes.BANG_EQUAL, Lexemes.EQUAL_EQUAL);
+        infix(LOWEST + 3, binary, Lexemes.GREATER, Lexemes.GREATER_EQUAL, Lexemes.LESS_EQUAL, Lexemes.LESS);
+        infix(LOWEST + 4, binary, Lexemes.PLUS, Lexemes.MINUS);
+        infix(LOWEST + 5, binary, Lexemes.STAR, Lexemes.SLASH);
+    }
+
+    private static void infix(final int power, final Infix handler, final Lexemes... lexemes) {
+        for (var lexeme : lexemes) {
+            POWERS[lexeme.ordinal()] = power;
+            INFIX[lexeme.ordinal()] = handler;
+        }
+    }
+
     private final Scanner scanner;
-    private final CharSequence source;
+    private final Source source;
     private final boolean expressionMode;
 
     public Parser(final CharSequence source, boolean expressionMode) {
-        this.scanner = new Scanner();
+        this(Source.of(source), expressionMode);
+    }
+
+    public Parser(final Source source, boolean expressionMode) {
+        this(source, expressionMode, new SymbolTable());
+    }
+
+    public Parser(final Source source, boolean expressionMode, final SymbolTable symbols) {
+        this.scanner = new Scanner(symbols);
         this.source = source;
         this.expressionMode = expressionMode;
     }
 
     public Result<List<Ast>, List<Throwable>> parse() {
-        final var scanResult = scanner.scan(source);
-
-        if (scanResult.hasErr()) {
-            return new Result<>(Collections.emptyList(), scanResult.error());
+        if (parallel()) {
+            return parse(scanner.buffer(source, new ArrayList<>()));
         }
 
-        final var ast = new ArrayList<Ast>();
-        final var errors = new ArrayList<Throwable>();
+        return parseSequential();
+    }
 
-        if (scanResult.isOk()) {
-            final var tokens = scanResult.success();
+    private Result<List<Ast>, List<Throwable>> parseSequential() {
+        // tokens are scanned as the parser pulls them, so only the AST is kept
+        final var tokens = scanner.stream(source);
+        final var scanErrors = tokens.diagnostics();
+        final var result = program(tokens, scanErrors);
 
-            final var it = new IterablePeekableIterator<Token>(tokens);
+        if (!scanErrors.isEmpty()) {
+            // parsing stops at the first scan error; keep scanning to report the rest
+            while (tokens.hasNext()) {
+                tokens.next();
+            }
+            tokens.release();
 
-            return program(it, errors);
+            return new Result<>(Collections.emptyList(), scanErrors.errors());
         }
 
-        return new Result<>(ast, errors);
+        // the AST no longer needs the source
+        tokens.release();
+        return result;
     }
 
-    private Result<List<Ast>, List<Throwable>> program(
-            final PeekableIterator<Token> tokens,
-            List<Throwable> errors) {
-        final var nodes = new ArrayList<Ast>();
-        while (tokens.hasNext()) {
-            try {
-                trace("next: " + tokens.peek().get());
-                nodes.add(declaration(tokens));
-            } catch (LoxException e) {
-                errors.add(e);
-            }
+    /**
+     * Parse into a compact {@link AstArena}. The source is scanned once into a
+     * {@link TokenBuffer}, which is parsed and then kept as the arena's
+     * tokens; the object tree is only held until it is flattened.
+     */
+    public Result<AstArena, List<Throwable>> parseArena() {
+        final var tokens = scanner.buffer(source, new ArrayList<>());
+        final var result = parse(tokens);
+        if (result.hasErr()) {
+            return new Result<>(null, result.error());
         }
 
-        return new Result<>(nodes, errors);
+        return new Result<>(AstArena.of(result.success(), tokens), result.error());
     }
 
-    private Ast declaration(final PeekableIterator<Token> tokens) {
-        trace("declaration");
-        try {
-            final var token = tokens.peek().get();
-            return switch (token.lexeme()) {
-                case CLASS -> classDecl(tokens);
-                case FUN -> funDecl(tokens);
-                case VAR -> varDecl(tokens);
-                default -> this.expressionMode
-                        ? expression(tokens)
-                        : statement(tokens);
-            };
-        } catch (NoSuchElementException e) {
-            throw new UnexpectedEofException();
+    // parse scanned tokens: in parallel if the program is large enough and
+    // parses cleanly, otherwise in one pass over the buffer
+    private Result<List<Ast>, List<Throwable>> parse(final TokenBuffer tokens) {
+        if (parallel()) {
+            final var result = parse(tokens, ranges());
+            if (result != null) {
+                return result;
+            }
+        }
+
+        final var scanErrors = tokens.diagnostics();
+        if (!scanErrors.isEmpty()) {
+            // as when parsing while scanning, only the scan errors are reported
+            return new Result<>(Collections.emptyList(), scanErrors.errors());
         }
+
+        return program(tokens.stream(0, tokens.size()), scanErrors);
     }
 
-    private Ast classDecl(final PeekableIterator<Token> tokens) {
-        throw new NotImplementedException("class");
+    private boolean parallel() {
+        return !expressionMode
+                && source.length() >= PARALLEL_THRESHOLD
+                && ForkJoinPool.getCommonPoolParallelism() > 1;
     }
 
-    private Ast funDecl(final PeekableIterator<Token> tokens) {
-        throw new NotImplementedException("fun");
+    private static int ranges() {
+        return ForkJoinPool.getCommonPoolParallelism() * RANGES_PER_THREAD;
     }
 
-    // varDecl → "var" IDENTIFIER ( "=" expression )? ";" ;
-    private Ast varDecl(final PeekableIterator<Token> tokens) {
-        trace("varDecl");
-        var varDecl = tokens.next(); // eat 'var' keyword
-        assert varDecl.lexeme() == Lexemes.VAR : "expected 'var' keyword";
-
-        final var idToken = tokens.nextIf(
-                t -> t.lexeme() == Lexemes.IDENTIFIER);
-        if (idToken.isPresent()) {
-            final var id = idToken.get();
-            Expr initializer = null;
-            if (tokens.nextIf(t -> t.lexeme() == Lexemes.EQUAL).isPresent()) {
-                initializer = expression(tokens);
-            }
+    /**
+     * Parse the top-level declarations of {@code tokens} in up to
+     * {@code ranges} ranges on the common ForkJoinPool, and concatenate them in
+     * source order.
+     *
+     * Only programs that scan and parse without errors are handled here: the
+     * sequential parser decides what is reported for a broken one, and in
+     * which order, so this returns null for it instead.
+     *
+     * @returns the program, or null if it has to be parsed sequentially
+     */
+    Result<List<Ast>, List<Throwable>> parse(final TokenBuffer tokens, final int ranges) {
+        if (!tokens.diagnostics().isEmpty()) {
+            return null;
+        }
 
-            checkSemicolon(tokens);
+        final int[] bounds = declarationBounds(tokens, ranges);
+        final var tasks = new ArrayList<ForkJoinTask<List<Ast>>>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parseRange(tokens, from, to)));
+        }
 
-            trace(
-                    "var " + ((IdentifierToken) id).value() + " = " + initializer);
-            return new Ast.Var(id, initializer);
+        final var nodes = new ArrayList<Ast>();
+        for (var task : tasks) {
+            final var range = task.join();
+            if (range == null) {
+                tasks.forEach(t -> t.cancel(false));
+                return null;
+            }
+            nodes.addAll(range);
         }
 
-        var exception = tokens.peek().isPresent()
-                ? new UnexpectedTokenException(tokens.peek().get().toString())
-                : new UnexpectedEofException();
-        throw exception;
+        return new Result<>(nodes, List.of());
     }
 
-    private Ast statement(final PeekableIterator<Token> tokens) {
-        trace("stmt");
-        final var ast = switch (tokens.peek().get().lexeme()) {
-            case LEFT_BRACE -> block(tokens);
-            case WHILE -> whileStmt(tokens);
-            case RETURN -> returnStmt(tokens);
-            case FOR -> forStmt(tokens);
-            case IF -> ifStmt(tokens);
-            case PRINT -> printStmt(tokens);
-            default -> exprStmt(tokens);
-        };
+    // the declarations in tokens [from, to), or null if any of them fails
+    private List<Ast> parseRange(final TokenBuffer tokens, final int from, final int to) {
+        final var stream = tokens.stream(from, to);
+        final var errors = new Diagnostics();
+        final var nodes = new ArrayList<Ast>();
+        while (stream.hasNext() && errors.isEmpty()) {
+            nodes.add(declaration(stream, errors));
+        }
 
-        return ast;
+        return errors.isEmpty() ? nodes : null;
     }
 
-    private Ast exprStmt(final PeekableIterator<Token> tokens) {
-        trace("exprStmt");
-        if (tokens.hasNext()) {
-            var expr = expression(tokens);
-            checkSemicolon(tokens);
-            return new Stmt.ExprStmt(expr);
-        } else {
-            throw new UnexpectedEofException();
+    /**
+     * Find where top-level declarations start by balancing parentheses and
+     * braces: a declaration can end at a semicolon or closing brace that
+     * leaves nothing open, unless an {@code else} follows it. Ranges are cut
+     * at such points about {@code size / ranges} tokens apart.
+     *
+     * A cut in a broken program can be in the wrong place, but then a range
+     * fails to parse. When they all parse, each one consumed exactly its
+     * tokens with only balanced groups and blocks, and the only token looked
+     * at past a declaration's end is the one checked for {@code else}. So the
+     * sequential parser would have found the same declarations.
+     *
+     * @returns the token index each range starts at, followed by the size
+     */
+    static int[] declarationBounds(final TokenBuffer tokens, final int ranges) {
+        final int size = tokens.size();
+        final int target = Math.max(1, size / Math.max(1, ranges));
+        final var bounds = new int[Math.max(1, ranges) + 1];
+        int count = 1;
+        int depth = 0;
+        for (int i = 0; i + 1 < size && count < bounds.length - 1 && depth >= 0; i++) {
+            final var lexeme = tokens.lexeme(i);
+            switch (lexeme) {
+                case LEFT_PAREN, LEFT_BRACE -> ++depth;
+                case RIGHT_PAREN, RIGHT_BRACE -> --depth;
+                default -> {
+                }
+            }
+
+            if (depth == 0
+                    && (lexeme == Lexemes.SEMICOLON || lexeme == Lexemes.RIGHT_BRACE)
+                    && tokens.lexeme(i + 1) != Lexemes.ELSE
+                    && i + 1 - bounds[count - 1] >= target) {
+                bounds[count++] = i + 1;
+            }
         }
-    }
+        bounds[count++] = size;
 
-    private Expr expression(final PeekableIterator<Token> tokens) {
-        trace("expression");
-        return assignment(tokens);
+        return Arrays.copyOf(bounds, count);
     }
 
-    private Expr assignment(final PeekableIterator<Token> tokens) {
-        trace("assignment");
+    private Result<List<Ast>, List<Throwable>> program(
+            final TokenStream tokens,
+            final Diagnostics scanErrors) {
+        final var errors = new Diagnostics();
+        final var nodes = new ArrayList<Ast>();
+        while (scanErrors.isEmpty() && tokens.hasNext()) {
+            if (tracing()) {
+                trace("next: " + tokens.peekToken());
+            }
+            // a declaration in error has been reported; carry on after it
+            final var ast = declaration(tokens, errors);
+            if (ast != null) {
+                nodes.add(ast);
+            }
+        }
 
-        // save in case token actually represents an lvalue
-        var token = tokens.peek();
+        return new Result<>(nodes, errors.errors());
+    }
 
-        var left = logical_or(tokens);
+    /*
+     * Each rule below reports an error it finds to errors and returns null
+     * instead of throwing; a rule given null by another one returns null
+     * too, leaving the tokens where the error was found.
+     */
 
-        if (tokens.nextIf(t -> t.lexeme() == Lexemes.EQUAL).isPresent()) {
-            // assignment: lvalue = rvalue
-            var rvalue = assignment(tokens);
-            return new Expr.Assignment(token.get(), rvalue);
+    private Ast declaration(final TokenStream tokens, final Diagnostics errors) {
+        trace("declaration");
+        final var lexeme = tokens.peekLexeme();
+        if (lexeme == null) {
+            return unexpected(tokens, errors);
         }
 
-        return left;
+        return switch (lexeme) {
+            case CLASS -> classDecl(tokens, errors);
+            case FUN -> funDecl(tokens, errors);
+            case VAR -> varDecl(tokens, errors);
+            default -> this.expressionMode
+                    ? expression(tokens, errors)
+                    : statement(tokens, errors);
+        };
     }
 
-    private Expr logical_or(final PeekableIterator<Token> tokens) {
-        trace("logical_or");
-        var left = logical_and(tokens);
-        while (tokens.hasNext()) {
-            var node = tokens.nextIf(t -> t.lexeme() == Lexemes.OR);
-            if (node.isPresent()) {
-                var op = node.get();
-                var right = logical_and(tokens);
-                left = new Expr.Logical(left, op, right);
-            } else {
-                break;
-            }
-        }
+    private Ast classDecl(final TokenStream tokens, final Diagnostics errors) {
+        return notImplemented("class", errors);
+    }
 
-        return left;
+    private Ast funDecl(final TokenStream tokens, final Diagnostics errors) {
+        return notImplemented("fun", errors);
     }
 
-    private Expr logical_and(final PeekableIterator<Token> tokens) {
-        trace("logical_and");
-        var left = equality(tokens);
-        while (tokens.hasNext()) {
-            var node = tokens.nextIf(t -> t.lexeme() == Lexemes.AND);
-            if (node.isPresent()) {
-                var op = node.get();
-                var right = equality(tokens);
-                left = new Expr.Logical(left, op, right);
-            } else {
-                break;
+    // varDecl → "var" IDENTIFIER ( "=" expression )? ";" ;
+    private Ast varDecl(final TokenStream tokens, final Diagnostics errors) {
+        trace("varDecl");
+        final var varDecl = tokens.match(Lexemes.VAR); // eat 'var' keyword
+        assert varDecl : "expected 'var' keyword";
+
+        final var id = tokens.nextIf(IDENTIFIER);
+        if (id == null) {
+            return unexpected(tokens, errors);
+        }
+
+        Expr initializer = null;
+        if (tokens.match(Lexemes.EQUAL)) {
+            initializer = expression(tokens, errors);
+            if (initializer == null) {
+                return null;
             }
         }
 
-        return left;
-    }
+        if (!checkSemicolon(tokens, errors)) {
+            return null;
+        }
 
-    private Expr equality(final PeekableIterator<Token> tokens) {
-        trace("equality");
-        var ast = comparison(tokens);
+        if (tracing()) {
+            trace("var " + ((IdentifierToken) id).value() + " = " + initializer);
+        }
+        return new Ast.Var(id, initializer);
+    }
 
-        while (tokens.hasNext()) {
-            final var node = tokens.nextIf(
-                    t -> t.lexeme() == Lexemes.BANG_EQUAL ||
-                            t.lexeme() == Lexemes.EQUAL_EQUAL);
-            if (node.isPresent()) {
-                final var op = node.get();
-                final var rhs = comparison(tokens);
-                ast = new Expr.Binary(op, ast, rhs);
-            } else {
-                break;
-            }
+    private Ast statement(final TokenStream tokens, final Diagnostics errors) {
+        trace("stmt");
+        final var lexeme = tokens.peekLexeme();
+        if (lexeme == null) {
+            return unexpected(tokens, errors);
         }
 
+        final var ast = switch (lexeme) {
+            case LEFT_BRACE -> block(tokens, errors);
+            case WHILE -> whileStmt(tokens, errors);
+            case RETURN -> returnStmt(tokens, errors);
+            case FOR -> forStmt(tokens, errors);
+            case IF -> ifStmt(tokens, errors);
+            case PRINT -> printStmt(tokens, errors);
+            default -> exprStmt(tokens, errors);
+        };
+
         return ast;
     }
 
-    private Expr comparison(final PeekableIterator<Token> tokens) {
-        trace("comparison");
-        var ast = term(tokens);
+    private Ast exprStmt(final TokenStream tokens, final Diagnostics errors) {
+        trace("exprStmt");
+        if (!tokens.hasNext()) {
+            return unexpected(tokens, errors);
+        }
 
-        while (tokens.hasNext()) {
-            final var node = tokens.nextIf(
-                    t -> t.lexeme() == Lexemes.GREATER ||
-                            t.lexeme() == Lexemes.GREATER_EQUAL ||
-                            t.lexeme() == Lexemes.LESS_EQUAL ||
-                            t.lexeme() == Lexemes.LESS);
-            if (node.isPresent()) {
-                final var op = node.get();
-                final var rhs = term(tokens);
-                ast = new Expr.Binary(op, ast, rhs);
-            } else {
-                break;
-            }
+        var expr = expression(tokens, errors);
+        if (expr == null || !checkSemicolon(tokens, errors)) {
+            return null;
         }
-        return ast;
+        return new Stmt.ExprStmt(expr);
     }
 
-    private Expr term(final PeekableIterator<Token> tokens) {
-        trace("term");
+    private Expr expression(final TokenStream tokens, final Diagnostics errors) {
+        trace("expression");
+        return assignment(tokens, errors);
+    }
 
-        var ast = factor(tokens);
+    private Expr assignment(final TokenStream tokens, final Diagnostics errors) {
+        trace("assignment");
 
-        while (tokens.hasNext()) {
-            final var node = tokens.nextIf(
-                    t -> t.lexeme() == Lexemes.PLUS || t.lexeme() == Lexemes.MINUS);
-
-            if (node.isPresent()) {
-                final var op = node.get();
-                final var rhs = factor(tokens);
-                ast = new Expr.Binary(op, ast, rhs);
-            } else {
-                break;
-            }
-        }
+        // save in case token actually represents an lvalue; it is the same
+        // object the expression below consumes, so nothing extra is created
+        var token = tokens.peekToken();
 
-        return ast;
-    }
+        var left = binary(tokens, LOWEST, errors);
+        if (left == null) {
+            return null;
+        }
 
-    private Expr factor(final PeekableIterator<Token> tokens) {
-        trace("factor");
+        if (tokens.match(Lexemes.EQUAL)) {
+            // assignment: lvalue = rvalue
+            var rvalue = assignment(tokens, errors);
+            return rvalue != null ? new Expr.Assignment(token, rvalue) : null;
+        }
 
-        var ast = unary(tokens);
+        return left;
+    }
 
-        while (tokens.hasNext()) {
-            final var node = tokens.nextIf(
-                    t -> t.lexeme() == Lexemes.STAR || t.lexeme() == Lexemes.SLASH);
-
-            if (node.isPresent()) {
-                final var op = node.get();
-                final var rhs = unary(tokens);
-                ast = new Expr.Binary(op, ast, rhs);
-            } else {
-                break;
-            }
+    // binary operators by precedence climbing: an operand is parsed by
+    // prefix(), then each operator binding at least as tightly as minPower
+    // folds it into a larger expression. All levels are left-associative, so
+    // an operator's right operand only takes operators binding tighter.
+    private Expr binary(final TokenStream tokens, final int minPower, final Diagnostics errors) {
+        trace("binary");
+        var left = prefix(tokens, errors);
+
+        Lexemes lexeme;
+        while (left != null
+                && (lexeme = tokens.peekLexeme()) != null && POWERS[lexeme.ordinal()] >= minPower) {
+            final int power = POWERS[lexeme.ordinal()];
+            final var op = tokens.next();
+            final var right = binary(tokens, power + 1, errors);
+            left = right != null ? INFIX[lexeme.ordinal()].combine(left, op, right) : null;
         }
 
-        return ast;
+        return left;
     }
 
-    private Expr unary(final PeekableIterator<Token> tokens) {
+    // unary → ( "!" | "-" ) unary | primary ;
+    private Expr prefix(final TokenStream tokens, final Diagnostics errors) {
         trace("unary");
-        var e = switch (tokens.nextIf(
-                t -> t.lexeme() == Lexemes.BANG ||
-                        t.lexeme() == Lexemes.MINUS)) {
-            case Optional<Token> o when o.isPresent() -> {
-                final var op = o.get();
-                final Expr expr = unary(tokens);
-                yield new Expr.Unary(op, expr);
-            }
-            default -> {
-                var p = primary(tokens);
-                yield p;
-            }
-        };
+        final var op = tokens.nextIf(UNARY);
+        if (op != null) {
+            final Expr expr = prefix(tokens, errors);
+            return expr != null ? new Expr.Unary(op, expr) : null;
+        }
 
-        return e;
+        return primary(tokens, errors);
     }
 
-    private Expr primary(final PeekableIterator<Token> tokens) {
+    private Expr primary(final TokenStream tokens, final Diagnostics errors) {
         trace("primary");
-        var token = tokens.nextIf(
-                t -> t.lexeme() == Lexemes.TRUE ||
-                        t.lexeme() == Lexemes.FALSE ||
-                        t.lexeme() == Lexemes.NIL);
+        final var lexeme = tokens.peekLexeme();
+        if (lexeme == null) {
+            return unexpected(tokens, errors);
+        }
 
-        if (token.isPresent()) {
-            return new Expr.Terminal(token.get());
+        if (LITERAL.contains(lexeme)) {
+            return new Expr.Terminal(tokens.next());
         }
 
-        token = tokens.nextIf(t -> t.lexeme() == Lexemes.LEFT_PAREN);
-        if (token.isPresent()) {
+        if (tokens.match(Lexemes.LEFT_PAREN)) {
             // start of group expression i.e. '(' expr ')'
             trace("start group expr");
-            var expr = expression(tokens);
-            token = tokens.nextIf(t -> t.lexeme() == Lexemes.RIGHT_PAREN);
-            if (token.isPresent()) {
+            var expr = expression(tokens, errors);
+            if (expr == null) {
+                return null;
+            }
+            if (tokens.match(Lexemes.RIGHT_PAREN)) {
                 trace("end group expr");
                 return new Expr.Group(expr);
-            } else if (tokens.hasNext()) {
-                throw new MissingTokenException(
-                        ")",
-                        tokens.peek().get().lexeme().value());
-            } else {
-                throw new UnexpectedEofException();
             }
+            return missing(Lexemes.RIGHT_PAREN, tokens, errors);
         }
 
-        token = tokens.nextIf(
-                t -> t.lexeme() == Lexemes.NUMBER ||
-                        t.lexeme() == Lexemes.STRING ||
-                        t.lexeme() == Lexemes.IDENTIFIER);
-        if (token.isPresent()) {
-            return new Expr.Terminal(token.get());
-        } else if (tokens.hasNext()) {
-            throw new UnexpectedTokenException(tokens.next().lexeme().value());
-        } else {
-            throw new UnexpectedEofException();
-        }
+        // the unexpected token is skipped
+        errors.report(Code.UNEXPECTED_TOKEN, tokens.peekOffset(), lexeme.ordinal());
+        tokens.match(lexeme);
+        return null;
     }
 
-    private Ast block(final PeekableIterator<Token> tokens) {
+    private Ast block(final TokenStream tokens, final Diagnostics errors) {
         trace("block start");
-        var _leftBrace = tokens.next();
-        assert _leftBrace.lexeme() == Lexemes.LEFT_BRACE;
+        final var leftBrace = tokens.match(Lexemes.LEFT_BRACE);
+        assert leftBrace;
 
         final List<Ast> blockStatements = new ArrayList<>();
         while (tokens.hasNext()) {
-            var ast = declaration(tokens);
+            var ast = declaration(tokens, errors);
+            if (ast == null) {
+                return null;
+            }
             blockStatements.add(ast);
 
             if (!tokens.hasNext()) {
-                throw new UnexpectedEofException();
+                return unexpected(tokens, errors);
             }
 
-            if (tokens
-                    .nextIf(t -> t.lexeme() == Lexemes.RIGHT_BRACE)
-                    .isPresent()) {
+            if (tokens.match(Lexemes.RIGHT_BRACE)) {
                 trace("block end");
                 break;
             }
@@ -371,78 +475,108 @@ public class Parser {
         return new Ast.Block(blockStatements);
     }
 
-    private Ast printStmt(final PeekableIterator<Token> tokens) {
+    private Ast printStmt(final TokenStream tokens, final Diagnostics errors) {
         trace("printStmt");
+        final var printToken = tokens.match(Lexemes.PRINT);
+        assert printToken;
 
-        var _printToken = tokens.next();
-        assert _printToken.lexeme() == Lexemes.PRINT;
+        if (!tokens.hasNext()) {
+            return unexpected(tokens, errors);
+        }
 
-        if (tokens.hasNext()) {
-            var expr = expression(tokens);
-            checkSemicolon(tokens);
-            return new Stmt.PrintStmt(expr);
-        } else {
-            throw new UnexpectedEofException();
+        var expr = expression(tokens, errors);
+        if (expr == null || !checkSemicolon(tokens, errors)) {
+            return null;
         }
+        return new Stmt.PrintStmt(expr);
     }
 
-    private Ast ifStmt(final PeekableIterator<Token> tokens) {
+    private Ast ifStmt(final TokenStream tokens, final Diagnostics errors) {
         trace("ifStmt");
-        var _ifToken = tokens.next();
-        assert _ifToken.lexeme() == Lexemes.IF;
-
-        if (tokens.hasNext()) {
-            var cond = expression(tokens);
-            var thenStmt = statement(tokens);
-            Ast elseStmt = null;
-            var token = tokens.nextIf(t -> t.lexeme() == Lexemes.ELSE);
-            if (token.isPresent()) {
-                elseStmt = statement(tokens);
-            }
+        final var ifToken = tokens.match(Lexemes.IF);
+        assert ifToken;
+
+        if (!tokens.hasNext()) {
+            return unexpected(tokens, errors);
+        }
 
-            return new Stmt.IfStmt(cond, thenStmt, elseStmt);
+        var cond = expression(tokens, errors);
+        var thenStmt = cond != null ? statement(tokens, errors) : null;
+        if (thenStmt == null) {
+            return null;
         }
 
-        throw new UnexpectedEofException();
+        Ast elseStmt = null;
+        if (tokens.match(Lexemes.ELSE)) {
+            elseStmt = statement(tokens, errors);
+            if (elseStmt == null) {
+                return null;
+            }
+        }
+
+        return new Stmt.IfStmt(cond, thenStmt, elseStmt);
     }
 
-    private Ast whileStmt(final PeekableIterator<Token> tokens) {
+    private Ast whileStmt(final TokenStream tokens, final Diagnostics errors) {
         trace("whileStmt");
-        var _token = tokens.next();
-        assert _token.lexeme() == Lexemes.WHILE;
+        final var whileToken = tokens.match(Lexemes.WHILE);
+        assert whileToken;
 
-        if (tokens.hasNext()) {
-            var cond = expression(tokens);
-            var body = statement(tokens);
-
-            return new Stmt.WhileStmt(cond, body);
+        if (!tokens.hasNext()) {
+            return unexpected(tokens, errors);
         }
 
-        throw new UnexpectedEofException();
+        var cond = expression(tokens, errors);
+        var body = cond != null ? statement(tokens, errors) : null;
+        return body != null ? new Stmt.WhileStmt(cond, body) : null;
     }
 
-    private Ast returnStmt(final PeekableIterator<Token> tokens) {
-        checkSemicolon(tokens);
-        throw new NotImplementedException("return statement");
+    private Ast returnStmt(final TokenStream tokens, final Diagnostics errors) {
+        if (!checkSemicolon(tokens, errors)) {
+            return null;
+        }
+        return notImplemented("return statement", errors);
     }
 
-    private Ast forStmt(final PeekableIterator<Token> tokens) {
-        throw new NotImplementedException("for statement");
+    private Ast forStmt(final TokenStream tokens, final Diagnostics errors) {
+        return notImplemented("for statement", errors);
     }
 
-    // check for and eat semicolon, or else error
-    private void checkSemicolon(final PeekableIterator<Token> tokens) {
+    // check for and eat semicolon, or else report an error
+    private static boolean checkSemicolon(final TokenStream tokens, final Diagnostics errors) {
         trace("check semicolon");
-        tokens
-                .nextIf(t -> t.lexeme() == Lexemes.SEMICOLON)
-                .orElseThrow(() -> {
-                    if (tokens.hasNext()) {
-                        return new MissingTokenException(
-                                Lexemes.SEMICOLON.value(),
-                                tokens.peek().get().lexeme().value());
-                    } else {
-                        return new UnexpectedEofException();
-                    }
-                });
+        if (tokens.match(Lexemes.SEMICOLON)) {
+            return true;
+        }
+
+        missing(Lexemes.SEMICOLON, tokens, errors);
+        return false;
+    }
+
+    // report the next token as unexpected, or the end of input
+    private static <T> T unexpected(final TokenStream tokens, final Diagnostics errors) {
+        final var lexeme = tokens.peekLexeme();
+        if (lexeme == null) {
+            errors.report(Code.UNEXPECTED_EOF, tokens.peekOffset(), 0);
+        } else {
+            errors.report(Code.UNEXPECTED_TOKEN, tokens.peekOffset(), lexeme.ordinal());
+        }
+        return null;
+    }
+
+    // report that the next token should have been expected, or the end of input
+    private static <T> T missing(final Lexemes expected, final TokenStream tokens, final Diagnostics errors) {
+        final var lexeme = tokens.peekLexeme();
+        if (lexeme == null) {
+            errors.report(Code.UNEXPECTED_EOF, tokens.peekOffset(), 0);
+        } else {
+            errors.report(Code.MISSING_TOKEN, tokens.peekOffset(), Diagnostics.missing(expected, lexeme));
+        }
+        return null;
+    }
+
+    private static <T> T notImplemented(final String what, final Diagnostics errors) {
+        errors.report(new NotImplementedException(what));
+        return null;
     }
 }
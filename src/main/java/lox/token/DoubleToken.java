@@ -1,14 +1,95 @@
 package lox.token;
 
-import lox.token.Tokens.Lexemes;
+import lox.util.CharCursor;
+import lox.util.Cursor;
 
+/**
+ * A NUMBER token; the value is kept as a primitive double and only boxed by
+ * {@link #value()}.
+ */
 public class DoubleToken extends NumberToken<Double> {
+
+    // powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+    // largest mantissa with every integer below it exact as a double
+    private static final long MAX_EXACT = 1L << 53;
+    // most digits that always fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final double value;
+
     DoubleToken(String original) {
-        String tmp = original;
+        this(original, parse(original));
+    }
+
+    DoubleToken(String original, double value) {
+        super(original);
+        this.value = value;
+    }
+
+    @Override
+    public Double value() {
+        return value;
+    }
+
+    public double doubleValue() {
+        return value;
+    }
+
+    static double parse(String original) {
+        return parse(new CharCursor(original), 0, original.length());
+    }
+
+    /**
+     * Parse the literal between two offsets without creating a String in the
+     * common cases.
+     *
+     * Digits are accumulated into a long. A whole number of up to 18 digits is
+     * then exact, or correctly rounded by the conversion to double. With a
+     * fraction, if the digits fit in 53 bits and there are at most 22 of them
+     * after the '.', the mantissa and the power of ten are both exact doubles
+     * and one correctly rounded division gives the value. Anything else goes to
+     * Double.parseDouble.
+     */
+    static double parse(Cursor chars, long start, long end) {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (long i = start; i < end; i++) {
+            final int c = chars.unitAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    ++fractionDigits;
+                }
+                if (++digits > MAX_LONG_DIGITS) {
+                    return parseSlow(chars, start, end);
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return parseSlow(chars, start, end);
+            }
+        }
+
+        if (fractionDigits <= 0) {
+            return mantissa;
+        } else if (mantissa <= MAX_EXACT && fractionDigits < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        }
+
+        return parseSlow(chars, start, end);
+    }
+
+    private static double parseSlow(Cursor chars, long start, long end) {
+        final var original = chars.text(start, end);
         if (original.endsWith(".")) {
-            tmp = original + "0";
+            return Double.parseDouble(original + "0");
         }
 
-        super(original, Double.parseDouble(tmp));
+        return Double.parseDouble(original);
     }
 }
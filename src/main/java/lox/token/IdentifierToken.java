@@ -6,19 +6,27 @@ public class IdentifierToken
     extends SpanningToken
     implements ValueToken<String> {
 
-    private final String value;
+    private final Symbol symbol;
 
     IdentifierToken(String value) {
+        this(Symbol.detached(value));
+    }
+
+    IdentifierToken(Symbol symbol) {
         super(Lexemes.IDENTIFIER);
-        this.value = value;
+        this.symbol = symbol;
     }
 
     public String value() {
-        return this.value;
+        return symbol.name();
+    }
+
+    public Symbol symbol() {
+        return symbol;
     }
 
     @Override
     public String toString() {
-        return lexeme.name() + " " + value + " null";
+        return lexeme.name() + " " + symbol.name() + " null";
     }
 }
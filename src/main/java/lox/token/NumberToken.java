@@ -4,17 +4,13 @@ import lox.token.Tokens.Lexemes;
 
 public abstract class NumberToken<T extends Number> extends SpanningToken implements ValueToken<T> {
     private final String original;
-    private final T value;
 
-    protected NumberToken(String original, T value) {
+    protected NumberToken(String original) {
         super(Lexemes.NUMBER);
-        this.value = value;
         this.original = original;
     }
 
-    public T value() {
-        return this.value;
-    }
+    public abstract T value();
 
     public String original() {
         return original;
@@ -22,6 +18,6 @@ public abstract class NumberToken<T extends Number> extends SpanningToken implem
 
     @Override
     public String toString() {
-        return lexeme.name() + " " + original + " " + value;
+        return lexeme.name() + " " + original + " " + value();
     }
 }
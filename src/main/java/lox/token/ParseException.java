@@ -2,10 +2,17 @@ package lox.token;
 
 import java.util.Objects;
 
+import lox.LineIndex;
+
 public class ParseException extends lox.LoxException {
 
     private lox.Span span;
 
+    // where the error is, until the span is first asked for
+    private LineIndex lines;
+    private long offset;
+    private long length;
+
     public ParseException(lox.Span span) {
         this(null, span);
     }
@@ -16,10 +23,32 @@ public class ParseException extends lox.LoxException {
         this.span = span;
     }
 
+    /**
+     * The line is only looked up when the span is first asked for, e.g. when the
+     * error is printed.
+     */
+    public ParseException(String message, LineIndex lines, long offset, long length) {
+        super(message);
+        this.lines = lines;
+        this.offset = offset;
+        this.length = length;
+    }
+
     public lox.Span getSpan() {
+        if (span == null && lines != null) {
+            span = lines.span(offset, length);
+        }
+
         return span;
     }
 
+    /**
+     * @returns the 1-based column of the error, if it was reported by offset
+     */
+    public long column() {
+        return lines != null ? lines.column(offset) : 0;
+    }
+
     @Override
     public String toString() {
         return "[line " + getSpan().line() + "] Error: " + super.toString();
@@ -1,216 +1,223 @@
 package lox.token;
 
-import static lox.util.LogUtil.trace;
-import static lox.util.Util.matches;
-
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import lox.Diagnostics;
+import lox.LineIndex;
 import lox.Result;
-import lox.Span;
-import lox.token.Tokens.Lexemes;
-import lox.token.Tokens.TokenBuilder;
-import lox.util.CharSequencePeekableIterator;
-import lox.util.PeekableIterator;
-import lox.util.Tuple;
-import lox.util.Tuples;
+import lox.Source;
 
 public class Scanner {
 
-    Tuple thisOrThat(
-            final PeekableIterator<Character> chars,
-            final Character match,
-            final Lexemes combo,
-            final Lexemes single,
-            final long offset) {
-        if (matches(chars.peek(), match)) {
-            chars.next(); // eat matching '='
-            return Tuples.of(new TokenBuilder(combo), offset + 1);
-        } else {
-            return Tuples.of(new TokenBuilder(single), offset);
-        }
+    // sources at least this long are scanned in parallel chunks of CHUNK_SIZE
+    static final long PARALLEL_THRESHOLD = 1 << 20;
+    static final long CHUNK_SIZE = 1 << 18;
+
+    private final SymbolTable symbols;
+
+    public Scanner() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols the table identifiers are interned into, shared by
+     *                everything compiled for the same program
+     */
+    public Scanner(SymbolTable symbols) {
+        this.symbols = symbols;
     }
 
     public Result<List<Token>, List<Throwable>> scan(CharSequence source) {
-        final var tokens = new ArrayList<Token>();
+        return scan(Source.of(source));
+    }
+
+    public Result<List<Token>, List<Throwable>> scan(Source source) {
         final var exceptions = new ArrayList<Throwable>();
-        final var chars = new CharSequencePeekableIterator(source);
-        long offset = 0;
-        long line = 1;
-
-        for (var c : chars) {
-            TokenBuilder token = null;
-            long tokenStart = offset++;
-
-            try {
-                token = switch (c) {
-                    case ' ', '\t', '\r' -> null;
-                    case '\n' -> {
-                        ++line;
-                        yield null;
-                    }
-                    case '{' -> new TokenBuilder(Lexemes.LEFT_BRACE);
-                    case '}' -> new TokenBuilder(Lexemes.RIGHT_BRACE);
-                    case '(' -> new TokenBuilder(Lexemes.LEFT_PAREN);
-                    case ')' -> new TokenBuilder(Lexemes.RIGHT_PAREN);
-                    case ',' -> new TokenBuilder(Lexemes.COMMA);
-                    case '.' -> new TokenBuilder(Lexemes.DOT);
-                    case '+' -> new TokenBuilder(Lexemes.PLUS);
-                    case '-' -> new TokenBuilder(Lexemes.MINUS);
-                    case ';' -> new TokenBuilder(Lexemes.SEMICOLON);
-                    case '*' -> new TokenBuilder(Lexemes.STAR);
-                    case '<' -> {
-                        var res = thisOrThat(
-                                chars,
-                                '=',
-                                Lexemes.LESS_EQUAL,
-                                Lexemes.LESS,
-                                offset);
-
-                        var tokenBuilder = (TokenBuilder) res.get(0);
-                        offset = (long) res.get(1);
-
-                        yield tokenBuilder;
-                    }
-                    case '>' -> {
-                        var res = thisOrThat(
-                                chars,
-                                '=',
-                                Lexemes.GREATER_EQUAL,
-                                Lexemes.GREATER,
-                                offset);
-
-                        var tokenBuilder = (TokenBuilder) res.get(0);
-                        offset = (long) res.get(1);
-
-                        yield tokenBuilder;
-                    }
-                    case '!' -> {
-                        var res = thisOrThat(
-                                chars,
-                                '=',
-                                Lexemes.BANG_EQUAL,
-                                Lexemes.BANG,
-                                offset);
-
-                        var tokenBuilder = (TokenBuilder) res.get(0);
-                        offset = (long) res.get(1);
-
-                        yield tokenBuilder;
-                    }
-                    case '=' -> {
-                        var res = thisOrThat(
-                                chars,
-                                '=',
-                                Lexemes.EQUAL_EQUAL,
-                                Lexemes.EQUAL,
-                                offset);
-
-                        var tokenBuilder = (TokenBuilder) res.get(0);
-                        offset = (long) res.get(1);
-
-                        yield tokenBuilder;
-                    }
-                    case '/' -> {
-                        // check for line comment
-                        if (matches(chars.peek(), '/')) {
-                            while (chars.hasNext() && !matches(chars.peek(), '\n')) {
-                                chars.next(); // eat matching '='
-                                ++offset;
-                            }
-                            yield null;
-                        } else {
-                            yield new TokenBuilder(Lexemes.SLASH);
-                        }
-                    }
-                    case '"' -> {
-                        trace("found start of quoted string");
-                        // check for quoted string
-                        StringBuilder sb = new StringBuilder();
-                        while (chars.hasNext() && !matches(chars.peek(), '"')) {
-                            Character next = chars.next();
-                            // trace("adding '" + next + "'");
-                            sb.append(next);
-                            ++offset;
-                        }
-
-                        if (!chars.hasNext()) {
-                            throw new UnterminatedStringException(
-                                    sb.toString(),
-                                    Span.of(line, offset, 0));
-                        }
-
-                        var _n = chars.next(); // eat closing '"'
-                        ++offset;
-
-                        assert _n == '"' : "expected closing '\"'";
-                        yield new TokenBuilder(Lexemes.STRING).withValue(
-                                sb.toString());
-                    }
-                    case Character ch when Character.isDigit(ch) -> {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(ch);
-
-                        while (chars.hasNext() &&
-                                matches(
-                                        chars.peek(),
-                                        t -> Character.isDigit(t) || t == '.')) {
-                            Character cur = chars.next();
-                            sb.append(cur);
-                            ++offset;
-
-                            if (cur == '.' &&
-                                    !matches(chars.peek(), Character::isDigit)) {
-                                // two '.' in a row e.g. 1..foo; so the number is '1.' and the 2nd '.' is a
-                                // separate token
-                                break;
-                            }
-                        }
-
-                        String number = sb.toString();
-                        yield new TokenBuilder(Lexemes.NUMBER).withValue(number);
-                    }
-                    case Character ch when (Character.isLetter(ch) || ch == '_') -> {
-                        // trace("found start of keyword or identifier");
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(ch);
-                        while (chars.hasNext() &&
-                                matches(
-                                        chars.peek(),
-                                        t -> Character.isLetter(t) ||
-                                                Character.isDigit(t) ||
-                                                t == '_')) {
-                            Character next = chars.next();
-                            // trace("adding '" + next + "'");
-                            sb.append(next);
-                            ++offset;
-                        }
-
-                        var val = sb.toString();
-                        if (Lexemes.isKeyword(val)) {
-                            trace("found keyword: " + sb);
-                            yield new TokenBuilder(
-                                    Lexemes.valueOf(val.toUpperCase()));
-                        } else {
-                            trace("found identifier: " + sb);
-                            yield new TokenBuilder(
-                                    Lexemes.IDENTIFIER).withValue(val);
-                        }
-                    }
-                    default -> throw new UnexpectedCharacterException(
-                            c,
-                            Span.of(line, offset, 1));
-                };
-            } catch (ParseException e) {
-                exceptions.add(e);
+        final var tokens = buffer(source, exceptions);
+
+        return new Result<>(tokens.asList(), exceptions);
+    }
+
+    /**
+     * Scan the whole source into a compact {@link TokenBuffer}; scan errors are
+     * added to {@code errors}.
+     */
+    public TokenBuffer buffer(Source source, List<Throwable> errors) {
+        if (source.length() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return buffer(source, errors, CHUNK_SIZE);
+        }
+
+        final var lines = new LineIndex();
+        final var diagnostics = new Diagnostics(lines);
+        final var tokens = new TokenBuffer(source, symbols, lines, diagnostics);
+        new TokenStream(source.cursor(), symbols, lines, diagnostics).drainTo(tokens);
+        tokens.trim();
+        errors.addAll(diagnostics.errors());
+
+        return tokens;
+    }
+
+    /**
+     * Scan lazily: tokens are produced as the returned stream is pulled and scan
+     * errors are reported to the stream's diagnostics as they are found.
+     */
+    public TokenStream stream(Source source) {
+        final var lines = new LineIndex();
+        return new TokenStream(source.cursor(), symbols, lines, new Diagnostics(lines));
+    }
+
+    /**
+     * Scan the source in chunks of about {@code chunkSize} on the common
+     * ForkJoinPool. The result, errors included, is the same as scanning it
+     * sequentially.
+     *
+     * Chunks are split just after a newline, so none starts inside a // comment,
+     * but one can start inside a multi-line string. Each chunk is scanned as if
+     * it did not, and scanning stops at the first token starting at or after the
+     * chunk's end. The chunks are then stitched together in order: if the
+     * previous chunk did not stop exactly where the next one starts, the next one
+     * was scanned from the wrong state and is scanned again from where the
+     * previous one stopped.
+     */
+    TokenBuffer buffer(Source source, List<Throwable> errors, long chunkSize) {
+        final var bounds = chunkBounds(source, chunkSize);
+        final var chunks = new ArrayList<ForkJoinTask<Chunk>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            final long start = bounds.get(i);
+            final long end = bounds.get(i + 1);
+            chunks.add(ForkJoinPool.commonPool().submit(() -> scanChunk(source, start, end)));
+        }
+
+        final var lines = new LineIndex();
+        final var diagnostics = new Diagnostics(lines);
+        final var tokens = new TokenBuffer(source, symbols, lines, diagnostics);
+        long next = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final long start = bounds.get(i);
+            final long end = bounds.get(i + 1);
+            var chunk = chunks.get(i).join();
+            if (next >= end) {
+                // swallowed whole by a string from an earlier chunk
+                continue;
+            } else if (next != start) {
+                chunk = scanChunk(source, next, end);
             }
 
-            if (token != null) {
-                token.withSpan(line, tokenStart, offset - tokenStart).build();
-                tokens.add(token.build());
+            tokens.append(chunk.tokens());
+            lines.addAll(chunk.tokens().lines());
+            diagnostics.addAll(chunk.tokens().diagnostics(), start, Long.MAX_VALUE, 0);
+            next = chunk.stop();
+        }
+        tokens.trim();
+        errors.addAll(diagnostics.errors());
+
+        return tokens;
+    }
+
+    /**
+     * Scan the source of {@code previous} again after an edit that replaced
+     * {@code removed} chars at {@code offset} with {@code inserted}.
+     *
+     * Only the edited region is scanned. Tokens that end before the edit scan
+     * the same, and the scanner is between tokens at the end of each of them, so
+     * scanning restarts at the end of the last one. It stops at the first new
+     * token past the inserted text that starts where an old token started: the
+     * text after it is unchanged, so the rest of the old tokens, lines and errors
+     * are carried over with their offsets moved. Errors for the whole edited
+     * source are added to {@code errors}.
+     *
+     * The edited source and the tokens, lines and errors before and after the
+     * re-scanned region are shared with {@code previous}, not copied, so the
+     * time taken does not grow with the length of the source. {@code previous}
+     * must have been scanned with this scanner's symbol table.
+     *
+     * @throws IllegalArgumentException if the source's offsets are not chars,
+     *         e.g. for a mapped UTF-8 source
+     */
+    public TokenBuffer rescan(TokenBuffer previous, long offset, long removed, CharSequence inserted,
+            List<Throwable> errors) {
+        if (!previous.source().charOffsets()) {
+            throw new IllegalArgumentException("cannot rescan " + previous.source() + ": its offsets are not chars");
+        }
+
+        final var source = previous.source().edit(offset, removed, inserted);
+        final long delta = inserted.length() - removed;
+
+        int kept = previous.indexBefore(offset);
+        if (kept >= 0 && previous.start(kept) + previous.length(kept) < offset) {
+            ++kept;
+        }
+        kept = Math.max(kept, 0);
+        final long restart = kept > 0 ? previous.start(kept - 1) + previous.length(kept - 1) : 0;
+
+        final var lines = previous.lines().upTo(restart);
+        final var diagnostics = new Diagnostics(lines);
+        final var tokens = new TokenBuffer(source, symbols, lines, diagnostics);
+        tokens.share(previous, 0, kept, 0);
+        diagnostics.addAll(previous.diagnostics(), 0, restart, 0);
+
+        final var stream = new TokenStream(source.cursor(restart), symbols, lines, diagnostics);
+        int next = kept;
+        while (stream.scanInto(tokens)) {
+            final long start = tokens.start(tokens.size() - 1);
+            if (start < offset + inserted.length()) {
+                continue;
+            }
+
+            while (next < previous.size() && previous.start(next) < start - delta) {
+                ++next;
+            }
+            if (next < previous.size() && previous.start(next) == start - delta) {
+                // lined up with the old tokens again
+                final long end = stream.offset() - delta;
+                tokens.share(previous, next + 1, previous.size(), delta);
+                lines.addAll(previous.lines(), end, delta);
+                diagnostics.addAll(previous.diagnostics(), end, Long.MAX_VALUE, delta);
+                break;
             }
         }
+        tokens.trim();
+        errors.addAll(diagnostics.errors());
 
-        return new Result<>(tokens, exceptions);
+        return tokens;
     }
 
+    private record Chunk(TokenBuffer tokens, long stop) {
+    }
+
+    private static Chunk scanChunk(Source source, long start, long end) {
+        final var symbols = new SymbolTable();
+        final var lines = new LineIndex();
+        final var diagnostics = new Diagnostics(lines);
+        final var tokens = new TokenBuffer(source, symbols, lines, diagnostics);
+        final var stream = new TokenStream(source.cursor(start), symbols, lines, diagnostics).until(end);
+        stream.drainTo(tokens);
+
+        return new Chunk(tokens, stream.offset());
+    }
+
+    // chunk boundaries: 0, offsets just after a newline roughly chunkSize apart,
+    // and the source length
+    private static List<Long> chunkBounds(Source source, long chunkSize) {
+        final var cursor = source.cursor();
+        final long length = source.length();
+        final var bounds = new ArrayList<Long>();
+        bounds.add(0L);
+
+        long bound = chunkSize;
+        while (bound < length) {
+            while (bound < length && cursor.unitAt(bound - 1) != '\n') {
+                ++bound;
+            }
+            if (bound < length) {
+                bounds.add(bound);
+            }
+            bound += chunkSize;
+        }
+        bounds.add(length);
+
+        return bounds;
+    }
 }
@@ -0,0 +1,59 @@
+package lox.token;
+
+import lox.util.Cursor;
+
+/**
+ * The string-literal tokens of one scan that still refer to the source.
+ *
+ * Their values are read from the source when first asked for. Once the
+ * program has been parsed, {@link #release()} reads the rest and drops the
+ * reference to the source, so it isn't kept alive by the tokens in the AST.
+ *
+ * Only the tokens not read yet are kept, in a list linked through the tokens
+ * themselves; a token leaves it when its value is read, so the slices never
+ * hold on to a token on their own.
+ */
+final class SourceSlices {
+
+    private Cursor source;
+    private StringToken unread;
+
+    SourceSlices(final Cursor source) {
+        this.source = source;
+    }
+
+    synchronized StringToken slice(final long start, final long end) {
+        final var token = new StringToken(this, start, end);
+        token.next = unread;
+        if (unread != null) {
+            unread.previous = token;
+        }
+        unread = token;
+        return token;
+    }
+
+    /**
+     * @returns the value of {@code token}, which is no longer kept as unread
+     */
+    synchronized String read(final StringToken token, final long start, final long end) {
+        if (token.previous != null) {
+            token.previous.next = token.next;
+        } else if (unread == token) {
+            unread = token.next;
+        }
+        if (token.next != null) {
+            token.next.previous = token.previous;
+        }
+        token.previous = null;
+        token.next = null;
+
+        return source.text(start, end);
+    }
+
+    synchronized void release() {
+        while (unread != null) {
+            unread.value();
+        }
+        source = null;
+    }
+}
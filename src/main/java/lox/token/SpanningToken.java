@@ -1,27 +1,26 @@
 package lox.token;
 
-import lox.Span;
-
+/**
+ * A token that knows where in the source it starts. Its length and line are
+ * not kept; {@link TokenBuffer#span(int)} re-derives them from the source and
+ * the buffer's line index.
+ */
 public class SpanningToken extends AbstractToken {
 
-    private Span span;
+    // -1 for a token that was not scanned from a source
+    private long offset = -1;
 
     SpanningToken(Tokens.Lexemes lexeme) {
-        this(lexeme, null);
-    }
-
-    SpanningToken(Tokens.Lexemes lexeme, Span span) {
         super(lexeme);
-        this.span = span;
     }
 
     @Override
-    public Span span() {
-        return span;
+    public long offset() {
+        return offset;
     }
 
-    Token withSpan(Span span) {
-        this.span = span;
+    Token withOffset(long offset) {
+        this.offset = offset;
         return this;
     }
 }
@@ -4,19 +4,45 @@ import lox.token.Tokens.Lexemes;
 
 public class StringToken extends SpanningToken implements ValueToken<String> {
 
-    private final String value;
+    private String value;
+
+    // where the value is in the source, until value() is first asked for
+    private SourceSlices slices;
+    private final long start;
+    private final long end;
+    // neighbours in the slices' list of unread tokens
+    StringToken previous;
+    StringToken next;
 
     StringToken(String value) {
         super(Lexemes.STRING);
         this.value = value;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * A string literal whose value is the source text between two offsets; the
+     * String is only created when first asked for.
+     */
+    StringToken(SourceSlices slices, long start, long end) {
+        super(Lexemes.STRING);
+        this.slices = slices;
+        this.start = start;
+        this.end = end;
     }
 
     public String value() {
+        if (value == null) {
+            value = slices.read(this, start, end);
+            slices = null;
+        }
+
         return this.value;
     }
 
     @Override
     public String toString() {
-        return lexeme.name() + " " + "\"" + value + "\"" + " " + value;
+        return lexeme.name() + " " + "\"" + value() + "\"" + " " + value();
     }
 }
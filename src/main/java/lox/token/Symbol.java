@@ -0,0 +1,47 @@
+package lox.token;
+
+/**
+ * An interned identifier name.
+ *
+ * Symbols are created by a {@link SymbolTable}, which hands out exactly one
+ * instance per distinct name, so symbols compare by identity. The hash is
+ * computed once when the symbol is interned, and the id is a dense index
+ * into the owning table.
+ */
+public final class Symbol {
+
+    private final String name;
+    private final int hash;
+    private final int id;
+
+    Symbol(final String name, final int hash, final int id) {
+        this.name = name;
+        this.hash = hash;
+        this.id = id;
+    }
+
+    /**
+     * A symbol that does not belong to any table, e.g. for tokens built by hand.
+     */
+    static Symbol detached(final String name) {
+        return new Symbol(name, name.hashCode(), -1);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,116 @@
+package lox.token;
+
+import java.util.Arrays;
+import lox.util.Cursor;
+
+/**
+ * Interns identifier names into canonical {@link Symbol}s.
+ *
+ * One table is shared by everything compiled for the same program, so that
+ * each distinct name is stored once and can be looked up by identity. ASCII
+ * names are hashed and compared straight from the source, and a String is
+ * only created the first time a name is seen.
+ */
+public final class SymbolTable {
+
+    // open addressing, always a power of two in size and at most half full
+    private Symbol[] table = new Symbol[64];
+    private Symbol[] symbols = new Symbol[32];
+    private int size;
+
+    public Symbol intern(final String name) {
+        final int hash = name.hashCode();
+        final int mask = table.length - 1;
+        for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+            final var symbol = table[slot];
+            if (symbol == null) {
+                return add(name, hash, slot);
+            }
+            if (symbol.hashCode() == hash && symbol.name().equals(name)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Intern the name spelled by {@code length} units of {@code source} starting
+     * at {@code start}.
+     */
+    public Symbol intern(final Cursor source, final long start, final int length) {
+        // same hash as String.hashCode() for ASCII names
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            final int unit = source.unitAt(start + i);
+            if (unit >= 0x80) {
+                // units are not chars for every cursor; decode and take the slow path
+                return intern(source.text(start, start + length));
+            }
+            hash = 31 * hash + unit;
+        }
+
+        final int mask = table.length - 1;
+        for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+            final var symbol = table[slot];
+            if (symbol == null) {
+                return add(source.text(start, start + length), hash, slot);
+            }
+            if (symbol.hashCode() == hash && matches(symbol.name(), source, start, length)) {
+                return symbol;
+            }
+        }
+    }
+
+    public Symbol symbol(final int id) {
+        return symbols[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Symbol add(final String name, final int hash, final int slot) {
+        final var symbol = new Symbol(name, hash, size);
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+        }
+        symbols[size++] = symbol;
+        table[slot] = symbol;
+
+        if (size * 2 > table.length) {
+            rehash();
+        }
+
+        return symbol;
+    }
+
+    private void rehash() {
+        final var grown = new Symbol[table.length * 2];
+        final int mask = grown.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = spread(symbols[i].hashCode()) & mask;
+            while (grown[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = symbols[i];
+        }
+        table = grown;
+    }
+
+    private static boolean matches(final String name, final Cursor source, final long start, final int length) {
+        if (name.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (source.unitAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,10 +1,13 @@
 package lox.token;
 
-import lox.Span;
 import lox.token.Tokens.Lexemes;
 
 public interface Token {
   Lexemes lexeme();
 
-  Span span();
+  /**
+   * @returns the offset of the token's first unit in the source, or -1 for a
+   *          token that was not scanned from one
+   */
+  long offset();
 }
@@ -0,0 +1,551 @@
+package lox.token;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import lox.Diagnostics;
+import lox.LineIndex;
+import lox.Source;
+import lox.Span;
+import lox.token.Tokens.Lexemes;
+import lox.util.BinaryIo;
+import lox.util.Runs;
+
+/**
+ * A compact, struct-of-arrays list of scanned tokens.
+ *
+ * Each token is a lexeme ordinal, a start offset and one int of data, kept in
+ * parallel primitive arrays: 9 bytes per token instead of a token, Span and
+ * SourceSpan object each. Starts are ints relative to the start of the first
+ * token of their block of {@value #BLOCK_SIZE}, whose long offset is kept
+ * once per block, so sources over 2GB still fit. The data int is only used by
+ * value tokens; it is the symbol id of an IDENTIFIER or an index into the
+ * number and string side tables, which add 8 bytes per number and a reference
+ * per string literal. Lines are not stored per token; they are looked up from
+ * the source's {@link LineIndex} by start offset.
+ *
+ * Token lengths are not stored. Operators and keywords have a fixed
+ * spelling, and value tokens are re-scanned from the retained source on
+ * request. The buffer therefore depends on its source staying open: the
+ * lengths, spans and text of value tokens, and string values not yet asked
+ * for, throw {@link IllegalStateException} once a mapped source is closed.
+ * {@link #token(int)} and {@link #asList()} give a flyweight view of regular
+ * Token objects for existing callers.
+ *
+ * The tokens of a buffer re-scanned after an edit are mostly those of the
+ * buffer before it. They are not copied: a buffer is a list of runs of
+ * tokens, each kept in the store of the buffer that scanned them, with its
+ * offsets moved by the length the edit added. Only the re-scanned tokens go
+ * into the new buffer's own store.
+ */
+public final class TokenBuffer {
+
+    private static final Lexemes[] LEXEMES = Lexemes.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int BLOCK_SHIFT = 10;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    // runs next to an edit this short are copied into the new buffer rather
+    // than shared
+    private static final int SHORT_RUN = 256;
+
+    private final Source source;
+    private final SymbolTable symbols;
+    private final LineIndex lines;
+    private final Diagnostics diagnostics;
+
+    // the tokens scanned into this buffer, and the runs of them and of other
+    // buffers' stores that make up its token list
+    private final Store own;
+    private final Runs<Store> runs = new Runs<>();
+
+    TokenBuffer(final Source source, final SymbolTable symbols, final LineIndex lines,
+            final Diagnostics diagnostics) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lines = lines;
+        this.diagnostics = diagnostics;
+        this.own = new Store(source);
+    }
+
+    public int size() {
+        return runs.size();
+    }
+
+    public Lexemes lexeme(final int index) {
+        final int run = runs.find(checkIndex(index));
+        return LEXEMES[runs.store(run).lexemes[runs.local(run, index)]];
+    }
+
+    public long start(final int index) {
+        final int run = runs.find(checkIndex(index));
+        return runs.store(run).start(runs.local(run, index)) + runs.delta(run);
+    }
+
+    public long length(final int index) {
+        final var lexeme = lexeme(index);
+        if (lexeme.lexeme != null) {
+            return lexeme.lexeme.length();
+        }
+
+        final int run = runs.find(index);
+        return runs.store(run).length(runs.local(run, index), lexeme);
+    }
+
+    public long line(final int index) {
+        return lines.line(start(index));
+    }
+
+    public long column(final int index) {
+        return lines.column(start(index));
+    }
+
+    public Span span(final int index) {
+        return lines.span(start(index), length(index));
+    }
+
+    /**
+     * @returns the source the tokens were scanned from
+     */
+    public Source source() {
+        return source;
+    }
+
+    /**
+     * @returns the errors found while scanning, in source order
+     */
+    public Diagnostics diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @returns the errors found while scanning as exceptions
+     */
+    public List<Throwable> errors() {
+        return diagnostics.errors();
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * @returns the line starts of the scanned source
+     */
+    public LineIndex lines() {
+        return lines;
+    }
+
+    public double number(final int index) {
+        expect(index, Lexemes.NUMBER);
+        final int run = runs.find(index);
+        final var store = runs.store(run);
+        return store.numbers[store.data[runs.local(run, index)]];
+    }
+
+    /**
+     * @returns the value of a string literal, read from the source the first
+     *          time it is asked for
+     */
+    public String string(final int index) {
+        expect(index, Lexemes.STRING);
+        final int run = runs.find(index);
+        return runs.store(run).string(runs.local(run, index));
+    }
+
+    public Symbol symbol(final int index) {
+        expect(index, Lexemes.IDENTIFIER);
+        final int run = runs.find(index);
+        return symbols.symbol(runs.store(run).data[runs.local(run, index)]);
+    }
+
+    /**
+     * @returns the index of the last token starting before {@code offset}, or
+     *          -1 if there is none
+     */
+    int indexBefore(final long offset) {
+        final int found = search(offset);
+        return (found >= 0 ? found : -found - 1) - 1;
+    }
+
+    /**
+     * @returns the index of the token starting at {@code offset}, or -1 if no
+     *          token starts there
+     */
+    public int indexOf(final long offset) {
+        final int found = search(offset);
+        return found >= 0 ? found : -1;
+    }
+
+    /**
+     * @returns the token's source text
+     */
+    public String text(final int index) {
+        final long start = start(index);
+        return source.cursor(start).text(start, start + length(index));
+    }
+
+    /**
+     * @returns a Token object for the token at {@code index}, created on demand
+     */
+    public Token token(final int index) {
+        final var lexeme = lexeme(index);
+        final int run = runs.find(index);
+        final var store = runs.store(run);
+        final int local = runs.local(run, index);
+        final long start = store.start(local) + runs.delta(run);
+        final SpanningToken token = switch (lexeme) {
+            case NUMBER -> new DoubleToken(
+                    source.cursor(start).text(start, start + store.length(local, lexeme)),
+                    store.numbers[store.data[local]]);
+            case STRING -> new StringToken(store.string(local));
+            case IDENTIFIER -> new IdentifierToken(symbol(index));
+            default -> new SpanningToken(lexeme);
+        };
+        token.withOffset(start);
+
+        return token;
+    }
+
+    /**
+     * @returns a stream over the tokens from {@code from} up to but not
+     *          including {@code to}, creating Token objects as they are
+     *          consumed; no scanning is done
+     */
+    public TokenStream stream(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, size());
+        return new TokenStream(this, from, to);
+    }
+
+    /**
+     * @returns a read-only List view that creates Token objects on access
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    void add(final Lexemes lexeme, final long start) {
+        append(lexeme, start, 0);
+    }
+
+    void addNumber(final long start, final double value) {
+        append(Lexemes.NUMBER, start, own.addNumber(value));
+    }
+
+    void addString(final long start, final String value) {
+        append(Lexemes.STRING, start, own.addString(value));
+    }
+
+    void addSymbol(final long start, final Symbol symbol) {
+        append(Lexemes.IDENTIFIER, start, symbol.id());
+    }
+
+    /**
+     * Append the tokens of {@code chunk}, a later part of the same source
+     * scanned with its own symbol table. Its identifiers are interned into this
+     * buffer's table in order, so ids come out as if scanned in one pass.
+     */
+    void append(final TokenBuffer chunk) {
+        final var ids = new int[chunk.symbols.size()];
+        Arrays.fill(ids, -1);
+
+        final var tokens = chunk.own;
+        for (int i = 0; i < tokens.size; i++) {
+            final var lexeme = LEXEMES[tokens.lexemes[i]];
+            final long start = tokens.start(i);
+            final int value = tokens.data[i];
+            switch (lexeme) {
+                case NUMBER -> addNumber(start, tokens.numbers[value]);
+                case STRING -> addString(start, tokens.strings[value]);
+                case IDENTIFIER -> {
+                    if (ids[value] < 0) {
+                        ids[value] = symbols.intern(chunk.symbols.symbol(value).name()).id();
+                    }
+                    append(lexeme, start, ids[value]);
+                }
+                default -> append(lexeme, start, 0);
+            }
+        }
+    }
+
+    /**
+     * Append tokens {@code from} to {@code to} of {@code other}, which shares
+     * this buffer's symbol table, moving their offsets by {@code delta}. Their
+     * runs are shared with {@code other}, not copied, so this takes time in
+     * the number of runs rather than of tokens.
+     */
+    void share(final TokenBuffer other, final int from, final int to, final long delta) {
+        runs.addAll(other.runs, from, to, delta, SHORT_RUN, this::copy);
+    }
+
+    // append tokens from to to of store, moving their offsets by delta
+    private void copy(final Store store, final int from, final int to, final long delta) {
+        for (int i = from; i < to; i++) {
+            final var lexeme = LEXEMES[store.lexemes[i]];
+            final long start = store.start(i) + delta;
+            final int value = store.data[i];
+            switch (lexeme) {
+                case NUMBER -> addNumber(start, store.numbers[value]);
+                case STRING -> addString(start, store.strings[value]);
+                default -> append(lexeme, start, value);
+            }
+        }
+    }
+
+    /**
+     * Write the tokens and line starts to {@code out}, to be read back by
+     * {@link #readFrom}. Only a buffer without scan errors can be written.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        if (!diagnostics.isEmpty()) {
+            throw new IllegalStateException("tokens with scan errors");
+        }
+
+        var tokens = own;
+        if (runs.count() > 1 || tokens.size != size()) {
+            // a re-scanned buffer is written as one store
+            final var flat = new TokenBuffer(source, symbols, lines, diagnostics);
+            for (int run = 0; run < runs.count(); run++) {
+                final int from = runs.local(run, runs.first(run));
+                flat.copy(runs.store(run), from, from + runs.length(run), runs.delta(run));
+            }
+            tokens = flat.own;
+        }
+
+        BinaryIo.writeBytes(out, tokens.lexemes, tokens.size);
+        BinaryIo.writeLongs(out, tokens.bases, blocks(tokens.size));
+        BinaryIo.writeInts(out, tokens.starts, tokens.size);
+        BinaryIo.writeInts(out, tokens.data, tokens.size);
+        BinaryIo.writeDoubles(out, tokens.numbers, tokens.numberCount);
+        out.writeInt(tokens.stringCount);
+        out.writeInt(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            final var name = symbols.symbol(i).name();
+            out.writeInt(name.length());
+            out.writeChars(name);
+        }
+        lines.writeTo(out);
+    }
+
+    /**
+     * Read tokens written by {@link #writeTo} for {@code source}, interning
+     * their identifiers into {@code symbols}. String values are read from the
+     * source when asked for, as usual.
+     *
+     * @throws IllegalArgumentException if the input is not a valid buffer
+     */
+    public static TokenBuffer readFrom(final ByteBuffer in, final Source source, final SymbolTable symbols) {
+        final var lexemes = BinaryIo.readBytes(in);
+        final var bases = BinaryIo.readLongs(in);
+        final var starts = BinaryIo.readInts(in);
+        final var data = BinaryIo.readInts(in);
+        final var numbers = BinaryIo.readDoubles(in);
+        final int stringCount = BinaryIo.readCount(in, 0, lexemes.length);
+        final var ids = new int[BinaryIo.readCount(in, 0, in.remaining() / Integer.BYTES)];
+        for (int i = 0; i < ids.length; i++) {
+            final var name = new char[BinaryIo.readCount(in, 1, in.remaining() / Character.BYTES)];
+            in.asCharBuffer().get(name);
+            in.position(in.position() + name.length * Character.BYTES);
+            ids[i] = symbols.intern(new String(name)).id();
+        }
+        final var lines = LineIndex.readFrom(in);
+
+        if (starts.length != lexemes.length || data.length != lexemes.length
+                || bases.length != blocks(lexemes.length)) {
+            throw new IllegalArgumentException("token arrays differ in length");
+        }
+
+        final var buffer = new TokenBuffer(source, symbols, lines, new Diagnostics(lines));
+        final var tokens = buffer.own;
+        tokens.lexemes = lexemes;
+        tokens.starts = starts;
+        tokens.bases = bases;
+        tokens.data = data;
+        tokens.size = lexemes.length;
+        tokens.numbers = numbers;
+        tokens.numberCount = numbers.length;
+        tokens.strings = new String[stringCount];
+        tokens.stringCount = stringCount;
+        for (int i = 0; i < tokens.size; i++) {
+            if (lexemes[i] < 0 || lexemes[i] >= LEXEMES.length) {
+                throw new IllegalArgumentException("invalid lexeme " + lexemes[i]);
+            }
+            final int limit = switch (LEXEMES[lexemes[i]]) {
+                case NUMBER -> numbers.length;
+                case STRING -> stringCount;
+                case IDENTIFIER -> ids.length;
+                default -> Integer.MAX_VALUE;
+            };
+            if (starts[i] < 0) {
+                throw new IllegalArgumentException("invalid token start " + starts[i]);
+            }
+            if (data[i] < 0 || data[i] >= limit) {
+                throw new IllegalArgumentException("invalid token data " + data[i]);
+            }
+            if (LEXEMES[lexemes[i]] == Lexemes.IDENTIFIER) {
+                data[i] = ids[data[i]];
+            }
+        }
+        buffer.runs.add(tokens, 0, tokens.size, 0);
+
+        return buffer;
+    }
+
+    /**
+     * Release spare capacity once scanning is done.
+     */
+    void trim() {
+        own.trim();
+    }
+
+    private void append(final Lexemes lexeme, final long start, final int value) {
+        own.append(lexeme, start, value);
+        runs.add(own, own.size - 1, own.size, 0);
+    }
+
+    // Arrays.binarySearch over the start offsets
+    private int search(final long offset) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long start = start(mid);
+            if (start < offset) {
+                low = mid + 1;
+            } else if (start > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private static int blocks(final int size) {
+        return (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    }
+
+    private int checkIndex(final int index) {
+        return Objects.checkIndex(index, size());
+    }
+
+    private void expect(final int index, final Lexemes expected) {
+        if (lexeme(index) != expected) {
+            throw new IllegalArgumentException(
+                    "token " + index + " is " + lexeme(index).name() + ", not " + expected.name());
+        }
+    }
+
+    /**
+     * The tokens scanned into one buffer, at offsets in the source they were
+     * scanned from.
+     */
+    private static final class Store {
+        private final Source source;
+
+        private byte[] lexemes = new byte[INITIAL_CAPACITY];
+        // start offsets relative to their block's base, the start of its first token
+        private int[] starts = new int[INITIAL_CAPACITY];
+        private long[] bases = new long[1];
+        private int[] data = new int[INITIAL_CAPACITY];
+        private int size;
+
+        // side tables for token values; strings are null until asked for
+        private double[] numbers = new double[16];
+        private int numberCount;
+        private String[] strings = new String[16];
+        private int stringCount;
+
+        Store(final Source source) {
+            this.source = source;
+        }
+
+        long start(final int index) {
+            return bases[index >>> BLOCK_SHIFT] + starts[index];
+        }
+
+        // the length of the value token at index
+        long length(final int index, final Lexemes lexeme) {
+            return TokenStream.tokenLength(source.cursor(start(index)), lexeme);
+        }
+
+        String string(final int index) {
+            var value = strings[data[index]];
+            if (value == null) {
+                final long start = start(index);
+                value = source.cursor(start).text(start + 1, start + length(index, Lexemes.STRING) - 1);
+                strings[data[index]] = value;
+            }
+
+            return value;
+        }
+
+        int addNumber(final double value) {
+            if (numberCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numberCount * 2);
+            }
+            numbers[numberCount] = value;
+            return numberCount++;
+        }
+
+        int addString(final String value) {
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount * 2);
+            }
+            strings[stringCount] = value;
+            return stringCount++;
+        }
+
+        void append(final Lexemes lexeme, final long start, final int value) {
+            if (size == lexemes.length) {
+                final int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+                lexemes = Arrays.copyOf(lexemes, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                data = Arrays.copyOf(data, capacity);
+            }
+
+            final int block = size >>> BLOCK_SHIFT;
+            if ((size & (BLOCK_SIZE - 1)) == 0) {
+                if (block == bases.length) {
+                    bases = Arrays.copyOf(bases, Math.max(1, block * 2));
+                }
+                bases[block] = start;
+            }
+            final long relative = start - bases[block];
+            if (relative > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("token at " + start + " is over 2GB past the start of its block");
+            }
+
+            lexemes[size] = (byte) lexeme.ordinal();
+            starts[size] = (int) relative;
+            data[size] = value;
+            ++size;
+        }
+
+        void trim() {
+            lexemes = Arrays.copyOf(lexemes, size);
+            starts = Arrays.copyOf(starts, size);
+            bases = Arrays.copyOf(bases, blocks(size));
+            data = Arrays.copyOf(data, size);
+            numbers = Arrays.copyOf(numbers, numberCount);
+            strings = Arrays.copyOf(strings, stringCount);
+        }
+    }
+
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+        @Override
+        public Token get(final int index) {
+            return token(index);
+        }
+
+        @Override
+        public int size() {
+            return TokenBuffer.this.size();
+        }
+    }
+}
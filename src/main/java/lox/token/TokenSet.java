@@ -0,0 +1,49 @@
+package lox.token;
+
+import lox.token.Tokens.Lexemes;
+
+/**
+ * An immutable set of lexemes held as a bitmask of their ordinals.
+ *
+ * The Parser keeps one per grammar level, so matching the next token against
+ * all the operators of a level is a single shift and mask.
+ */
+public final class TokenSet {
+
+    static {
+        assert Lexemes.values().length <= Long.SIZE : "too many lexemes for a long mask";
+    }
+
+    private final long bits;
+
+    private TokenSet(final long bits) {
+        this.bits = bits;
+    }
+
+    public static TokenSet of(final Lexemes... lexemes) {
+        long bits = 0;
+        for (var lexeme : lexemes) {
+            bits |= 1L << lexeme.ordinal();
+        }
+
+        return new TokenSet(bits);
+    }
+
+    public boolean contains(final Lexemes lexeme) {
+        return (bits & (1L << lexeme.ordinal())) != 0;
+    }
+
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder("TokenSet[");
+        var separator = "";
+        for (var lexeme : Lexemes.values()) {
+            if (contains(lexeme)) {
+                sb.append(separator).append(lexeme.name());
+                separator = ", ";
+            }
+        }
+
+        return sb.append(']').toString();
+    }
+}
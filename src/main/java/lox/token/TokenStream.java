@@ -0,0 +1,434 @@
+package lox.token;
+
+import static lox.util.LogUtil.trace;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import lox.Diagnostics;
+import lox.Diagnostics.Code;
+import lox.LineIndex;
+import lox.token.Tokens.Lexemes;
+import lox.util.Cursor;
+import lox.util.PeekableIterator;
+
+/**
+ * A lazy stream of tokens over a source.
+ *
+ * Tokens are scanned on demand, one token ahead of the consumer, so a Parser
+ * pulling from the stream overlaps scanning and parsing and never holds the
+ * full token list. Scan errors are reported to the stream's
+ * {@link Diagnostics} as they are found, without throwing. The rest of a
+ * stream can also be drained into a {@link TokenBuffer} without creating any
+ * token objects.
+ *
+ * Looking ahead only scans the next lexeme; its Token object is created when
+ * it is consumed or peeked at as a Token. The parser matches with
+ * {@link #match(Lexemes)} and {@link #nextIf(TokenSet)}, which allocate
+ * neither an Optional nor a predicate, and no token at all for a punctuation
+ * token that is only checked for.
+ *
+ * A stream can also replay a range of an already scanned
+ * {@link TokenBuffer}; see {@link TokenBuffer#stream(int, int)}.
+ */
+public class TokenStream implements PeekableIterator<Token> {
+
+    private final Cursor chars;
+    private final SymbolTable symbols;
+    private final LineIndex lines;
+    private final Diagnostics diagnostics;
+    private long limit = Long.MAX_VALUE;
+    // the scanned but not yet consumed lexeme, and its token if asked for
+    private Lexemes peeked;
+    private Token peekedToken;
+
+    // the token last found by scanToken()
+    private long tokenStart;
+    private Symbol symbol;
+    private double number;
+    // contents of a string literal, without the quotes
+    private long stringStart;
+    private long stringEnd;
+    private SourceSlices slices;
+
+    // when replaying a buffer: the next token and the end of the range
+    private final TokenBuffer buffer;
+    private int index;
+    private final int end;
+
+    TokenStream(final Cursor chars, final SymbolTable symbols, final LineIndex lines,
+            final Diagnostics diagnostics) {
+        this.chars = chars;
+        this.symbols = symbols;
+        this.lines = lines;
+        this.diagnostics = diagnostics;
+        this.buffer = null;
+        this.end = 0;
+    }
+
+    TokenStream(final TokenBuffer buffer, final int from, final int to) {
+        this.chars = null;
+        this.symbols = buffer.symbols();
+        this.lines = buffer.lines();
+        this.diagnostics = buffer.diagnostics();
+        this.buffer = buffer;
+        this.index = from;
+        this.end = to;
+    }
+
+    /**
+     * @returns the scan errors found so far; complete once the stream is
+     *          exhausted
+     */
+    public Diagnostics diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Stop at the first token that would start at or after {@code limit}. A
+     * token that starts before it is still scanned to its end.
+     */
+    TokenStream until(final long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @returns the offset scanning has reached
+     */
+    long offset() {
+        return chars.offset();
+    }
+
+    /**
+     * @returns the line starts seen so far; complete once the stream is exhausted
+     */
+    public LineIndex lines() {
+        return lines;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fill() != null;
+    }
+
+    @Override
+    public Token next() {
+        final var token = peekToken();
+        if (token == null) {
+            throw new NoSuchElementException();
+        }
+
+        consume();
+        return token;
+    }
+
+    @Override
+    public Optional<Token> peek() {
+        return Optional.ofNullable(peekToken());
+    }
+
+    /**
+     * @returns the next token, or null at the end of input
+     */
+    public Token peekToken() {
+        if (peekedToken == null) {
+            final var lexeme = fill();
+            if (lexeme != null) {
+                peekedToken = token(lexeme);
+            }
+        }
+
+        return peekedToken;
+    }
+
+    /**
+     * @returns the lexeme of the next token, or null at the end of input
+     */
+    public Lexemes peekLexeme() {
+        return fill();
+    }
+
+    /**
+     * @returns the offset of the next token, or of the end of input
+     */
+    public long peekOffset() {
+        if (fill() == null) {
+            return buffer == null ? chars.offset() : buffer.source().length();
+        }
+
+        return buffer == null ? tokenStart : buffer.start(index);
+    }
+
+    /**
+     * Consume the next token if it is a {@code lexeme}, without creating it.
+     *
+     * @returns whether it was consumed
+     */
+    public boolean match(final Lexemes lexeme) {
+        if (fill() != lexeme) {
+            return false;
+        }
+
+        consume();
+        return true;
+    }
+
+    /**
+     * Consume the next token if its lexeme is in {@code set}.
+     *
+     * @returns the token, or null if it was not consumed
+     */
+    public Token nextIf(final TokenSet set) {
+        final var lexeme = fill();
+        return lexeme != null && set.contains(lexeme) ? next() : null;
+    }
+
+    private Lexemes fill() {
+        if (peeked == null) {
+            if (buffer == null) {
+                peeked = scanToken();
+            } else if (index < end) {
+                peeked = buffer.lexeme(index);
+            }
+        }
+
+        return peeked;
+    }
+
+    private void consume() {
+        peeked = null;
+        peekedToken = null;
+        if (buffer != null) {
+            ++index;
+        }
+    }
+
+    /**
+     * Scan the rest of the input straight into {@code buffer}, without creating
+     * token objects.
+     */
+    void drainTo(final TokenBuffer buffer) {
+        while (scanInto(buffer)) {
+        }
+    }
+
+    /**
+     * Scan the next token straight into {@code buffer}.
+     *
+     * @returns false at the end of input
+     */
+    boolean scanInto(final TokenBuffer buffer) {
+        final var lexeme = scanToken();
+        if (lexeme == null) {
+            return false;
+        }
+
+        switch (lexeme) {
+            case NUMBER -> buffer.addNumber(tokenStart, number);
+            case STRING -> buffer.addString(tokenStart, null);
+            case IDENTIFIER -> buffer.addSymbol(tokenStart, symbol);
+            default -> buffer.add(lexeme, tokenStart);
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the values of string tokens not yet asked for and stop referring to
+     * the source from them; call once the tokens are no longer being scanned,
+     * e.g. when the program is parsed.
+     */
+    public void release() {
+        if (slices != null) {
+            slices.release();
+        }
+    }
+
+    private SourceSlices slices() {
+        if (slices == null) {
+            slices = new SourceSlices(chars);
+        }
+
+        return slices;
+    }
+
+    /**
+     * Re-scan the value token of kind {@code lexeme} that starts at the
+     * cursor's position.
+     *
+     * @returns the token's length
+     */
+    static long tokenLength(final Cursor chars, final Lexemes lexeme) {
+        final long start = chars.offset();
+        chars.next();
+        switch (lexeme) {
+            case NUMBER -> skipNumber(chars);
+            case STRING -> {
+                chars.skipUntil('"');
+                chars.next();
+            }
+            case IDENTIFIER -> skipIdentifier(chars);
+            default -> throw new IllegalArgumentException(lexeme + " is not a value token");
+        }
+
+        return chars.offset() - start;
+    }
+
+    private Token token(final Lexemes lexeme) {
+        if (buffer != null) {
+            return buffer.token(index);
+        }
+
+        final SpanningToken token = switch (lexeme) {
+            case NUMBER -> new DoubleToken(chars.text(tokenStart, chars.offset()), number);
+            case STRING -> slices().slice(stringStart, stringEnd);
+            case IDENTIFIER -> new IdentifierToken(symbol);
+            default -> new SpanningToken(lexeme);
+        };
+        token.withOffset(tokenStart);
+
+        return token;
+    }
+
+    // scan up to and including the next token, leaving its start and value in
+    // the token fields; null at the end of input
+    private Lexemes scanToken() {
+        while (chars.hasNext() && chars.offset() < limit) {
+            tokenStart = chars.offset();
+            final int c = chars.next();
+            final Lexemes lexeme = switch (c) {
+                case ' ', '\t', '\r' -> {
+                    chars.skipBlanks();
+                    yield null;
+                }
+                case '\n' -> {
+                    lines.add(chars.offset());
+                    yield null;
+                }
+                case '{' -> Lexemes.LEFT_BRACE;
+                case '}' -> Lexemes.RIGHT_BRACE;
+                case '(' -> Lexemes.LEFT_PAREN;
+                case ')' -> Lexemes.RIGHT_PAREN;
+                case ',' -> Lexemes.COMMA;
+                case '.' -> Lexemes.DOT;
+                case '+' -> Lexemes.PLUS;
+                case '-' -> Lexemes.MINUS;
+                case ';' -> Lexemes.SEMICOLON;
+                case '*' -> Lexemes.STAR;
+                case '<' -> chars.match('=') ? Lexemes.LESS_EQUAL : Lexemes.LESS;
+                case '>' -> chars.match('=') ? Lexemes.GREATER_EQUAL : Lexemes.GREATER;
+                case '!' -> chars.match('=') ? Lexemes.BANG_EQUAL : Lexemes.BANG;
+                case '=' -> chars.match('=') ? Lexemes.EQUAL_EQUAL : Lexemes.EQUAL;
+                case '/' -> {
+                    // check for line comment
+                    if (chars.match('/')) {
+                        chars.skipUntil('\n');
+                        yield null;
+                    } else {
+                        yield Lexemes.SLASH;
+                    }
+                }
+                case '"' -> string();
+                default -> {
+                    if (Character.isDigit(c)) {
+                        yield number();
+                    } else if (isIdentifierStart(c)) {
+                        yield identifier();
+                    }
+
+                    diagnostics.report(Code.UNEXPECTED_CHARACTER, tokenStart, c);
+                    yield null;
+                }
+            };
+
+            if (lexeme != null) {
+                return lexeme;
+            }
+        }
+
+        return null;
+    }
+
+    private Lexemes string() {
+        trace("found start of quoted string");
+        final long start = chars.offset();
+        chars.skipUntil('"');
+        addLines(start, chars.offset());
+
+        if (!chars.hasNext()) {
+            diagnostics.report(Code.UNTERMINATED_STRING, chars.offset(), 0);
+            return null;
+        }
+
+        stringStart = start;
+        stringEnd = chars.offset();
+        chars.next(); // eat closing '"'
+
+        return Lexemes.STRING;
+    }
+
+    // record the newlines inside a multi-line string
+    private void addLines(final long start, final long end) {
+        for (long i = chars.indexOf('\n', start, end); i < end; i = chars.indexOf('\n', i + 1, end)) {
+            lines.add(i + 1);
+        }
+    }
+
+    private Lexemes number() {
+        skipNumber(chars);
+        number = DoubleToken.parse(chars, tokenStart, chars.offset());
+        return Lexemes.NUMBER;
+    }
+
+    // skip the rest of a number whose first digit has been read
+    private static void skipNumber(final Cursor chars) {
+        chars.skipDigits();
+        while (Character.isDigit(chars.peek()) || chars.peek() == '.') {
+            final int cur = chars.next();
+
+            if (cur == '.' && !Character.isDigit(chars.peek())) {
+                // two '.' in a row e.g. 1..foo; so the number is '1.' and the 2nd '.' is a
+                // separate token
+                break;
+            }
+            chars.skipDigits();
+        }
+    }
+
+    private Lexemes identifier() {
+        skipIdentifier(chars);
+
+        final int length = (int) (chars.offset() - tokenStart);
+        final var keyword = Lexemes.keyword(chars, tokenStart, length);
+        if (keyword != null) {
+            return keyword;
+        }
+
+        symbol = symbols.intern(chars, tokenStart, length);
+        return Lexemes.IDENTIFIER;
+    }
+
+    // skip the rest of an identifier whose first character has been read
+    private static void skipIdentifier(final Cursor chars) {
+        // ASCII runs in bulk, anything else a character at a time
+        chars.skipWord();
+        while (isIdentifierPart(chars.peek())) {
+            chars.next();
+            chars.skipWord();
+        }
+    }
+
+    private static boolean isIdentifierStart(final int c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(final int c) {
+        return Character.isLetter(c) || Character.isDigit(c) || c == '_';
+    }
+}
@@ -1,6 +1,9 @@
 package lox.token;
 
-import lox.Span;
+import java.util.Arrays;
+import java.util.List;
+import lox.util.CharCursor;
+import lox.util.Cursor;
 
 public class Tokens {
 
@@ -74,34 +77,80 @@ public class Tokens {
         }
 
         public static boolean isKeyword(String val) {
-            return (val.equals(TRUE.value()) ||
-                    val.equals(Lexemes.FALSE.value()) ||
-                    val.equals(Lexemes.NIL.value()) ||
-                    val.equals(Lexemes.AND.value()) ||
-                    val.equals(Lexemes.OR.value()) ||
-                    val.equals(Lexemes.CLASS.value()) ||
-                    val.equals(Lexemes.FOR.value()) ||
-                    val.equals(Lexemes.FUN.value()) ||
-                    val.equals(Lexemes.IF.value()) ||
-                    val.equals(Lexemes.ELSE.value()) ||
-                    val.equals(Lexemes.RETURN.value()) ||
-                    val.equals(Lexemes.SUPER.value()) ||
-                    val.equals(Lexemes.THIS.value()) ||
-                    val.equals(Lexemes.WHILE.value()) ||
-                    val.equals(Lexemes.VAR.value()) ||
-                    val.equals(Lexemes.PRINT.value()));
+            return keyword(new CharCursor(val), 0, val.length()) != null;
+        }
+
+        /**
+         * Look up the keyword spelled by {@code length} chars of {@code source}
+         * starting at {@code start}, without copying them out first.
+         *
+         * @returns the keyword's Lexemes constant, or null if the range is not a
+         *          keyword
+         */
+        public static Lexemes keyword(Cursor source, long start, int length) {
+            if (length < 2 || length > MAX_KEYWORD_LENGTH) {
+                return null;
+            }
+
+            final int first = source.unitAt(start);
+            if (first < 'a' || first > 'z') {
+                return null;
+            }
+
+            final var candidates = KEYWORDS[keywordSlot(first, length)];
+            if (candidates == null) {
+                return null;
+            }
+
+            next: for (var candidate : candidates) {
+                final var text = candidate.lexeme;
+                for (int i = 1; i < length; i++) {
+                    if (source.unitAt(start + i) != text.charAt(i)) {
+                        continue next;
+                    }
+                }
+                return candidate;
+            }
+
+            return null;
         }
 
         public String toString() {
             return name() + " " + value();
         }
+
+        private static final int MAX_KEYWORD_LENGTH = 6;
+
+        // keywords bucketed by first letter and length; no bucket holds more than
+        // two entries (for/fun, this/true)
+        private static final Lexemes[][] KEYWORDS = new Lexemes[26 * (MAX_KEYWORD_LENGTH + 1)][];
+
+        static {
+            for (var lexeme : List.of(TRUE, FALSE, NIL, AND, OR, CLASS, FOR, FUN,
+                    IF, ELSE, RETURN, SUPER, THIS, VAR, WHILE, PRINT)) {
+                final var text = lexeme.lexeme;
+                final int slot = keywordSlot(text.charAt(0), text.length());
+                final var bucket = KEYWORDS[slot];
+                if (bucket == null) {
+                    KEYWORDS[slot] = new Lexemes[] { lexeme };
+                } else {
+                    final var grown = Arrays.copyOf(bucket, bucket.length + 1);
+                    grown[bucket.length] = lexeme;
+                    KEYWORDS[slot] = grown;
+                }
+            }
+        }
+
+        private static int keywordSlot(int first, int length) {
+            return (first - 'a') * (MAX_KEYWORD_LENGTH + 1) + length;
+        }
     }
 
     public static class TokenBuilder {
 
         private final Lexemes lexeme;
         private Object value;
-        private Span span;
+        private long offset = -1;
 
         TokenBuilder(Lexemes lexeme) {
             this.lexeme = lexeme;
@@ -112,28 +161,24 @@ public class Tokens {
             return this;
         }
 
-        public TokenBuilder withSpan(long line, long offset, long length) {
-            return this.withSpan(Span.of(line, offset, length));
-        }
-
-        public TokenBuilder withSpan(Span span) {
-            this.span = span;
+        public TokenBuilder withOffset(long offset) {
+            this.offset = offset;
             return this;
         }
 
         public Token build() {
             Token t = switch (lexeme) {
                 case STRING -> new StringToken((String) value);
-                case NUMBER -> {
-                    yield new DoubleToken((String) value);
-                }
-                case IDENTIFIER -> new IdentifierToken((String) value);
+                case NUMBER -> value instanceof Double number
+                        ? new DoubleToken(number.toString(), number)
+                        : new DoubleToken((String) value);
+                case IDENTIFIER -> value instanceof Symbol symbol
+                        ? new IdentifierToken(symbol)
+                        : new IdentifierToken((String) value);
                 default -> new SpanningToken(lexeme);
             };
 
-            if (span != null) {
-                ((SpanningToken) t).withSpan(span);
-            }
+            ((SpanningToken) t).withOffset(offset);
 
             return t;
         }
@@ -144,8 +189,8 @@ public class Tokens {
                     lexeme +
                     ", value=" +
                     value +
-                    ", span=" +
-                    span +
+                    ", offset=" +
+                    offset +
                     "]");
         }
     }
@@ -2,15 +2,20 @@ package lox.token;
 
 public class UnexpectedCharacterException extends ParseException {
 
-    final Character actual;
+    final int actual;
 
-    public UnexpectedCharacterException(Character actual, lox.Span span) {
+    public UnexpectedCharacterException(int actual, lox.Span span) {
         super("Unexpected character", span);
         this.actual = actual;
     }
 
+    public UnexpectedCharacterException(int actual, lox.LineIndex lines, long offset) {
+        super("Unexpected character", lines, offset, 1);
+        this.actual = actual;
+    }
+
     @Override
     public String toString() {
-        return super.toString() + ": " + actual;
+        return super.toString() + ": " + Character.toString(actual);
     }
 }
@@ -9,6 +9,11 @@ public class UnterminatedStringException extends ParseException {
         this.msg = msg;
     }
 
+    public UnterminatedStringException(String msg, lox.LineIndex lines, long offset) {
+        super("Unterminated string", lines, offset, 0);
+        this.msg = msg;
+    }
+
     @Override
     public String toString() {
         return super.toString() + ".";
@@ -0,0 +1,86 @@
+package lox.util;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Runs of ASCII characters the Scanner skips over in bulk: blanks, words
+ * (letters, digits and '_'), digits and everything up to a given character.
+ *
+ * Each method returns the index of the first unit at or after {@code from}
+ * that ends the run, or {@code to}. Non-ASCII units always end a run, so
+ * callers fall back to their per-character checks for them.
+ */
+final class AsciiScan {
+
+  private AsciiScan() {
+  }
+
+  static long skipBlanks(MemorySegment in, long from, long to) {
+    while (from < to && isBlank(in.get(ValueLayout.JAVA_BYTE, from))) {
+      ++from;
+    }
+    return from;
+  }
+
+  static int skipBlanks(char[] in, int from, int to) {
+    while (from < to && isBlank(in[from])) {
+      ++from;
+    }
+    return from;
+  }
+
+  static long skipWord(MemorySegment in, long from, long to) {
+    while (from < to && isWord(in.get(ValueLayout.JAVA_BYTE, from))) {
+      ++from;
+    }
+    return from;
+  }
+
+  static int skipWord(char[] in, int from, int to) {
+    while (from < to && isWord(in[from])) {
+      ++from;
+    }
+    return from;
+  }
+
+  static long skipDigits(MemorySegment in, long from, long to) {
+    while (from < to && isDigit(in.get(ValueLayout.JAVA_BYTE, from))) {
+      ++from;
+    }
+    return from;
+  }
+
+  static int skipDigits(char[] in, int from, int to) {
+    while (from < to && isDigit(in[from])) {
+      ++from;
+    }
+    return from;
+  }
+
+  static long indexOf(MemorySegment in, long from, long to, char c) {
+    while (from < to && in.get(ValueLayout.JAVA_BYTE, from) != c) {
+      ++from;
+    }
+    return from;
+  }
+
+  static int indexOf(char[] in, int from, int to, char c) {
+    while (from < to && in[from] != c) {
+      ++from;
+    }
+    return from;
+  }
+
+  static boolean isBlank(int c) {
+    return c == ' ' || c == '\t' || c == '\r';
+  }
+
+  static boolean isWord(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+}
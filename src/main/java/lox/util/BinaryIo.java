@@ -0,0 +1,100 @@
+package lox.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Length-prefixed primitive arrays in big-endian binary form, written with a
+ * DataOutput and read back from a (typically memory-mapped) ByteBuffer. Both
+ * ways convert whole arrays through a ByteBuffer view, a chunk at a time when
+ * writing, rather than one value per call.
+ *
+ * Reads check each length against the bytes left before allocating, so a
+ * damaged input fails with an IllegalArgumentException rather than an
+ * OutOfMemoryError.
+ */
+public abstract class BinaryIo {
+
+    // values converted per write
+    private static final int CHUNK = 1 << 12;
+
+    public static void writeBytes(final DataOutput out, final byte[] values, final int length) throws IOException {
+        out.writeInt(length);
+        out.write(values, 0, length);
+    }
+
+    public static void writeInts(final DataOutput out, final int[] values, final int length) throws IOException {
+        out.writeInt(length);
+        final var buffer = ByteBuffer.allocate(Math.min(length, CHUNK) * Integer.BYTES);
+        for (int from = 0; from < length; from += CHUNK) {
+            final int count = Math.min(CHUNK, length - from);
+            buffer.clear().asIntBuffer().put(values, from, count);
+            out.write(buffer.array(), 0, count * Integer.BYTES);
+        }
+    }
+
+    public static void writeLongs(final DataOutput out, final long[] values, final int length) throws IOException {
+        out.writeInt(length);
+        final var buffer = ByteBuffer.allocate(Math.min(length, CHUNK) * Long.BYTES);
+        for (int from = 0; from < length; from += CHUNK) {
+            final int count = Math.min(CHUNK, length - from);
+            buffer.clear().asLongBuffer().put(values, from, count);
+            out.write(buffer.array(), 0, count * Long.BYTES);
+        }
+    }
+
+    public static void writeDoubles(final DataOutput out, final double[] values, final int length)
+            throws IOException {
+        out.writeInt(length);
+        final var buffer = ByteBuffer.allocate(Math.min(length, CHUNK) * Double.BYTES);
+        for (int from = 0; from < length; from += CHUNK) {
+            final int count = Math.min(CHUNK, length - from);
+            buffer.clear().asDoubleBuffer().put(values, from, count);
+            out.write(buffer.array(), 0, count * Double.BYTES);
+        }
+    }
+
+    public static byte[] readBytes(final ByteBuffer in) {
+        final var values = new byte[length(in, Byte.BYTES)];
+        in.get(values);
+        return values;
+    }
+
+    public static int[] readInts(final ByteBuffer in) {
+        final var values = new int[length(in, Integer.BYTES)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    public static long[] readLongs(final ByteBuffer in) {
+        final var values = new long[length(in, Long.BYTES)];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    public static double[] readDoubles(final ByteBuffer in) {
+        final var values = new double[length(in, Double.BYTES)];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + values.length * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * @returns a count read from {@code in}, checked to be at least
+     *          {@code min} and at most {@code max}
+     */
+    public static int readCount(final ByteBuffer in, final int min, final int max) {
+        final int count = in.getInt();
+        if (count < min || count > max) {
+            throw new IllegalArgumentException("invalid count " + count);
+        }
+        return count;
+    }
+
+    private static int length(final ByteBuffer in, final int unit) {
+        return readCount(in, 0, in.remaining() / unit);
+    }
+}
@@ -0,0 +1,104 @@
+package lox.util;
+
+/**
+ * A {@link Cursor} over a char[] with a primitive int offset.
+ *
+ * Unlike {@link CharSequencePeekableIterator} nothing is boxed and peeking
+ * never allocates.
+ */
+public final class CharCursor implements Cursor {
+
+  private final char[] in;
+  private final int end;
+  private int offset;
+
+  public CharCursor(CharSequence in) {
+    this(in.toString().toCharArray());
+  }
+
+  public CharCursor(char[] in) {
+    this(in, 0);
+  }
+
+  public CharCursor(char[] in, int start) {
+    this.in = in;
+    this.end = in.length;
+    this.offset = start;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return offset < end;
+  }
+
+  @Override
+  public int next() {
+    return in[offset++];
+  }
+
+  @Override
+  public int peek() {
+    return offset < end ? in[offset] : EOF;
+  }
+
+  @Override
+  public boolean match(char c) {
+    if (offset < end && in[offset] == c) {
+      ++offset;
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void skipUntil(char c) {
+    offset = AsciiScan.indexOf(in, offset, end, c);
+  }
+
+  @Override
+  public void skipBlanks() {
+    offset = AsciiScan.skipBlanks(in, offset, end);
+  }
+
+  @Override
+  public void skipWord() {
+    offset = AsciiScan.skipWord(in, offset, end);
+  }
+
+  @Override
+  public void skipDigits() {
+    offset = AsciiScan.skipDigits(in, offset, end);
+  }
+
+  @Override
+  public long indexOf(char c, long from, long to) {
+    return AsciiScan.indexOf(in, (int) from, (int) to, c);
+  }
+
+  @Override
+  public long offset() {
+    return offset;
+  }
+
+  @Override
+  public long length() {
+    return end;
+  }
+
+  @Override
+  public int unitAt(long index) {
+    return in[(int) index];
+  }
+
+  @Override
+  public String text(long start, long end) {
+    return new String(in, (int) start, (int) (end - start));
+  }
+
+  @Override
+  public String toString() {
+    return ("CharCursor[offset = " + offset + ", next() = " +
+        (offset < end ? in[offset] : "EOF") + "]");
+  }
+}
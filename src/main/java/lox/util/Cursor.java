@@ -0,0 +1,74 @@
+package lox.util;
+
+/**
+ * A forward cursor over source text with a primitive long offset.
+ *
+ * Characters are returned as ints and the end of input is signalled by
+ * {@link #EOF}, so stepping through the input never boxes or allocates.
+ * Offsets are in the units of the underlying input: chars for a
+ * {@link CharCursor}, bytes for a {@link Utf8Cursor}.
+ */
+public interface Cursor {
+
+  int EOF = -1;
+
+  boolean hasNext();
+
+  /**
+   * Consume and return the next character. Callers must check
+   * {@link #hasNext()} first.
+   */
+  int next();
+
+  /**
+   * @returns the next character without consuming it, or {@link #EOF}
+   */
+  int peek();
+
+  /**
+   * Consume the next character if it is {@code c}.
+   */
+  boolean match(char c);
+
+  /**
+   * Advance to the next occurrence of the ASCII character {@code c}, or the
+   * end of input, without consuming it.
+   */
+  void skipUntil(char c);
+
+  /**
+   * Advance past any spaces, tabs and carriage returns.
+   */
+  void skipBlanks();
+
+  /**
+   * Advance past any ASCII letters, digits and '_'.
+   */
+  void skipWord();
+
+  /**
+   * Advance past any ASCII digits.
+   */
+  void skipDigits();
+
+  /**
+   * @returns the index of the first ASCII character {@code c} between two
+   *          offsets, or {@code to}, independent of the current offset
+   */
+  long indexOf(char c, long from, long to);
+
+  long offset();
+
+  long length();
+
+  /**
+   * @returns the raw code unit at {@code index}, independent of the current
+   *          offset
+   */
+  int unitAt(long index);
+
+  /**
+   * @returns the decoded text between two offsets
+   */
+  String text(long start, long end);
+}
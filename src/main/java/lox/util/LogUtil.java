@@ -3,6 +3,23 @@ package lox.util;
 public abstract class LogUtil {
 
     private static final String TRACE = "TRACE_ENABLED";
+    private static final boolean TRACING = System.getenv().containsKey(TRACE);
+
+    /**
+     * @returns true if running with {@code -Dlox.debug=true} or with tracing
+     *          enabled, e.g. to capture stack traces
+     */
+    public static boolean debug() {
+        return Boolean.getBoolean("lox.debug") || TRACING;
+    }
+
+    /**
+     * @returns true if tracing is enabled; check it before building a trace
+     *          message that is not a constant
+     */
+    public static boolean tracing() {
+        return TRACING;
+    }
 
     public static void log(String msg) {
         System.out.println(msg);
@@ -15,14 +32,14 @@ public abstract class LogUtil {
     }
 
     public static void trace(String msg) {
-        if (System.getenv().containsKey(TRACE)) {
+        if (TRACING) {
             System.err.println(msg);
             System.err.flush();
         }
     }
 
     public static void trace(Throwable t) {
-        if (System.getenv().containsKey(TRACE)) {
+        if (TRACING) {
             System.err.println(t);
             System.err.flush();
         }
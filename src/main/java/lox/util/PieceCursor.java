@@ -0,0 +1,178 @@
+package lox.util;
+
+/**
+ * A {@link Cursor} over text kept in pieces of char arrays, e.g. a source
+ * after edits: the text of piece {@code i} is
+ * {@code arrays[i][froms[i] .. froms[i] + starts[i + 1] - starts[i]]} and
+ * starts at offset {@code starts[i]}.
+ *
+ * Within a piece it works like a {@link CharCursor}; runs are skipped a
+ * piece at a time.
+ */
+public final class PieceCursor implements Cursor {
+
+  private final char[][] arrays;
+  private final int[] froms;
+  private final long[] starts;
+  private final int pieces;
+
+  // the current piece, and the current and end index into its array
+  private int piece;
+  private char[] in;
+  private int at;
+  private int end;
+
+  /**
+   * @param starts the offset of each piece, followed by the length of the
+   *               text
+   */
+  public PieceCursor(char[][] arrays, int[] froms, long[] starts, long start) {
+    this.arrays = arrays;
+    this.froms = froms;
+    this.starts = starts;
+    this.pieces = arrays.length;
+    if (pieces == 0) {
+      in = new char[0];
+    } else {
+      moveTo(Math.min(find(start), pieces - 1));
+      at += (int) (start - starts[piece]);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return at < end || nextPiece();
+  }
+
+  @Override
+  public int next() {
+    if (at == end) {
+      nextPiece();
+    }
+    return in[at++];
+  }
+
+  @Override
+  public int peek() {
+    return at < end || nextPiece() ? in[at] : EOF;
+  }
+
+  @Override
+  public boolean match(char c) {
+    if ((at < end || nextPiece()) && in[at] == c) {
+      ++at;
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void skipUntil(char c) {
+    do {
+      at = AsciiScan.indexOf(in, at, end, c);
+    } while (at == end && nextPiece());
+  }
+
+  @Override
+  public void skipBlanks() {
+    do {
+      at = AsciiScan.skipBlanks(in, at, end);
+    } while (at == end && nextPiece());
+  }
+
+  @Override
+  public void skipWord() {
+    do {
+      at = AsciiScan.skipWord(in, at, end);
+    } while (at == end && nextPiece());
+  }
+
+  @Override
+  public void skipDigits() {
+    do {
+      at = AsciiScan.skipDigits(in, at, end);
+    } while (at == end && nextPiece());
+  }
+
+  @Override
+  public long indexOf(char c, long from, long to) {
+    for (int i = find(from); i < pieces && starts[i] < to; i++) {
+      final int base = froms[i];
+      final int first = base + (int) (Math.max(from, starts[i]) - starts[i]);
+      final int last = base + (int) (Math.min(to, starts[i + 1]) - starts[i]);
+      final int found = AsciiScan.indexOf(arrays[i], first, last, c);
+      if (found < last) {
+        return starts[i] + found - base;
+      }
+    }
+
+    return to;
+  }
+
+  @Override
+  public long offset() {
+    return pieces == 0 ? 0 : starts[piece] + at - froms[piece];
+  }
+
+  @Override
+  public long length() {
+    return starts[pieces];
+  }
+
+  @Override
+  public int unitAt(long index) {
+    final int i = find(index);
+    return arrays[i][froms[i] + (int) (index - starts[i])];
+  }
+
+  @Override
+  public String text(long start, long end) {
+    final var text = new StringBuilder((int) (end - start));
+    for (int i = find(start); i < pieces && starts[i] < end; i++) {
+      final int first = froms[i] + (int) (Math.max(start, starts[i]) - starts[i]);
+      final int last = froms[i] + (int) (Math.min(end, starts[i + 1]) - starts[i]);
+      text.append(arrays[i], first, last - first);
+    }
+
+    return text.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "PieceCursor[offset = " + offset() + ", piece = " + piece + "]";
+  }
+
+  // move to the start of the next piece, if there is one
+  private boolean nextPiece() {
+    if (piece + 1 >= pieces) {
+      return false;
+    }
+
+    moveTo(piece + 1);
+    return true;
+  }
+
+  private void moveTo(int i) {
+    piece = i;
+    in = arrays[i];
+    at = froms[i];
+    end = at + (int) (starts[i + 1] - starts[i]);
+  }
+
+  // the piece holding offset, or the number of pieces at the end
+  private int find(long offset) {
+    int low = 0;
+    int high = pieces;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (starts[mid + 1] <= offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+}
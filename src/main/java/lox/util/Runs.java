@@ -0,0 +1,148 @@
+package lox.util;
+
+import java.util.Arrays;
+
+/**
+ * The layout of a sequence made of runs of elements kept in other stores,
+ * e.g. the tokens of an edited source: the unchanged tokens before and after
+ * the edit stay in the stores they were scanned into, and only the re-scanned
+ * ones are new.
+ *
+ * Element {@code i} of the sequence is element {@link #local(int, int)} of
+ * the store of run {@link #find(int)}, with its offset moved by the run's
+ * {@link #delta(int)}. Adding a run that continues the last one extends it,
+ * so the number of runs grows with the number of edits, not with the number
+ * of elements.
+ */
+public final class Runs<S> {
+
+  /**
+   * Appends elements of a store as new elements, e.g. by copying them into
+   * the caller's own store.
+   */
+  @FunctionalInterface
+  public interface Copy<S> {
+    void copy(S store, int from, int to, long delta);
+  }
+
+  private Object[] stores = new Object[4];
+  private int[] froms = new int[4];
+  private long[] deltas = new long[4];
+  // index of the first element of each run; firsts[count] is the size
+  private int[] firsts = new int[5];
+  private int count;
+
+  /**
+   * @returns the number of elements in all runs
+   */
+  public int size() {
+    return firsts[count];
+  }
+
+  /**
+   * @returns the number of runs
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Append elements {@code from} up to {@code to} of {@code store}, their
+   * offsets moved by {@code delta}.
+   */
+  public void add(S store, int from, int to, long delta) {
+    if (from == to) {
+      return;
+    }
+
+    final int last = count - 1;
+    if (last >= 0 && stores[last] == store && deltas[last] == delta
+        && froms[last] + length(last) == from) {
+      firsts[count] += to - from;
+      return;
+    }
+
+    if (count == stores.length) {
+      final int capacity = count * 2;
+      stores = Arrays.copyOf(stores, capacity);
+      froms = Arrays.copyOf(froms, capacity);
+      deltas = Arrays.copyOf(deltas, capacity);
+      firsts = Arrays.copyOf(firsts, capacity + 1);
+    }
+    stores[count] = store;
+    froms[count] = from;
+    deltas[count] = delta;
+    firsts[count + 1] = firsts[count] + to - from;
+    ++count;
+  }
+
+  /**
+   * Append the runs of elements {@code from} up to {@code to} of
+   * {@code other}, their offsets moved by a further {@code delta}. Only the
+   * run boundaries are copied, not the elements; except that a first or last
+   * run shorter than {@code shortRun} is handed to {@code copy}, so the runs
+   * next to an edit do not fragment as the same place is edited again.
+   */
+  public void addAll(Runs<S> other, int from, int to, long delta, int shortRun, Copy<S> copy) {
+    if (from >= to) {
+      return;
+    }
+
+    final int first = other.find(from);
+    final int last = other.find(to - 1);
+    for (int run = first; run <= last; run++) {
+      final int start = other.local(run, Math.max(from, other.firsts[run]));
+      final int end = other.local(run, Math.min(to, other.firsts[run + 1]));
+      if ((run == first || run == last) && end - start < shortRun) {
+        copy.copy(other.store(run), start, end, other.deltas[run] + delta);
+      } else {
+        add(other.store(run), start, end, other.deltas[run] + delta);
+      }
+    }
+  }
+
+  /**
+   * @returns the run holding element {@code index}
+   */
+  public int find(int index) {
+    int low = 0;
+    int high = count - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (firsts[mid] <= index) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    return low;
+  }
+
+  @SuppressWarnings("unchecked")
+  public S store(int run) {
+    return (S) stores[run];
+  }
+
+  /**
+   * @returns the index in its run's store of element {@code index}
+   */
+  public int local(int run, int index) {
+    return froms[run] + index - firsts[run];
+  }
+
+  public long delta(int run) {
+    return deltas[run];
+  }
+
+  /**
+   * @returns the index of the first element of {@code run}
+   */
+  public int first(int run) {
+    return firsts[run];
+  }
+
+  public int length(int run) {
+    return firsts[run + 1] - firsts[run];
+  }
+}
@@ -0,0 +1,217 @@
+package lox.util;
+
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Cursor} over UTF-8 encoded bytes in a {@link MemorySegment}, e.g.
+ * a memory-mapped source file.
+ *
+ * ASCII bytes are returned as-is; anything else is decoded to a code point
+ * on the fly, so the input never has to be decoded into a String up front.
+ * Offsets are byte offsets and may exceed {@link Integer#MAX_VALUE}.
+ * Malformed input is an error, as it is when decoding the bytes into a
+ * String: {@link #validate(MemorySegment)} finds it before scanning, and the
+ * cursor throws if it reaches any.
+ */
+public final class Utf8Cursor implements Cursor {
+
+  // the high bit of each byte of a long
+  private static final long NON_ASCII = 0x8080808080808080L;
+
+  private final MemorySegment in;
+  private final long end;
+  private long offset;
+  // byte length of the sequence last seen by decode()
+  private int decoded;
+
+  public Utf8Cursor(MemorySegment in) {
+    this(in, 0);
+  }
+
+  public Utf8Cursor(MemorySegment in, long start) {
+    this.in = in;
+    this.end = in.byteSize();
+    this.offset = start;
+  }
+
+  /**
+   * Check that {@code in} is well-formed UTF-8, without decoding it. What is
+   * rejected is what decoding the bytes into a String would reject: overlong
+   * forms, surrogates, code points past U+10FFFF and truncated sequences.
+   *
+   * @throws MalformedInputException at the first malformed sequence
+   */
+  public static void validate(MemorySegment in) throws MalformedInputException {
+    final long end = in.byteSize();
+    long at = 0;
+    while (at < end) {
+      if (at + Long.BYTES <= end && (in.get(ValueLayout.JAVA_LONG_UNALIGNED, at) & NON_ASCII) == 0) {
+        at += Long.BYTES;
+      } else if (in.get(ValueLayout.JAVA_BYTE, at) >= 0) {
+        ++at;
+      } else {
+        final int length = sequence(in, at, end);
+        if (length < 0) {
+          throw new MalformedInputException(-length);
+        }
+        at += length;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return offset < end;
+  }
+
+  @Override
+  public int next() {
+    final byte b = in.get(ValueLayout.JAVA_BYTE, offset);
+    if (b >= 0) {
+      ++offset;
+      return b;
+    }
+
+    final int cp = decode(offset);
+    offset += decoded;
+    return cp;
+  }
+
+  @Override
+  public int peek() {
+    if (offset >= end) {
+      return EOF;
+    }
+
+    final byte b = in.get(ValueLayout.JAVA_BYTE, offset);
+    return b >= 0 ? b : decode(offset);
+  }
+
+  @Override
+  public boolean match(char c) {
+    // only ever called with ASCII characters, which can't appear inside a
+    // multi-byte sequence
+    if (offset < end && in.get(ValueLayout.JAVA_BYTE, offset) == c) {
+      ++offset;
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void skipUntil(char c) {
+    offset = AsciiScan.indexOf(in, offset, end, c);
+  }
+
+  // ASCII bytes never appear inside a multi-byte sequence, so the runs below
+  // can be found byte by byte
+
+  @Override
+  public void skipBlanks() {
+    offset = AsciiScan.skipBlanks(in, offset, end);
+  }
+
+  @Override
+  public void skipWord() {
+    offset = AsciiScan.skipWord(in, offset, end);
+  }
+
+  @Override
+  public void skipDigits() {
+    offset = AsciiScan.skipDigits(in, offset, end);
+  }
+
+  @Override
+  public long indexOf(char c, long from, long to) {
+    return AsciiScan.indexOf(in, from, to, c);
+  }
+
+  @Override
+  public long offset() {
+    return offset;
+  }
+
+  @Override
+  public long length() {
+    return end;
+  }
+
+  @Override
+  public int unitAt(long index) {
+    return in.get(ValueLayout.JAVA_BYTE, index) & 0xff;
+  }
+
+  @Override
+  public String text(long start, long end) {
+    final byte[] bytes = in.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // decode the multi-byte sequence starting at index
+  private int decode(long index) {
+    decoded = sequence(in, index, end);
+    if (decoded < 0) {
+      throw new UncheckedIOException(new MalformedInputException(-decoded));
+    }
+
+    final int lead = in.get(ValueLayout.JAVA_BYTE, index) & 0xff;
+    int cp = lead & (0x7f >> decoded);
+    for (int i = 1; i < decoded; i++) {
+      cp = (cp << 6) | (in.get(ValueLayout.JAVA_BYTE, index + i) & 0x3f);
+    }
+    return cp;
+  }
+
+  // the length of the well-formed sequence starting with the non-ASCII byte
+  // at index, or minus the length of the malformed input there
+  private static int sequence(MemorySegment in, long index, long end) {
+    final int lead = in.get(ValueLayout.JAVA_BYTE, index) & 0xff;
+    final int length;
+    // the range of the second byte; the others are 0x80 .. 0xbf
+    int low = 0x80;
+    int high = 0xbf;
+    if (lead >= 0xc2 && lead <= 0xdf) {
+      length = 2;
+    } else if (lead >= 0xe0 && lead <= 0xef) {
+      length = 3;
+      if (lead == 0xe0) {
+        low = 0xa0;
+      } else if (lead == 0xed) {
+        high = 0x9f;
+      }
+    } else if (lead >= 0xf0 && lead <= 0xf4) {
+      length = 4;
+      if (lead == 0xf0) {
+        low = 0x90;
+      } else if (lead == 0xf4) {
+        high = 0x8f;
+      }
+    } else {
+      return -1;
+    }
+
+    for (int i = 1; i < length; i++) {
+      if (index + i >= end) {
+        return -i;
+      }
+      final int b = in.get(ValueLayout.JAVA_BYTE, index + i) & 0xff;
+      if (b < low || b > high) {
+        return -i;
+      }
+      low = 0x80;
+      high = 0xbf;
+    }
+
+    return length;
+  }
+
+  @Override
+  public String toString() {
+    return "Utf8Cursor[offset = " + offset + ", length = " + end + "]";
+  }
+}
@@ -4,6 +4,8 @@ import java.util.Optional;
 import java.util.function.Predicate;
 
 import lox.eval.BooleanResult;
+import lox.eval.EvaluationResult;
+import lox.eval.NilResult;
 
 public abstract class Util {
     public static boolean matches(Optional<Character> oc, Character c) {
@@ -29,4 +31,15 @@ public abstract class Util {
 
         return true;
     }
+
+    /**
+     * As {@link #isTruthy(Object)} of the result's value, without boxing it.
+     */
+    public static boolean isTruthy(EvaluationResult<?> result) {
+        if (result instanceof BooleanResult b) {
+            return b.booleanValue();
+        }
+
+        return result != null && !(result instanceof NilResult);
+    }
 }
@@ -0,0 +1,337 @@
+package lox.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Stmt;
+import lox.token.DoubleToken;
+import lox.token.IdentifierToken;
+import lox.token.StringToken;
+import lox.token.Token;
+import lox.token.Tokens.Lexemes;
+
+import static lox.vm.OpCode.*;
+
+/**
+ * Compiles a folded and resolved top-level statement into a {@link Chunk}.
+ *
+ * Globals keep the slots the {@link lox.eval.Resolver} gave them. The frames
+ * of blocks are laid out one after the other in a single array of locals, so
+ * a local's (depth, slot) becomes a fixed index, the frame's base plus the
+ * slot, and entering or leaving a block costs nothing.
+ *
+ * The value of the statement, as the Interpreter returns it, is that of the
+ * expression statement run last, if nothing runs after it. Only statements in
+ * that tail position keep their value, with {@link OpCode#RESULT}; the others
+ * pop it.
+ */
+public final class BytecodeCompiler {
+
+    // thrown when a jump does not fit in 2 bytes, to compile again with wide
+    // jumps
+    private static final class JumpTooFar extends RuntimeException {
+        JumpTooFar() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final boolean wideOperands;
+
+    // state of the chunk being compiled
+    private byte[] code;
+    private int size;
+    private boolean wideJumps;
+    private final Map<Long, Integer> numberIndex = new HashMap<>();
+    private final List<Double> numbers = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final List<Integer> globalOffsets = new ArrayList<>();
+    private final List<String> globalNames = new ArrayList<>();
+    private int stack;
+    private int maxStack;
+    // base index in the locals of each frame deeper than the globals, and the
+    // index after the current frame
+    private int[] bases = new int[8];
+    private int depth;
+    private int top;
+    private int maxLocals;
+
+    public BytecodeCompiler() {
+        this(false);
+    }
+
+    // wideOperands: give every index operand 4 bytes, to test them
+    BytecodeCompiler(final boolean wideOperands) {
+        this.wideOperands = wideOperands;
+    }
+
+    public Chunk compile(final Ast ast) {
+        try {
+            return compile(ast, wideOperands);
+        } catch (JumpTooFar e) {
+            return compile(ast, true);
+        }
+    }
+
+    private Chunk compile(final Ast ast, final boolean wideJumps) {
+        this.code = new byte[64];
+        this.size = 0;
+        this.wideJumps = wideJumps;
+        numberIndex.clear();
+        numbers.clear();
+        stringIndex.clear();
+        strings.clear();
+        globalOffsets.clear();
+        globalNames.clear();
+        stack = maxStack = 0;
+        depth = top = maxLocals = 0;
+
+        statement(ast, true);
+        emit(RETURN);
+
+        return new Chunk(Arrays.copyOf(code, size),
+                numbers.stream().mapToDouble(Double::doubleValue).toArray(),
+                strings.toArray(String[]::new),
+                globalOffsets.stream().mapToInt(Integer::intValue).toArray(),
+                globalNames.toArray(String[]::new),
+                maxStack, maxLocals);
+    }
+
+    private void statement(final Ast ast, final boolean tail) {
+        switch (ast) {
+            case Expr e -> {
+                expression(e);
+                emit(tail ? RESULT : POP);
+                stack(-1);
+            }
+            case Stmt.ExprStmt e -> statement(e.expr(), tail);
+            case Stmt.PrintStmt p -> {
+                expression(p.expr());
+                emit(PRINT);
+                stack(-1);
+            }
+            case Var v -> {
+                if (v.initializer().isPresent()) {
+                    expression(v.initializer().get());
+                } else {
+                    emit(NIL);
+                    stack(1);
+                }
+                variable(v.depth() == 0 ? DEFINE_GLOBAL : DEFINE_LOCAL, v.depth(), v.slot(), v.identifier());
+                stack(-1);
+            }
+            case Block b -> block(b, tail);
+            case Stmt.IfStmt i -> {
+                expression(i.condition());
+                final int otherwise = jump(JUMP_IF_FALSE);
+                stack(-1);
+                statement(i.thenStmt(), tail);
+                if (i.elseStmt().isPresent()) {
+                    final int end = jump(JUMP);
+                    patch(otherwise);
+                    statement(i.elseStmt().get(), tail);
+                    patch(end);
+                } else {
+                    patch(otherwise);
+                }
+            }
+            case Stmt.WhileStmt w -> {
+                final int start = size;
+                expression(w.condition());
+                final int end = jump(JUMP_IF_FALSE);
+                stack(-1);
+                statement(w.body(), false);
+                loop(start);
+                patch(end);
+            }
+            // fails when run, as in the tree-walking engine
+            default -> operand(UNSUPPORTED, string(ast.toString()));
+        }
+    }
+
+    private void block(final Block block, final boolean tail) {
+        final var statements = block.block();
+        if (block.slots() > 0) {
+            // a frame after the current one
+            if (++depth == bases.length) {
+                bases = Arrays.copyOf(bases, depth * 2);
+            }
+            bases[depth] = top;
+            top += block.slots();
+            maxLocals = Math.max(maxLocals, top);
+        }
+
+        for (int i = 0; i < statements.size(); i++) {
+            statement(statements.get(i), tail && i == statements.size() - 1);
+        }
+
+        if (block.slots() > 0) {
+            top = bases[depth--];
+        }
+    }
+
+    private void expression(final Expr expr) {
+        switch (expr) {
+            case Expr.Terminal t -> {
+                final var token = t.token();
+                switch (token.lexeme()) {
+                    case IDENTIFIER -> variable(t.depth() == 0 ? GET_GLOBAL : GET_LOCAL, t.depth(), t.slot(), token);
+                    case NUMBER -> operand(NUMBER, number(((DoubleToken) token).doubleValue()));
+                    case STRING -> operand(STRING, string(((StringToken) token).value()));
+                    case TRUE -> emit(TRUE);
+                    case FALSE -> emit(FALSE);
+                    case NIL -> emit(NIL);
+                    default -> operand(UNSUPPORTED, string(token.lexeme().toString()));
+                }
+                stack(1);
+            }
+            case Expr.Group g -> expression(g.group());
+            case Expr.Unary u -> {
+                expression(u.expr());
+                emit(switch (u.token().lexeme()) {
+                    case MINUS -> NEGATE;
+                    case BANG -> NOT;
+                    default -> throw new IllegalArgumentException("unary " + u.token());
+                });
+            }
+            case Expr.Binary b -> {
+                expression(b.left());
+                expression(b.right());
+                emit(switch (b.op().lexeme()) {
+                    case PLUS -> ADD;
+                    case MINUS -> SUBTRACT;
+                    case STAR -> MULTIPLY;
+                    case SLASH -> DIVIDE;
+                    case EQUAL_EQUAL -> EQUAL;
+                    case BANG_EQUAL -> NOT_EQUAL;
+                    case LESS -> LESS;
+                    case LESS_EQUAL -> LESS_EQUAL;
+                    case GREATER -> GREATER;
+                    case GREATER_EQUAL -> GREATER_EQUAL;
+                    default -> throw new IllegalArgumentException("binary " + b.op());
+                });
+                stack(-1);
+            }
+            case Expr.Logical l -> {
+                expression(l.left());
+                final int end = jump(l.op().lexeme() == Lexemes.OR ? OR : AND);
+                stack(-1);
+                expression(l.right());
+                patch(end);
+            }
+            case Expr.Assignment a -> {
+                expression(a.expression());
+                variable(a.depth() == 0 ? SET_GLOBAL : SET_LOCAL, a.depth(), a.slot(), a.identifier());
+            }
+        }
+    }
+
+    // an access to a resolved variable, or a failure if it was not declared
+    private void variable(final byte op, final int depth, final int slot, final Token name) {
+        final var symbol = ((IdentifierToken) name).symbol().name();
+        if (depth < 0) {
+            operand(UNDEFINED, string(symbol));
+        } else if (depth == 0) {
+            globalOffsets.add(size);
+            globalNames.add(symbol);
+            operand(op, slot);
+        } else {
+            operand(op, bases[depth] + slot);
+        }
+    }
+
+    private int number(final double value) {
+        return numberIndex.computeIfAbsent(Double.doubleToRawLongBits(value), bits -> {
+            numbers.add(value);
+            return numbers.size() - 1;
+        });
+    }
+
+    private int string(final String value) {
+        return stringIndex.computeIfAbsent(value, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private void stack(final int change) {
+        stack += change;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void emit(final byte op) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = op;
+    }
+
+    private void operand(final byte op, final int value) {
+        if (value > 0xffff || wideOperands) {
+            emit(WIDE);
+            emit(op);
+            emit32(value);
+        } else {
+            emit(op);
+            emit16(value);
+        }
+    }
+
+    private void emit16(final int value) {
+        emit((byte) (value >> 8));
+        emit((byte) value);
+    }
+
+    private void emit32(final int value) {
+        emit16(value >> 16);
+        emit16(value);
+    }
+
+    // a forward jump; returns where its distance goes once known
+    private int jump(final byte op) {
+        if (wideJumps) {
+            emit(WIDE);
+            emit(op);
+            emit32(0);
+            return size - 4;
+        }
+
+        emit(op);
+        emit16(0);
+        return size - 2;
+    }
+
+    // make a forward jump land here
+    private void patch(final int at) {
+        final int width = wideJumps ? 4 : 2;
+        final int distance = size - (at + width);
+        if (!wideJumps && distance > 0xffff) {
+            throw new JumpTooFar();
+        }
+
+        for (int i = width - 1, value = distance; i >= 0; i--, value >>= 8) {
+            code[at + i] = (byte) value;
+        }
+    }
+
+    private void loop(final int start) {
+        final int distance = size + (wideJumps ? 6 : 3) - start;
+        if (wideJumps) {
+            emit(WIDE);
+            emit(LOOP);
+            emit32(distance);
+        } else if (distance > 0xffff) {
+            throw new JumpTooFar();
+        } else {
+            emit(LOOP);
+            emit16(distance);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package lox.vm;
+
+import java.util.Arrays;
+
+/**
+ * The bytecode of one top-level statement, with its constant pool.
+ *
+ * The pool keeps numbers and strings apart, so {@link OpCode#NUMBER} pushes a
+ * double without unboxing it. Global variables are addressed by slot, and
+ * their names are kept on the side, by instruction offset, for error messages
+ * and the {@link Disassembler}.
+ */
+public final class Chunk {
+
+    final byte[] code;
+    final double[] numbers;
+    final String[] strings;
+    // offsets of the instructions naming globals, ascending, and their names
+    private final int[] globalOffsets;
+    private final String[] globalNames;
+    // the most values on the operand stack, and locals, the code needs
+    final int maxStack;
+    final int maxLocals;
+
+    Chunk(final byte[] code, final double[] numbers, final String[] strings, final int[] globalOffsets,
+            final String[] globalNames, final int maxStack, final int maxLocals) {
+        this.code = code;
+        this.numbers = numbers;
+        this.strings = strings;
+        this.globalOffsets = globalOffsets;
+        this.globalNames = globalNames;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    public int size() {
+        return code.length;
+    }
+
+    public byte code(final int offset) {
+        return code[offset];
+    }
+
+    public double number(final int index) {
+        return numbers[index];
+    }
+
+    public String string(final int index) {
+        return strings[index];
+    }
+
+    /**
+     * @returns the name of the global the instruction at an offset reads or
+     *          writes, or null if it does not
+     */
+    public String globalName(final int offset) {
+        final int index = Arrays.binarySearch(globalOffsets, offset);
+        return index >= 0 ? globalNames[index] : null;
+    }
+
+    static int u16(final byte[] code, final int at) {
+        return (code[at] & 0xff) << 8 | code[at + 1] & 0xff;
+    }
+
+    static int i32(final byte[] code, final int at) {
+        return code[at] << 24 | (code[at + 1] & 0xff) << 16 | (code[at + 2] & 0xff) << 8 | code[at + 3] & 0xff;
+    }
+}
@@ -0,0 +1,67 @@
+package lox.vm;
+
+import lox.eval.DoubleResult;
+
+import static lox.vm.Chunk.i32;
+import static lox.vm.Chunk.u16;
+
+/**
+ * Lists the instructions of a {@link Chunk}, one per line, for debugging, e.g.
+ *
+ * <pre>
+ * 0000 GET_GLOBAL 0 'i'
+ * 0003 NUMBER 0 '10'
+ * 0006 LESS
+ * 0007 JUMP_IF_FALSE 13 -> 0023
+ * </pre>
+ */
+public final class Disassembler {
+
+    private Disassembler() {
+    }
+
+    public static String disassemble(final Chunk chunk) {
+        final var sb = new StringBuilder();
+        for (int offset = 0; offset < chunk.size();) {
+            offset = instruction(chunk, offset, sb);
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Append the instruction at an offset.
+     *
+     * @returns the offset of the next one
+     */
+    public static int instruction(final Chunk chunk, final int offset, final StringBuilder sb) {
+        sb.append(String.format("%04d ", offset));
+
+        final boolean wide = chunk.code(offset) == OpCode.WIDE;
+        final int at = wide ? offset + 1 : offset;
+        final byte op = chunk.code(at);
+        sb.append(wide ? "WIDE " : "").append(OpCode.name(op));
+        if (!OpCode.hasOperand(op)) {
+            return at + 1;
+        }
+
+        final int operand = wide ? i32(chunk.code, at + 1) : u16(chunk.code, at + 1);
+        final int next = at + (wide ? 5 : 3);
+        sb.append(' ').append(operand);
+        switch (op) {
+            case OpCode.NUMBER -> sb.append(" '").append(new DoubleResult(chunk.number(operand))).append('\'');
+            case OpCode.STRING, OpCode.UNDEFINED, OpCode.UNSUPPORTED -> sb.append(" '").append(chunk.string(operand))
+                    .append('\'');
+            case OpCode.GET_GLOBAL, OpCode.SET_GLOBAL, OpCode.DEFINE_GLOBAL -> sb.append(" '")
+                    .append(chunk.globalName(offset)).append('\'');
+            case OpCode.JUMP, OpCode.JUMP_IF_FALSE, OpCode.AND, OpCode.OR -> sb.append(
+                    String.format(" -> %04d", next + operand));
+            case OpCode.LOOP -> sb.append(String.format(" -> %04d", next - operand));
+            default -> {
+            }
+        }
+
+        return next;
+    }
+}
@@ -0,0 +1,98 @@
+package lox.vm;
+
+/**
+ * The instructions of a {@link Chunk}.
+ *
+ * Each is one byte, followed for some by an operand, an unsigned 2-byte big
+ * endian index or distance. {@link #WIDE} in front of an instruction makes its
+ * operand 4 bytes, for the rare index or jump that does not fit.
+ */
+public final class OpCode {
+
+    // push a literal, or a constant from the pool
+    public static final byte NIL = 0;
+    public static final byte TRUE = 1;
+    public static final byte FALSE = 2;
+    // operand: index into the chunk's numbers
+    public static final byte NUMBER = 3;
+    // operand: index into the chunk's strings
+    public static final byte STRING = 4;
+
+    // discard the top of the stack
+    public static final byte POP = 5;
+    // pop the value of the statement being run
+    public static final byte RESULT = 6;
+    // pop and print
+    public static final byte PRINT = 7;
+
+    // variables; operand: global slot, or index into the locals. GET pushes,
+    // SET stores the top without popping it (an assignment is an expression),
+    // DEFINE pops into the variable
+    public static final byte GET_GLOBAL = 8;
+    public static final byte SET_GLOBAL = 9;
+    public static final byte DEFINE_GLOBAL = 10;
+    public static final byte GET_LOCAL = 11;
+    public static final byte SET_LOCAL = 12;
+    public static final byte DEFINE_LOCAL = 13;
+
+    // operators, on the top one or two values
+    public static final byte ADD = 14;
+    public static final byte SUBTRACT = 15;
+    public static final byte MULTIPLY = 16;
+    public static final byte DIVIDE = 17;
+    public static final byte EQUAL = 18;
+    public static final byte NOT_EQUAL = 19;
+    public static final byte LESS = 20;
+    public static final byte LESS_EQUAL = 21;
+    public static final byte GREATER = 22;
+    public static final byte GREATER_EQUAL = 23;
+    public static final byte NEGATE = 24;
+    public static final byte NOT = 25;
+
+    // control flow; operand: distance from the end of the instruction.
+    // JUMP_IF_FALSE pops the condition. AND and OR jump past their right
+    // operand keeping the left one if it decides the result, or else pop it
+    public static final byte JUMP = 26;
+    public static final byte JUMP_IF_FALSE = 27;
+    // jumps backwards
+    public static final byte LOOP = 28;
+    public static final byte AND = 29;
+    public static final byte OR = 30;
+
+    // fail; operand: index into the chunk's strings of the variable name, or
+    // of what is not implemented
+    public static final byte UNDEFINED = 31;
+    public static final byte UNSUPPORTED = 32;
+
+    public static final byte WIDE = 33;
+    // end of the chunk
+    public static final byte RETURN = 34;
+
+    private static final String[] NAMES = {
+            "NIL", "TRUE", "FALSE", "NUMBER", "STRING",
+            "POP", "RESULT", "PRINT",
+            "GET_GLOBAL", "SET_GLOBAL", "DEFINE_GLOBAL", "GET_LOCAL", "SET_LOCAL", "DEFINE_LOCAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "EQUAL", "NOT_EQUAL",
+            "LESS", "LESS_EQUAL", "GREATER", "GREATER_EQUAL", "NEGATE", "NOT",
+            "JUMP", "JUMP_IF_FALSE", "LOOP", "AND", "OR",
+            "UNDEFINED", "UNSUPPORTED", "WIDE", "RETURN",
+    };
+
+    private OpCode() {
+    }
+
+    public static String name(final byte op) {
+        return op >= 0 && op < NAMES.length ? NAMES[op] : "UNKNOWN " + op;
+    }
+
+    /**
+     * @returns whether the instruction has an operand
+     */
+    public static boolean hasOperand(final byte op) {
+        return switch (op) {
+            case NUMBER, STRING, GET_GLOBAL, SET_GLOBAL, DEFINE_GLOBAL, GET_LOCAL, SET_LOCAL, DEFINE_LOCAL,
+                    JUMP, JUMP_IF_FALSE, LOOP, AND, OR, UNDEFINED, UNSUPPORTED -> true;
+            default -> false;
+        };
+    }
+}
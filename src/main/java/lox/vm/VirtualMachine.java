@@ -0,0 +1,411 @@
+package lox.vm;
+
+import java.util.Arrays;
+
+import lox.NotImplementedException;
+import lox.eval.BooleanResult;
+import lox.eval.DoubleResult;
+import lox.eval.EvaluationResult;
+import lox.eval.Interpreter;
+import lox.eval.NilResult;
+import lox.eval.StringResult;
+import lox.eval.UndefinedVarException;
+import lox.token.Tokens.Lexemes;
+
+import static lox.vm.Chunk.i32;
+import static lox.vm.Chunk.u16;
+
+/**
+ * Runs {@link Chunk}s, keeping the globals from one to the next.
+ *
+ * Values are not objects: the operand stack, the locals and the globals are
+ * each three parallel arrays, of a type tag, a double for a number or boolean,
+ * and an object for a string. Operators do numbers, and strings for +, in
+ * place. Anything else is boxed into {@link EvaluationResult}s and handed to
+ * the Interpreter's operator code, so the value or error is the one the
+ * Interpreter would give; so are values leaving the machine, to be printed or
+ * returned.
+ */
+public final class VirtualMachine {
+
+    // type tags; a global that has not been defined is UNDEFINED
+    private static final byte UNDEFINED = 0;
+    private static final byte NIL = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+
+    private byte[] tags = new byte[16];
+    private double[] numbers = new double[16];
+    private Object[] refs = new Object[16];
+
+    private byte[] localTags = new byte[16];
+    private double[] localNumbers = new double[16];
+    private Object[] localRefs = new Object[16];
+
+    private byte[] globalTags = new byte[16];
+    private double[] globalNumbers = new double[16];
+    private Object[] globalRefs = new Object[16];
+
+    // the top of the stack, while running the slow paths
+    private int sp;
+
+    /**
+     * Run a chunk.
+     *
+     * @returns the value of the statement, or null if it has none
+     * @throws lox.eval.EvalException as the Interpreter would
+     */
+    public EvaluationResult<?> execute(final Chunk chunk) {
+        if (chunk.maxStack > tags.length) {
+            final int length = Math.max(chunk.maxStack, tags.length * 2);
+            tags = new byte[length];
+            numbers = new double[length];
+            refs = new Object[length];
+        }
+        if (chunk.maxLocals > localTags.length) {
+            final int length = Math.max(chunk.maxLocals, localTags.length * 2);
+            localTags = new byte[length];
+            localNumbers = new double[length];
+            localRefs = new Object[length];
+        }
+
+        try {
+            return run(chunk);
+        } finally {
+            // let go of any strings left behind
+            Arrays.fill(refs, null);
+            Arrays.fill(localRefs, 0, chunk.maxLocals, null);
+        }
+    }
+
+    private EvaluationResult<?> run(final Chunk chunk) {
+        final byte[] code = chunk.code;
+        final byte[] tags = this.tags;
+        final double[] numbers = this.numbers;
+        final Object[] refs = this.refs;
+        final byte[] localTags = this.localTags;
+        final double[] localNumbers = this.localNumbers;
+        final Object[] localRefs = this.localRefs;
+        EvaluationResult<?> result = null;
+        int ip = 0;
+        int sp = 0;
+
+        for (;;) {
+            switch (code[ip++]) {
+                case OpCode.NIL -> tags[sp++] = NIL;
+                case OpCode.TRUE -> {
+                    tags[sp] = BOOLEAN;
+                    numbers[sp++] = 1;
+                }
+                case OpCode.FALSE -> {
+                    tags[sp] = BOOLEAN;
+                    numbers[sp++] = 0;
+                }
+                case OpCode.NUMBER -> {
+                    tags[sp] = NUMBER;
+                    numbers[sp++] = chunk.numbers[u16(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.STRING -> {
+                    tags[sp] = STRING;
+                    refs[sp++] = chunk.strings[u16(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.POP -> sp--;
+                case OpCode.RESULT -> result = box(--sp);
+                case OpCode.PRINT -> System.out.println(box(--sp));
+                case OpCode.GET_GLOBAL -> {
+                    getGlobal(chunk, ip - 1, u16(code, ip), sp++);
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    setGlobal(chunk, ip - 1, u16(code, ip), sp - 1);
+                    ip += 2;
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    defineGlobal(u16(code, ip), --sp);
+                    ip += 2;
+                }
+                case OpCode.GET_LOCAL -> {
+                    final int local = u16(code, ip);
+                    tags[sp] = localTags[local];
+                    numbers[sp] = localNumbers[local];
+                    refs[sp++] = localRefs[local];
+                    ip += 2;
+                }
+                case OpCode.SET_LOCAL, OpCode.DEFINE_LOCAL -> {
+                    final int local = u16(code, ip);
+                    final int from = code[ip - 1] == OpCode.SET_LOCAL ? sp - 1 : --sp;
+                    localTags[local] = tags[from];
+                    localNumbers[local] = numbers[from];
+                    localRefs[local] = refs[from];
+                    ip += 2;
+                }
+                case OpCode.ADD -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        numbers[l] += numbers[sp];
+                    } else if (tags[l] == STRING && tags[sp] == STRING) {
+                        refs[l] = refs[l].toString() + refs[sp];
+                    } else {
+                        binary(Lexemes.PLUS, l);
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        numbers[l] -= numbers[sp];
+                    } else {
+                        binary(Lexemes.MINUS, l);
+                    }
+                }
+                case OpCode.MULTIPLY -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        numbers[l] *= numbers[sp];
+                    } else {
+                        binary(Lexemes.STAR, l);
+                    }
+                }
+                case OpCode.DIVIDE -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        numbers[l] /= numbers[sp];
+                    } else {
+                        binary(Lexemes.SLASH, l);
+                    }
+                }
+                case OpCode.EQUAL, OpCode.NOT_EQUAL -> {
+                    final int l = --sp - 1;
+                    final boolean equal = code[ip - 1] == OpCode.EQUAL;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        // as Double.equals, so NaN == NaN and 0 != -0
+                        tags[l] = BOOLEAN;
+                        numbers[l] = (Double.doubleToLongBits(numbers[l]) == Double.doubleToLongBits(numbers[sp])) == equal
+                                ? 1 : 0;
+                    } else {
+                        binary(equal ? Lexemes.EQUAL_EQUAL : Lexemes.BANG_EQUAL, l);
+                    }
+                }
+                case OpCode.LESS -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        tags[l] = BOOLEAN;
+                        numbers[l] = numbers[l] < numbers[sp] ? 1 : 0;
+                    } else {
+                        binary(Lexemes.LESS, l);
+                    }
+                }
+                case OpCode.LESS_EQUAL -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        tags[l] = BOOLEAN;
+                        numbers[l] = numbers[l] <= numbers[sp] ? 1 : 0;
+                    } else {
+                        binary(Lexemes.LESS_EQUAL, l);
+                    }
+                }
+                case OpCode.GREATER -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        tags[l] = BOOLEAN;
+                        numbers[l] = numbers[l] > numbers[sp] ? 1 : 0;
+                    } else {
+                        binary(Lexemes.GREATER, l);
+                    }
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    final int l = --sp - 1;
+                    if (tags[l] == NUMBER && tags[sp] == NUMBER) {
+                        tags[l] = BOOLEAN;
+                        numbers[l] = numbers[l] >= numbers[sp] ? 1 : 0;
+                    } else {
+                        binary(Lexemes.GREATER_EQUAL, l);
+                    }
+                }
+                case OpCode.NEGATE -> {
+                    if (tags[sp - 1] == NUMBER) {
+                        numbers[sp - 1] = -numbers[sp - 1];
+                    } else {
+                        unary(Lexemes.MINUS, sp - 1);
+                    }
+                }
+                case OpCode.NOT -> {
+                    final int top = sp - 1;
+                    switch (tags[top]) {
+                        case BOOLEAN -> numbers[top] = numbers[top] == 0 ? 1 : 0;
+                        case NUMBER -> {
+                            tags[top] = BOOLEAN;
+                            numbers[top] = 0;
+                        }
+                        case NIL -> {
+                            tags[top] = BOOLEAN;
+                            numbers[top] = 1;
+                        }
+                        default -> unary(Lexemes.BANG, top);
+                    }
+                }
+                case OpCode.JUMP -> ip += 2 + u16(code, ip);
+                case OpCode.JUMP_IF_FALSE -> {
+                    sp--;
+                    ip += truthy(tags[sp], numbers[sp]) ? 2 : 2 + u16(code, ip);
+                }
+                case OpCode.LOOP -> ip += 2 - u16(code, ip);
+                case OpCode.AND -> {
+                    if (truthy(tags[sp - 1], numbers[sp - 1])) {
+                        sp--;
+                        ip += 2;
+                    } else {
+                        ip += 2 + u16(code, ip);
+                    }
+                }
+                case OpCode.OR -> {
+                    if (truthy(tags[sp - 1], numbers[sp - 1])) {
+                        ip += 2 + u16(code, ip);
+                    } else {
+                        sp--;
+                        ip += 2;
+                    }
+                }
+                case OpCode.UNDEFINED -> throw new UndefinedVarException(chunk.strings[u16(code, ip)]);
+                case OpCode.UNSUPPORTED -> throw new NotImplementedException(chunk.strings[u16(code, ip)]);
+                case OpCode.WIDE -> {
+                    this.sp = sp;
+                    ip = wide(chunk, ip);
+                    sp = this.sp;
+                }
+                case OpCode.RETURN -> {
+                    return result;
+                }
+                default -> throw new IllegalStateException("bad instruction " + code[ip - 1] + " at " + (ip - 1));
+            }
+        }
+    }
+
+    // the instruction after a WIDE, at ip, with its 4-byte operand; returns
+    // the next ip
+    private int wide(final Chunk chunk, final int ip) {
+        final byte op = chunk.code[ip];
+        final int operand = i32(chunk.code, ip + 1);
+        final int next = ip + 5;
+        switch (op) {
+            case OpCode.NUMBER -> {
+                tags[sp] = NUMBER;
+                numbers[sp++] = chunk.numbers[operand];
+            }
+            case OpCode.STRING -> {
+                tags[sp] = STRING;
+                refs[sp++] = chunk.strings[operand];
+            }
+            case OpCode.GET_GLOBAL -> getGlobal(chunk, ip - 1, operand, sp++);
+            case OpCode.SET_GLOBAL -> setGlobal(chunk, ip - 1, operand, sp - 1);
+            case OpCode.DEFINE_GLOBAL -> defineGlobal(operand, --sp);
+            case OpCode.GET_LOCAL -> {
+                tags[sp] = localTags[operand];
+                numbers[sp] = localNumbers[operand];
+                refs[sp++] = localRefs[operand];
+            }
+            case OpCode.SET_LOCAL, OpCode.DEFINE_LOCAL -> {
+                final int from = op == OpCode.SET_LOCAL ? sp - 1 : --sp;
+                localTags[operand] = tags[from];
+                localNumbers[operand] = numbers[from];
+                localRefs[operand] = refs[from];
+            }
+            case OpCode.JUMP -> {
+                return next + operand;
+            }
+            case OpCode.JUMP_IF_FALSE -> {
+                sp--;
+                return truthy(tags[sp], numbers[sp]) ? next : next + operand;
+            }
+            case OpCode.LOOP -> {
+                return next - operand;
+            }
+            case OpCode.AND, OpCode.OR -> {
+                if (truthy(tags[sp - 1], numbers[sp - 1]) == (op == OpCode.OR)) {
+                    return next + operand;
+                }
+                sp--;
+            }
+            case OpCode.UNDEFINED -> throw new UndefinedVarException(chunk.strings[operand]);
+            case OpCode.UNSUPPORTED -> throw new NotImplementedException(chunk.strings[operand]);
+            default -> throw new IllegalStateException("bad wide instruction " + op + " at " + ip);
+        }
+
+        return next;
+    }
+
+    // at: offset of the instruction, for the name of the global
+    private void getGlobal(final Chunk chunk, final int at, final int slot, final int to) {
+        if (slot >= globalTags.length || globalTags[slot] == UNDEFINED) {
+            throw new UndefinedVarException(chunk.globalName(at));
+        }
+        tags[to] = globalTags[slot];
+        numbers[to] = globalNumbers[slot];
+        refs[to] = globalRefs[slot];
+    }
+
+    private void setGlobal(final Chunk chunk, final int at, final int slot, final int from) {
+        if (slot >= globalTags.length || globalTags[slot] == UNDEFINED) {
+            throw new UndefinedVarException(chunk.globalName(at));
+        }
+        globalTags[slot] = tags[from];
+        globalNumbers[slot] = numbers[from];
+        globalRefs[slot] = refs[from];
+    }
+
+    private void defineGlobal(final int slot, final int from) {
+        if (slot >= globalTags.length) {
+            final int length = Math.max(slot + 1, globalTags.length * 2);
+            globalTags = Arrays.copyOf(globalTags, length);
+            globalNumbers = Arrays.copyOf(globalNumbers, length);
+            globalRefs = Arrays.copyOf(globalRefs, length);
+        }
+        globalTags[slot] = tags[from];
+        globalNumbers[slot] = numbers[from];
+        globalRefs[slot] = refs[from];
+    }
+
+    // the operands are at l and l + 1; the result goes to l
+    private void binary(final Lexemes op, final int l) {
+        unbox(Interpreter.binary(op, box(l), box(l + 1)), l);
+    }
+
+    private void unary(final Lexemes op, final int at) {
+        unbox(Interpreter.unary(op, box(at)), at);
+    }
+
+    private static boolean truthy(final byte tag, final double number) {
+        return tag == BOOLEAN ? number != 0 : tag != NIL;
+    }
+
+    private EvaluationResult<?> box(final int at) {
+        return switch (tags[at]) {
+            case NIL -> NilResult.NIL;
+            case BOOLEAN -> BooleanResult.of(numbers[at] != 0);
+            case NUMBER -> new DoubleResult(numbers[at]);
+            case STRING -> new StringResult((CharSequence) refs[at]);
+            default -> throw new IllegalStateException("undefined value on the stack at " + at);
+        };
+    }
+
+    private void unbox(final EvaluationResult<?> value, final int at) {
+        switch (value) {
+            case NilResult n -> tags[at] = NIL;
+            case BooleanResult b -> {
+                tags[at] = BOOLEAN;
+                numbers[at] = b.booleanValue() ? 1 : 0;
+            }
+            case DoubleResult d -> {
+                tags[at] = NUMBER;
+                numbers[at] = d.doubleValue();
+            }
+            case StringResult s -> {
+                tags[at] = STRING;
+                refs[at] = s.value();
+            }
+            default -> throw new IllegalStateException("unknown value " + value);
+        }
+    }
+}
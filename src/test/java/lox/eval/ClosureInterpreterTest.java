@@ -0,0 +1,51 @@
+package lox.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lox.parse.Ast;
+import lox.parse.Parser;
+
+/**
+ * Runs every {@link InterpreterTest} on the closure-compiled engine.
+ */
+class ClosureInterpreterTest extends InterpreterTest {
+
+    @Override
+    Interpreter interpreter(boolean expressionMode) {
+        return new Interpreter(expressionMode, Interpreter.Engine.CLOSURE);
+    }
+
+    @Test
+    void shouldCompileEachOperatorToItsOwnNode() {
+        Ast ast = new Parser("1 + x < -y", true).parse().success().get(0);
+
+        ClosureCompiler.Node node = new ClosureCompiler().compile(ast);
+
+        assertThat(node).isInstanceOf(ClosureCompiler.Less.class);
+        ClosureCompiler.Less less = (ClosureCompiler.Less) node;
+        assertThat(less.left()).isInstanceOf(ClosureCompiler.Add.class);
+        assertThat(less.right()).isInstanceOf(ClosureCompiler.Negate.class);
+    }
+
+    @Test
+    void shouldCompileBlocksWithoutDeclarationsWithoutAFrame() {
+        Ast ast = new Parser("{ var a = 1; { print a; } }", false).parse().success().get(0);
+        new Resolver().resolve(ast);
+
+        ClosureCompiler.Node node = new ClosureCompiler().compile(ast);
+
+        assertThat(node).isInstanceOf(ClosureCompiler.Scope.class);
+        assertThat(((ClosureCompiler.Scope) node).statements()[1]).isInstanceOf(ClosureCompiler.Sequence.class);
+    }
+
+    @Test
+    void shouldGiveTheSameErrorsAsTheTreeEngine() {
+        var result = interpreter(false).evaluate("var a = 1; print a + \"s\";");
+
+        assertThat(result.error()).hasSize(1);
+        assertThat(result.error().get(0)).isInstanceOf(EvalException.class)
+                .hasMessage("Operands must be two numbers or two strings.");
+    }
+}
@@ -0,0 +1,112 @@
+package lox.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Expr;
+import lox.parse.Parser;
+import lox.parse.Stmt.PrintStmt;
+import lox.token.DoubleToken;
+import lox.token.StringToken;
+import lox.token.Tokens.Lexemes;
+
+class ConstantFolderTest {
+
+    private final ConstantFolder folder = new ConstantFolder();
+
+    private List<Ast> fold(String source, boolean expressionMode) {
+        return new Parser(source, expressionMode).parse().success().stream()
+                .map(folder::fold)
+                .toList();
+    }
+
+    @Test
+    void shouldFoldArithmetic() {
+        Ast ast = fold("(2 * 3) + 4", true).get(0);
+
+        assertThat(ast).isInstanceOf(Expr.Terminal.class);
+        assertThat(((DoubleToken) ((Expr.Terminal) ast).token()).doubleValue()).isEqualTo(10.0);
+    }
+
+    @Test
+    void shouldFoldStringConcatenation() {
+        Ast ast = fold("\"a\" + \"b\"", true).get(0);
+
+        assertThat(((StringToken) ((Expr.Terminal) ast).token()).value()).isEqualTo("ab");
+    }
+
+    @Test
+    void shouldFoldLogicalToTheOperandItEvaluatesTo() {
+        assertThat(fold("nil or x", true).get(0).toString()).isEqualTo("x");
+        assertThat(fold("1 and x", true).get(0).toString()).isEqualTo("x");
+        assertThat(fold("false and x", true).get(0).toString()).isEqualTo("false");
+    }
+
+    @Test
+    void shouldLeaveFailingOperationsForRuntime() {
+        Ast ast = fold("-(1 - \"a\")", true).get(0);
+
+        assertThat(ast).isInstanceOf(Expr.Unary.class);
+        assertThat(ast.toString()).isEqualTo("(- (group (- 1.0 a)))");
+    }
+
+    @Test
+    void shouldNotFoldVariables() {
+        Ast ast = fold("x + (1 + 2)", true).get(0);
+
+        assertThat(ast.toString()).isEqualTo("(+ x 3.0)");
+    }
+
+    @Test
+    void shouldReuseUnchangedNodes() {
+        Ast ast = new Parser("print x + 1;", false).parse().success().get(0);
+
+        assertThat(folder.fold(ast)).isSameAs(ast);
+    }
+
+    @Test
+    void shouldKeepOnlyTheBranchThatRuns() {
+        List<Ast> program = fold("if (1 < 2) print \"yes\"; else print \"no\"; if (nil) print 1;", false);
+
+        assertThat(program.get(0)).isInstanceOf(PrintStmt.class);
+        assertThat(program.get(0).toString()).isEqualTo("print yes");
+        assertThat(program.get(1)).isInstanceOf(Block.class);
+        assertThat(((Block) program.get(1)).block()).isEmpty();
+    }
+
+    @Test
+    void shouldDropLoopsThatNeverRun() {
+        List<Ast> program = fold("{ while (false) print 1; print 2; }", false);
+
+        Block block = (Block) program.get(0);
+        assertThat(block.block()).hasSize(1);
+        assertThat(((PrintStmt) block.block().get(0)).expr()).isInstanceOf(Expr.Terminal.class);
+    }
+
+    @Test
+    void shouldKeepConstantlyTrueLoopsWithFoldedCondition() {
+        Ast ast = fold("while (1 == 1) x = x + 1;", false).get(0);
+
+        assertThat(ast.toString()).startsWith("while (true)");
+    }
+
+    @Test
+    void shouldReportTheSameRuntimeError() {
+        var result = new Interpreter(false).evaluate("print 1 + 2; print \"a\" < 1; print 3;");
+
+        assertThat(result.error()).hasSize(1);
+        assertThat(result.error().get(0)).isInstanceOf(EvalException.class)
+                .hasMessage("Operands must be numbers.");
+    }
+
+    @Test
+    void shouldFoldLiteralsOfEveryType() {
+        assertThat(((Expr.Terminal) fold("!nil", true).get(0)).token().lexeme()).isEqualTo(Lexemes.TRUE);
+        assertThat(((Expr.Terminal) fold("(nil)", true).get(0)).token().lexeme()).isEqualTo(Lexemes.NIL);
+    }
+}
@@ -0,0 +1,69 @@
+package lox.eval;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Rough comparison of the time each {@link Interpreter.Engine} takes to run
+ * loop-heavy scripts, and of what it allocates doing so.
+ *
+ * Not a unit test; run it directly, e.g.
+ * {@code java --enable-preview -cp target/classes:target/test-classes lox.eval.EngineBenchmark}
+ */
+public class EngineBenchmark {
+
+    private static final String COUNT = """
+            var i = 0;
+            var s = 0;
+            while (i < %d) {
+              var t = i * 2;
+              { s = s + t + (2 * 3); }
+              i = i + 1;
+            }
+            s;
+            """;
+
+    private static final String NESTED = """
+            var n = 0;
+            var i = 0;
+            while (i < %d) {
+              var j = 0;
+              while (j < 100) {
+                if (j / 2 > 10 and !(j == 50)) n = n + 1; else n = n - 1;
+                j = j + 1;
+              }
+              i = i + 1;
+            }
+            n;
+            """;
+
+    public static void main(String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        measure("count", COUNT.formatted(iterations));
+        measure("nested", NESTED.formatted(iterations / 100));
+    }
+
+    private static void measure(final String name, final String source) {
+        final var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().threadId();
+        for (var engine : Interpreter.Engine.values()) {
+            // warm up, then best of several runs
+            long best = Long.MAX_VALUE;
+            long allocated = 0;
+            Object result = null;
+            for (int i = 0; i < 5; i++) {
+                final long allocBefore = mx.getThreadAllocatedBytes(tid);
+                final long start = System.nanoTime();
+                result = run(engine, source);
+                best = Math.min(best, System.nanoTime() - start);
+                allocated = mx.getThreadAllocatedBytes(tid) - allocBefore;
+            }
+            System.out.printf("%s %s: %.1f ms, %,d bytes allocated (%s)%n", name, engine, best / 1e6, allocated,
+                    result);
+        }
+    }
+
+    private static Object run(final Interpreter.Engine engine, final String source) {
+        return new Interpreter(false, engine).evaluate(source).success().orElseThrow();
+    }
+}
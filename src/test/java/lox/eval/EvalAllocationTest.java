@@ -0,0 +1,67 @@
+package lox.eval;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the engines evaluating with numbers unboxed do not allocate
+ * for each time around a numeric loop.
+ */
+class EvalAllocationTest {
+
+    private static final String LOOP = """
+            var i = 0;
+            var s = 0;
+            while (i < %d) {
+              var t = i * 2;
+              s = s + t - 1;
+              if (!(i == 5) and i >= 0) s = -s / 2;
+              i = i + 1;
+            }
+            s;
+            """;
+
+    @Test
+    void treeEngineShouldNotAllocatePerIteration() {
+        assertThat(bytesPerIteration(Interpreter.Engine.TREE)).isLessThan(1.0);
+    }
+
+    @Test
+    void closureEngineShouldNotAllocatePerIteration() {
+        assertThat(bytesPerIteration(Interpreter.Engine.CLOSURE)).isLessThan(1.0);
+    }
+
+    @Test
+    void specializingEngineShouldNotAllocatePerIteration() {
+        assertThat(bytesPerIteration(Interpreter.Engine.SPECIALIZING)).isLessThan(1.0);
+    }
+
+    @Test
+    void jitEngineShouldNotAllocatePerIteration() {
+        assertThat(bytesPerIteration(Interpreter.Engine.JIT)).isLessThan(1.0);
+    }
+
+    // the difference between a long and a short run, so the cost of parsing
+    // and of setting up the interpreter cancels out; after a first run, so
+    // loading classes does not count
+    private static double bytesPerIteration(final Interpreter.Engine engine) {
+        allocated(engine, 1_000);
+        final long few = allocated(engine, 1_000);
+        final long many = allocated(engine, 101_000);
+        return (double) (many - few) / 100_000;
+    }
+
+    private static long allocated(final Interpreter.Engine engine, final int iterations) {
+        final var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().threadId();
+        final long before = mx.getThreadAllocatedBytes(tid);
+        final var result = new Interpreter(false, engine).evaluate(LOOP.formatted(iterations));
+        final long allocated = mx.getThreadAllocatedBytes(tid) - before;
+
+        assertThat(result.error()).isEmpty();
+        return allocated;
+    }
+}
@@ -45,7 +45,7 @@ class EvalStateTest {
     void shouldAddVariableWithDifferentTypes() {
         evalState.addVariable("stringVar", new StringResult("test"));
         evalState.addVariable("numberVar", new DoubleResult(42.0));
-        evalState.addVariable("boolVar", new BooleanResult(true));
+        evalState.addVariable("boolVar", BooleanResult.of(true));
         evalState.addVariable("nilVar", new NilResult());
         
         assertThat(evalState.variable("stringVar").value()).isEqualTo("test");
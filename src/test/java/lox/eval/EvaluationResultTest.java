@@ -0,0 +1,44 @@
+package lox.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lox.token.Tokens.Lexemes;
+import lox.util.Util;
+
+class EvaluationResultTest {
+
+    @Test
+    void shouldPrintNumbersAsBefore() {
+        assertThat(new DoubleResult(3.0).toString()).isEqualTo("3");
+        assertThat(new DoubleResult(2.5).toString()).isEqualTo("2.5");
+        assertThat(new DoubleResult(-0.0).toString()).isEqualTo("-0");
+        assertThat(new DoubleResult(1e21).toString()).isEqualTo("1.0E21");
+        assertThat(new DoubleResult(Double.NaN).toString()).isEqualTo("NaN");
+    }
+
+    @Test
+    void shouldCompareNumbersAsDoubles() {
+        assertThat(new DoubleResult(Double.NaN).equalTo(new DoubleResult(Double.NaN))).isTrue();
+        assertThat(new DoubleResult(0.0).equalTo(new DoubleResult(-0.0))).isFalse();
+        assertThat(new DoubleResult(1.5).equalTo(new DoubleResult(1.5))).isTrue();
+    }
+
+    @Test
+    void shouldShareBooleansAndNil() {
+        assertThat(BooleanResult.of(true)).isSameAs(BooleanResult.TRUE);
+        assertThat(BooleanResult.of(false)).isSameAs(BooleanResult.FALSE);
+        assertThat(Interpreter.binary(Lexemes.LESS, new DoubleResult(1), new DoubleResult(2)))
+                .isSameAs(BooleanResult.TRUE);
+    }
+
+    @Test
+    void shouldTellTruthinessWithoutTheValue() {
+        assertThat(Util.isTruthy(BooleanResult.FALSE)).isFalse();
+        assertThat(Util.isTruthy(NilResult.NIL)).isFalse();
+        assertThat(Util.isTruthy(new NilResult())).isFalse();
+        assertThat(Util.isTruthy(new DoubleResult(0))).isTrue();
+        assertThat(Util.isTruthy(new StringResult(""))).isTrue();
+    }
+}
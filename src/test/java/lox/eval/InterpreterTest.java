@@ -10,9 +10,14 @@ import java.util.Optional;
 
 class InterpreterTest {
 
+    // overridden to run every test on another engine
+    Interpreter interpreter(boolean expressionMode) {
+        return new Interpreter(expressionMode);
+    }
+
     @Test
     void shouldEvaluateNumberLiterals() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("42");
         
@@ -29,7 +34,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateStringLiterals() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("\"hello\"");
         
@@ -45,8 +50,8 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateBooleanLiterals() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
         
         var result1 = interpreter1.evaluate("true");
         var result2 = interpreter2.evaluate("false");
@@ -63,7 +68,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateNilLiteral() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("nil");
         
@@ -76,7 +81,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateGroupedExpressions() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("(42)");
         
@@ -88,7 +93,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateUnaryMinusExpression() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("-42");
         
@@ -100,10 +105,10 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateUnaryBangExpression() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
-        Interpreter interpreter4 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
+        Interpreter interpreter4 = interpreter(true);
         
         var result1 = interpreter1.evaluate("!true");
         var result2 = interpreter2.evaluate("!false");
@@ -128,10 +133,10 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateArithmeticExpressions() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
-        Interpreter interpreter4 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
+        Interpreter interpreter4 = interpreter(true);
         
         var result1 = interpreter1.evaluate("1 + 2");
         var result2 = interpreter2.evaluate("5 - 3");
@@ -156,7 +161,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateStringConcatenation() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("\"hello\" + \" world\"");
         
@@ -168,10 +173,10 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateComparisonExpressions() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
-        Interpreter interpreter4 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
+        Interpreter interpreter4 = interpreter(true);
         
         var result1 = interpreter1.evaluate("1 < 2");
         var result2 = interpreter2.evaluate("2 <= 2");
@@ -196,10 +201,10 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateEqualityExpressions() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
-        Interpreter interpreter4 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
+        Interpreter interpreter4 = interpreter(true);
         
         var result1 = interpreter1.evaluate("42 == 42");
         var result2 = interpreter2.evaluate("42 != 43");
@@ -224,7 +229,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateComplexExpressionWithPrecedence() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("1 + 2 * 3");
         
@@ -237,7 +242,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateVariableDeclarationWithoutInitializer() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x;");
         
@@ -247,7 +252,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateVariableDeclarationWithInitializer() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 42;");
         
@@ -257,7 +262,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateVariableAccess() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 42; x;");
         
@@ -273,7 +278,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateVariableAssignment() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 10; x = 42; x;");
         
@@ -285,7 +290,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateBlockScoping() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 10; { var x = 20; } x;");
         
@@ -298,7 +303,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateExpressionStatements() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("42;");
         
@@ -310,7 +315,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleExpressionMode() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("1 + 2");
         
@@ -322,7 +327,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleStatementMode() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("1 + 2;");
         
@@ -334,7 +339,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleMultipleStatements() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 1; var y = 2; x + y;");
         
@@ -346,7 +351,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleParseErrors() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("42 42;");
         
@@ -356,7 +361,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleInvalidUnaryOperation() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("-\"hello\"");
         
@@ -367,7 +372,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleInvalidBinaryOperation() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("42 + \"hello\"");
         
@@ -378,7 +383,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleUndefinedVariableAccess() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("undefinedVar");
         
@@ -389,7 +394,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleUndefinedVariableAssignment() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("undefinedVar = 42;");
         
@@ -400,7 +405,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleEmptyInput() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("");
         
@@ -410,7 +415,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleWhitespaceOnlyInput() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("   \n\t  ");
         
@@ -420,7 +425,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleComments() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("// this is a comment\n42;");
         
@@ -432,7 +437,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateNestedExpressions() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("((1 + 2) * 3) - 4");
         
@@ -445,7 +450,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateChainedAssignments() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x; var y; x = y = 42; x;");
         
@@ -457,7 +462,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateComplexBlockWithNestedScopes() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 1; { var y = 2; { var z = 3; x + y + z; } }");
         
@@ -469,7 +474,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithTrueBooleanCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (true) x = 42; x;");
         
@@ -481,7 +486,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithFalseBooleanCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (false) x = 42; x;");
         
@@ -493,7 +498,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfElseStatementWithTrueCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (true) x = 42; else x = 99; x;");
         
@@ -505,7 +510,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfElseStatementWithFalseCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (false) x = 42; else x = 99; x;");
         
@@ -517,7 +522,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithComparisonCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (5 > 3) x = 42; x;");
         
@@ -529,7 +534,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithEqualityCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (10 == 10) x = 42; x;");
         
@@ -541,7 +546,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithVariableCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var condition = true; var x = 0; if (condition) x = 42; x;");
         
@@ -553,7 +558,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithBlockStatement() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (true) { x = 42; var y = 10; x = x + y; } x;");
         
@@ -565,7 +570,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfElseWithBlockStatements() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (false) { x = 42; } else { x = 99; var z = 1; x = x + z; } x;");
         
@@ -577,7 +582,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateNestedIfStatements() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 0; if (true) if (true) x = 42; x;");
         
@@ -589,7 +594,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithScopedVariables() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 10; if (true) { var x = 20; } x;");
         
@@ -602,7 +607,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleIfStatementWithNonBooleanCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (42) print \"hello\";");
         
@@ -612,7 +617,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleIfStatementWithStringCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (\"hello\") print \"world\";");
         
@@ -622,7 +627,7 @@ class InterpreterTest {
 
     @Test
     void shouldHandleIfStatementWithNilCondition() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (nil) print \"world\";");
         
@@ -633,7 +638,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementReturningFromThenBranch() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (true) 42; else 99;");
         
@@ -645,7 +650,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementReturningFromElseBranch() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (false) 42; else 99;");
         
@@ -657,7 +662,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateIfStatementWithoutElseReturningNull() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("if (false) 42;");
         
@@ -667,7 +672,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalAndWithTrueLeft() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("true and false");
         
@@ -679,7 +684,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalAndWithFalseLeft() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("false and true");
         
@@ -691,7 +696,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalOrWithTrueLeft() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("true or false");
         
@@ -703,7 +708,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalOrWithFalseLeft() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("false or true");
         
@@ -715,7 +720,7 @@ class InterpreterTest {
 
     @Test
     void shouldShortCircuitLogicalAndWithFalseLeft() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         // This should short-circuit and not evaluate the undefined variable
         var result = interpreter.evaluate("false and undefinedVar;");
@@ -728,7 +733,7 @@ class InterpreterTest {
 
     @Test
     void shouldShortCircuitLogicalOrWithTrueLeft() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         // This should short-circuit and not evaluate the undefined variable
         var result = interpreter.evaluate("true or undefinedVar;");
@@ -741,7 +746,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalAndWithNonBooleanValues() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("42 and \"hello\"");
         
@@ -754,7 +759,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalOrWithNonBooleanValues() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("nil or 42");
         
@@ -767,7 +772,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateChainedLogicalExpressions() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("true and false or true");
         
@@ -780,7 +785,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateComplexLogicalExpression() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 5; var y = 10; x > 3 and y < 15;");
         
@@ -792,7 +797,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalExpressionsWithParentheses() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("true and (false or true)");
         
@@ -804,7 +809,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalAndWithVariables() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var a = true; var b = false; a and b;");
         
@@ -816,7 +821,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalOrWithVariables() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var a = false; var b = true; a or b;");
         
@@ -828,7 +833,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalExpressionsInIfStatements() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = 5; var y = 10; var result = 0; if (x > 3 and y < 15) result = 42; result;");
         
@@ -840,9 +845,9 @@ class InterpreterTest {
 
     @Test
     void shouldHandleLogicalExpressionsWithNilAndNumbers() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
         
         var result1 = interpreter1.evaluate("nil and 42");
         var result2 = interpreter2.evaluate("0 and true");
@@ -866,7 +871,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateComplexNestedLogicalExpressions() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var a = true; var b = false; var c = true; var d = false; (a or b) and (c or d);");
         
@@ -879,7 +884,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalOperatorPrecedence() {
-        Interpreter interpreter = new Interpreter(true);
+        Interpreter interpreter = interpreter(true);
         
         var result = interpreter.evaluate("false or true and false");
         
@@ -892,7 +897,7 @@ class InterpreterTest {
 
     @Test
     void shouldEvaluateLogicalExpressionsWithAssignments() {
-        Interpreter interpreter = new Interpreter(false);
+        Interpreter interpreter = interpreter(false);
         
         var result = interpreter.evaluate("var x = false; var y = false; x = true and (y = true); x;");
         
@@ -904,9 +909,9 @@ class InterpreterTest {
 
     @Test
     void shouldReturnCorrectValueFromLogicalOperators() {
-        Interpreter interpreter1 = new Interpreter(true);
-        Interpreter interpreter2 = new Interpreter(true);
-        Interpreter interpreter3 = new Interpreter(true);
+        Interpreter interpreter1 = interpreter(true);
+        Interpreter interpreter2 = interpreter(true);
+        Interpreter interpreter3 = interpreter(true);
         
         // Logical operators should return the last evaluated operand
         var result1 = interpreter1.evaluate("\"first\" and \"second\"");
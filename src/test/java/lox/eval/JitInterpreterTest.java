@@ -0,0 +1,13 @@
+package lox.eval;
+
+/**
+ * Runs every {@link InterpreterTest} with statements with loops compiled to
+ * JVM bytecode.
+ */
+class JitInterpreterTest extends InterpreterTest {
+
+    @Override
+    Interpreter interpreter(boolean expressionMode) {
+        return new Interpreter(expressionMode, Interpreter.Engine.JIT);
+    }
+}
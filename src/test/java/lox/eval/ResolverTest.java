@@ -0,0 +1,105 @@
+package lox.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import lox.Source;
+import lox.parse.Ast;
+import lox.parse.Ast.Block;
+import lox.parse.Ast.Var;
+import lox.parse.Expr;
+import lox.parse.Parser;
+import lox.parse.Stmt.ExprStmt;
+import lox.parse.Stmt.PrintStmt;
+import lox.token.SymbolTable;
+
+class ResolverTest {
+
+    private final Resolver resolver = new Resolver();
+    // names resolve across programs only if they are the same symbols
+    private final SymbolTable symbols = new SymbolTable();
+
+    private List<Ast> resolve(String source) {
+        List<Ast> program = new Parser(Source.of(source), false, symbols).parse().success();
+        program.forEach(resolver::resolve);
+        return program;
+    }
+
+    private static Expr.Terminal printed(Ast ast) {
+        return (Expr.Terminal) ((PrintStmt) ast).expr();
+    }
+
+    @Test
+    void shouldGiveGlobalsSlotsInTheGlobalFrame() {
+        List<Ast> program = resolve("var a = 1; var b = 2; var a = 3; print b;");
+
+        assertThat(((Var) program.get(0)).depth()).isZero();
+        assertThat(((Var) program.get(0)).slot()).isZero();
+        assertThat(((Var) program.get(1)).slot()).isEqualTo(1);
+        // redeclaring reuses the slot
+        assertThat(((Var) program.get(2)).slot()).isZero();
+        assertThat(printed(program.get(3)).depth()).isZero();
+        assertThat(printed(program.get(3)).slot()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldResolveToTheInnermostDeclarationBeforeTheUse() {
+        List<Ast> program = resolve("var a = 1; { print a; var a = a; print a; }");
+
+        Block block = (Block) program.get(1);
+        assertThat(block.slots()).isEqualTo(1);
+        assertThat(printed(block.block().get(0)).depth()).isZero();
+        Var shadow = (Var) block.block().get(1);
+        assertThat(shadow.depth()).isEqualTo(1);
+        assertThat(((Expr.Terminal) shadow.initializer().get()).depth()).isZero();
+        assertThat(printed(block.block().get(2)).depth()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotGiveBlocksWithoutDeclarationsAFrame() {
+        List<Ast> program = resolve("var a = 1; { { var b = 2; { a = b; } } }");
+
+        Block outer = (Block) program.get(1);
+        assertThat(outer.slots()).isZero();
+        Block declaring = (Block) outer.block().get(0);
+        assertThat(declaring.slots()).isEqualTo(1);
+        assertThat(((Var) declaring.block().get(0)).depth()).isEqualTo(1);
+
+        Block inner = (Block) declaring.block().get(1);
+        assertThat(inner.slots()).isZero();
+        Expr.Assignment assignment = (Expr.Assignment) ((ExprStmt) inner.block().get(0)).expr();
+        assertThat(assignment.depth()).isZero();
+        assertThat(((Expr.Terminal) assignment.expression()).depth()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldResolveUndeclaredNamesToNoFrame() {
+        List<Ast> program = resolve("print x; { var y = 1; } print y;");
+
+        assertThat(printed(program.get(0)).depth()).isEqualTo(-1);
+        assertThat(printed(program.get(2)).depth()).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldKeepGlobalsAcrossPrograms() {
+        resolve("var a = 1;");
+        List<Ast> program = resolve("print a;");
+
+        assertThat(printed(program.get(0)).depth()).isZero();
+    }
+
+    @Test
+    void shouldReportUndefinedVariablesWhenTheyRun() {
+        var interpreter = new Interpreter(false);
+
+        var result = interpreter.evaluate("var a = 1; { var b = a; a = b + 1; } print c;");
+
+        assertThat(result.error()).hasSize(1);
+        assertThat(result.error().get(0)).isInstanceOf(UndefinedVarException.class)
+                .hasMessage("Undefined variable 'c'.");
+        assertThat(interpreter.evaluate("a;").success().get().value()).isEqualTo(2.0);
+    }
+}
@@ -0,0 +1,74 @@
+package lox.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lox.parse.Ast;
+import lox.parse.Parser;
+import lox.token.Tokens.Lexemes;
+
+/**
+ * Runs every {@link InterpreterTest} with self-specializing operators.
+ */
+class SpecializingInterpreterTest extends InterpreterTest {
+
+    @Override
+    Interpreter interpreter(boolean expressionMode) {
+        return new Interpreter(expressionMode, Interpreter.Engine.SPECIALIZING);
+    }
+
+    @Test
+    void shouldSpecializeOnTheFirstOperands() {
+        var interpreter = interpreter(false);
+
+        var result = interpreter.evaluate("var i = 0; var s = \"\"; while (i < 3) { i = i + 1; s = s + \"x\"; } s;");
+
+        assertThat(result.success().get().value()).isEqualTo("xxx");
+        RewriteStats rewrites = interpreter.rewrites();
+        assertThat(rewrites.count(Lexemes.LESS, RewriteStats.Kind.NUMBER)).isEqualTo(1);
+        assertThat(rewrites.count(Lexemes.PLUS, RewriteStats.Kind.NUMBER)).isEqualTo(1);
+        assertThat(rewrites.count(Lexemes.PLUS, RewriteStats.Kind.STRING)).isEqualTo(1);
+        assertThat(rewrites.total()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldTurnGenericWhenTheOperandsChange() {
+        var stats = new RewriteStats();
+        Ast ast = new Parser("{ var a = 1; var n = 0; while (n < 2) { print a + a; a = \"s\"; n = n + 1; } }", false)
+                .parse().success().get(0);
+        new Resolver().resolve(ast);
+
+        new ClosureCompiler(stats).compile(ast).execute(new EvalState());
+
+        assertThat(stats.count(Lexemes.PLUS, RewriteStats.Kind.NUMBER)).isEqualTo(2);
+        assertThat(stats.count(Lexemes.PLUS, RewriteStats.Kind.GENERIC)).isEqualTo(1);
+        assertThat(stats.toString()).startsWith("rewrites: 4\n").contains("  PLUS -> GENERIC: 1\n");
+    }
+
+    @Test
+    void shouldStayGenericForOperandsWithoutAFastPath() {
+        Ast ast = new Parser("nil == nil", true).parse().success().get(0);
+        var slot = (ClosureCompiler.Slot) new ClosureCompiler(new RewriteStats()).compile(ast);
+
+        assertThat(slot.node()).isInstanceOf(ClosureCompiler.Uninitialized.class);
+        assertThat(slot.execute(new EvalState()).value()).isEqualTo(false);
+        assertThat(slot.kind()).isEqualTo(RewriteStats.Kind.GENERIC);
+        assertThat(slot.node()).isInstanceOf(ClosureCompiler.Generic.class);
+    }
+
+    @Test
+    void shouldReplaceTheNodeInItsSlot() {
+        var slot = (ClosureCompiler.Slot) new ClosureCompiler(new RewriteStats())
+                .compile(new Parser("1 + 2", true).parse().success().get(0));
+
+        assertThat(slot.execute(new EvalState()).value()).isEqualTo(3.0);
+        var specialized = slot.node();
+        assertThat(specialized).isInstanceOf(ClosureCompiler.NumberAdd.class);
+        assertThat(slot.kind()).isEqualTo(RewriteStats.Kind.NUMBER);
+
+        // the same node keeps running
+        assertThat(slot.execute(new EvalState()).value()).isEqualTo(3.0);
+        assertThat(slot.node()).isSameAs(specialized);
+    }
+}
@@ -0,0 +1,12 @@
+package lox.eval;
+
+/**
+ * Runs every {@link InterpreterTest} on the bytecode VM.
+ */
+class VmInterpreterTest extends InterpreterTest {
+
+    @Override
+    Interpreter interpreter(boolean expressionMode) {
+        return new Interpreter(expressionMode, Interpreter.Engine.VM);
+    }
+}
@@ -0,0 +1,130 @@
+package lox.jit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import lox.Source;
+import lox.eval.ClosureCompiler;
+import lox.eval.ConstantFolder;
+import lox.eval.EvalException;
+import lox.eval.EvalState;
+import lox.eval.EvaluationResult;
+import lox.eval.Interpreter;
+import lox.eval.Resolver;
+import lox.eval.UndefinedVarException;
+import lox.parse.Parser;
+import lox.token.SymbolTable;
+
+class JitCompilerTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final EvalState state = new EvalState(symbols);
+    private final ConstantFolder folder = new ConstantFolder();
+    private final Resolver resolver = new Resolver();
+    private final JitCompiler jit = new JitCompiler();
+    private final ClosureCompiler closures = new ClosureCompiler();
+    private int compiled;
+
+    // the value of the last statement, running the ones not compiled as closures
+    private EvaluationResult<?> run(String source) {
+        EvaluationResult<?> result = null;
+        for (var ast : new Parser(Source.of(source), false, symbols).parse().success()) {
+            var statement = folder.fold(ast);
+            resolver.resolve(statement);
+            var node = jit.compile(statement, state);
+            if (node != null) {
+                compiled++;
+            }
+            result = (node != null ? node : closures.compile(statement)).execute(state);
+        }
+        return result;
+    }
+
+    @Test
+    void shouldOnlyCompileStatementsWithLoops() {
+        var result = run("var s = 0; { var i = 0; while (i < 10) { var t = i * 2; s = s + t; i = i + 1; } } s;");
+
+        assertThat(result.value()).isEqualTo(90.0);
+        assertThat(compiled).isEqualTo(1);
+    }
+
+    @Test
+    void shouldGiveTheValueOfTheStatementRunLast() {
+        assertThat(run("var a = 0; if (true) { while (a < 3) a = a + 1; a; }").value()).isEqualTo(3.0);
+        assertThat(run("while (a < 5) a = a + 1;")).isNull();
+        assertThat(run("{ var s = \"\"; while (s != \"xx\") s = s + \"x\"; s; }").value()).isEqualTo("xx");
+    }
+
+    @Test
+    void shouldOnlyKeepVariablesHoldingNumbersAsDoubles() {
+        run("var n = 0; var s = \"\";");
+
+        var result = run("""
+                {
+                  var i = 0;
+                  var x = 1;
+                  while (i < 3) {
+                    n = n - 0.5;
+                    s = s + "x";
+                    if (i == 1) x = "one";
+                    i = i + 1;
+                  }
+                  x;
+                }
+                """);
+        assertThat(result.value()).isEqualTo("one");
+        assertThat(run("n;").value()).isEqualTo(-1.5);
+        assertThat(run("s;").value()).isEqualTo("xxx");
+    }
+
+    @Test
+    void shouldCompareNumbersAsTheInterpreterDoes() {
+        var comparisons = """
+                if (nan == nan) b = b + 1;
+                if (nan != nan) b = b + 2;
+                if (nan < 1 or nan >= 1) b = b + 4;
+                if (zero == 0) b = b + 8;
+                if (zero < 0 or zero > 0) b = b + 16;
+                """;
+        run("var nan = 0 / 0; var zero = -0; var a = 0; var b = 0;");
+        run("while (a < 1) { a = a + 1; " + comparisons + " }");
+
+        var interpreted = new Interpreter(false, Interpreter.Engine.TREE)
+                .evaluate("var nan = 0 / 0; var zero = -0; var b = 0; " + comparisons + " b;");
+        assertThat(run("b;").value()).isEqualTo(interpreted.success().get().value());
+    }
+
+    @Test
+    void shouldFailAsTheInterpreterDoes() {
+        run("var a = 1;");
+
+        assertThatThrownBy(() -> run("while (a < 3) a = a + \"x\";"))
+                .isInstanceOf(EvalException.class)
+                .hasMessage("Operands must be two numbers or two strings.");
+        assertThatThrownBy(() -> run("while (b) a = 1;"))
+                .isInstanceOf(UndefinedVarException.class)
+                .hasMessage("Undefined variable 'b'.");
+    }
+
+    @Test
+    void shouldKeepGlobalsAssignedBeforeAnError() {
+        run("var a = 0;");
+
+        assertThatThrownBy(() -> run("while (true) { a = a + 1; if (a == 3) print -\"x\"; }"))
+                .isInstanceOf(EvalException.class);
+        assertThat(run("a;").value()).isEqualTo(3.0);
+    }
+
+    @Test
+    void shouldLeaveHugeMethodsToTheClosureEngine() {
+        run("var a = 0;");
+
+        run("while (a < 1) { " + "a = a + 1; ".repeat(50) + "}");
+        assertThat(compiled).isEqualTo(1);
+        run("while (a < 1000) { " + "a = a + 1; ".repeat(2000) + "}");
+        assertThat(compiled).isEqualTo(1);
+        assertThat(run("a;").value()).isEqualTo(2050.0);
+    }
+}
@@ -0,0 +1,65 @@
+package lox.parse;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Rough comparison of the memory held by a parsed program as an object tree
+ * and as an {@link AstArena}, and of the time a full GC takes while it is
+ * live.
+ *
+ * Not a unit test; run it directly, e.g.
+ * {@code java --enable-preview -cp target/classes:target/test-classes lox.parse.AstArenaBenchmark}
+ */
+public class AstArenaBenchmark {
+
+    public static void main(String[] args) {
+        final int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final String source = generate(statements);
+
+        measure("object tree", () -> new Parser(source, false).parse().success());
+        measure("arena", () -> new Parser(source, false).parseArena().success());
+    }
+
+    private static void measure(final String name, final Supplier<Object> parse) {
+        final var runtime = Runtime.getRuntime();
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        final Object program = parse.get();
+        System.gc();
+        final long after = runtime.totalMemory() - runtime.freeMemory();
+
+        // best of several full collections with the program live
+        long pause = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            final long collected = collectionMillis();
+            final long start = System.nanoTime();
+            System.gc();
+            pause = Math.min(pause, Math.max(System.nanoTime() - start, (collectionMillis() - collected) * 1_000_000));
+        }
+        java.lang.ref.Reference.reachabilityFence(program);
+
+        final int nodes = program instanceof AstArena arena ? arena.size() : -1;
+        System.out.printf("%s: retained %,d bytes%s, full GC %.1f ms%n", name, after - before,
+                nodes < 0 ? "" : String.format(" (%,d nodes, %.1f bytes/node)", nodes, (double) (after - before) / nodes),
+                pause / 1e6);
+    }
+
+    private static long collectionMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    static String generate(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("var v").append(i).append(" = (").append(i).append(" + 2) * 3 - 4 / 5;\n");
+            sb.append("if (v").append(i).append(" >= 10 and true) { print \"big\"; } else print -v").append(i).append(";\n");
+        }
+        return sb.toString();
+    }
+}
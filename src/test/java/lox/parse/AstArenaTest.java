@@ -0,0 +1,65 @@
+package lox.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lox.parse.AstArena.Kind;
+import lox.parse.Ast.Var;
+import lox.parse.Expr.Binary;
+import lox.parse.Expr.Terminal;
+import lox.parse.Stmt.IfStmt;
+import lox.token.Tokens.Lexemes;
+
+class AstArenaTest {
+
+    @Test
+    void shouldFlattenProgramIntoNodes() {
+        var result = new Parser("var x = 1 + 2; if (x) { print x; }", false).parseArena();
+
+        assertThat(result.hasErr()).isFalse();
+        AstArena arena = result.success();
+        assertThat(arena.statementCount()).isEqualTo(2);
+
+        int var = arena.statement(0);
+        assertThat(arena.kind(var)).isEqualTo(Kind.VAR);
+        assertThat(arena.tokens().lexeme(arena.token(var))).isEqualTo(Lexemes.IDENTIFIER);
+
+        int sum = arena.first(var);
+        assertThat(arena.kind(sum)).isEqualTo(Kind.BINARY);
+        assertThat(arena.tokens().lexeme(arena.token(sum))).isEqualTo(Lexemes.PLUS);
+        assertThat(arena.tokens().number(arena.token(arena.second(sum)))).isEqualTo(2.0);
+
+        int ifStmt = arena.statement(1);
+        assertThat(arena.kind(ifStmt)).isEqualTo(Kind.IF_STMT);
+        assertThat(arena.third(ifStmt)).isEqualTo(-1);
+
+        int block = arena.second(ifStmt);
+        assertThat(arena.kind(block)).isEqualTo(Kind.BLOCK);
+        assertThat(arena.childCount(block)).isEqualTo(1);
+        assertThat(arena.kind(arena.child(block, 0))).isEqualTo(Kind.PRINT_STMT);
+    }
+
+    @Test
+    void shouldRecreateAstObjects() {
+        var arena = new Parser("var x = 1 + 2; if (x) print x; else print nil;", false).parseArena().success();
+
+        Var var = (Var) arena.ast(arena.statement(0));
+        assertThat(var.identifier().toString()).contains("x");
+        Binary sum = (Binary) var.initializer().get();
+        assertThat(sum.op().lexeme()).isEqualTo(Lexemes.PLUS);
+        assertThat(((Terminal) sum.left()).token().lexeme()).isEqualTo(Lexemes.NUMBER);
+        assertThat(sum.op().offset()).isEqualTo(10);
+
+        IfStmt ifStmt = (IfStmt) arena.ast(arena.statement(1));
+        assertThat(ifStmt.elseStmt()).isPresent();
+    }
+
+    @Test
+    void shouldReportParseErrors() {
+        var result = new Parser("var x = ;", false).parseArena();
+
+        assertThat(result.hasErr()).isTrue();
+        assertThat(result.success()).isNull();
+    }
+}
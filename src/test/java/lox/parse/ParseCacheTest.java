@@ -0,0 +1,91 @@
+package lox.parse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import lox.Source;
+import lox.parse.AstArena.Kind;
+import lox.token.SymbolTable;
+
+class ParseCacheTest {
+
+    private static final String PROGRAM = "var x = 1 + 2; while (x < 10) { x = x * 2; } print x;";
+
+    @Test
+    void shouldReadBackStoredProgram(@TempDir Path dir) throws IOException {
+        var cache = new ParseCache(dir);
+
+        var stored = cache.parse(Source.of(PROGRAM), false, new SymbolTable());
+        assertThat(stored.hasErr()).isFalse();
+        assertThat(entries(dir)).hasSize(1);
+
+        var loaded = cache.parse(Source.of(PROGRAM), false, new SymbolTable());
+        assertThat(loaded.hasErr()).isFalse();
+        assertThat(dump(loaded.success())).isEqualTo(dump(stored.success()));
+        assertThat(loaded.success().ast(loaded.success().statement(2)).toString())
+                .isEqualTo(stored.success().ast(stored.success().statement(2)).toString());
+    }
+
+    @Test
+    void shouldKeySeparateEntriesBySourceAndMode(@TempDir Path dir) throws IOException {
+        var cache = new ParseCache(dir);
+
+        cache.parse(Source.of(PROGRAM), false, new SymbolTable());
+        cache.parse(Source.of(PROGRAM + " print 1;"), false, new SymbolTable());
+        cache.parse(Source.of("1 + 2"), true, new SymbolTable());
+
+        assertThat(entries(dir)).hasSize(3);
+        assertThat(ParseCache.key(Source.of("1 + 2"), true)).isNotEqualTo(ParseCache.key(Source.of("1 + 2"), false));
+    }
+
+    @Test
+    void shouldDiscardCorruptedEntry(@TempDir Path dir) throws IOException {
+        var cache = new ParseCache(dir);
+        cache.parse(Source.of(PROGRAM), false, new SymbolTable());
+        Path entry = entries(dir).get(0);
+
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(entry, bytes);
+
+        var reparsed = cache.parse(Source.of(PROGRAM), false, new SymbolTable());
+        assertThat(reparsed.hasErr()).isFalse();
+        assertThat(reparsed.success().kind(reparsed.success().statement(1))).isEqualTo(Kind.WHILE_STMT);
+        // the bad entry was replaced by a fresh one
+        assertThat(Files.readAllBytes(entry)).isNotEqualTo(bytes);
+    }
+
+    @Test
+    void shouldNotCacheProgramsWithErrors(@TempDir Path dir) throws IOException {
+        var result = new ParseCache(dir).parse(Source.of("var x = ;"), false, new SymbolTable());
+
+        assertThat(result.hasErr()).isTrue();
+        assertThat(entries(dir)).isEmpty();
+    }
+
+    private static List<Path> entries(final Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+
+    private static String dump(final AstArena arena) {
+        var sb = new StringBuilder();
+        for (int node = 0; node < arena.size(); node++) {
+            sb.append(arena.kind(node)).append(' ').append(arena.token(node)).append(' ')
+                    .append(arena.first(node)).append(' ').append(arena.second(node)).append('\n');
+        }
+        return sb.toString();
+    }
+}
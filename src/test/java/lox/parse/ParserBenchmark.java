@@ -0,0 +1,57 @@
+package lox.parse;
+
+/**
+ * Rough throughput check for {@link Parser#parse} on expression-dense input.
+ *
+ * Not a unit test; run it directly, e.g.
+ * {@code java --enable-preview -cp target/classes:target/test-classes lox.parse.ParserBenchmark}
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) {
+        final int statements = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        throughput("arithmetic", generateArithmetic(statements));
+        throughput("logical", generateLogical(statements));
+        throughput("literals", generateLiterals(statements));
+    }
+
+    // best of several runs, in thousands of statements per second
+    private static void throughput(final String name, final String source) {
+        final int statements = (int) source.lines().count();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 15; i++) {
+            final long start = System.nanoTime();
+            final var result = new Parser(source, false).parse();
+            best = Math.min(best, System.nanoTime() - start);
+            if (result.hasErr()) {
+                throw new IllegalStateException(result.error().toString());
+            }
+        }
+        System.out.printf("%s: %.0f k statements/s%n", name, statements / (best / 1e9) / 1e3);
+    }
+
+    static String generateArithmetic(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("x = -a * (b + ").append(i).append(") / 2 - c * d + !e;\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateLogical(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("print a < ").append(i).append(" and b >= 2 or c == d and e != nil;\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateLiterals(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append(i).append(";\n");
+        }
+        return sb.toString();
+    }
+}
@@ -6,8 +6,14 @@ import org.junit.jupiter.api.BeforeEach;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import lox.Source;
+import lox.token.Scanner;
+import lox.token.TokenBuffer;
+import lox.token.UnexpectedCharacterException;
+
 import lox.token.Tokens.Lexemes;
 import lox.parse.Ast.Var;
 import lox.parse.Ast.Block;
@@ -386,6 +392,17 @@ class ParserTest {
         assertThat(result.error()).isNotEmpty();
     }
 
+    @Test
+    void shouldReportOnlyScanErrorsWhenScanningFails() {
+        Parser parser = new Parser("var x = 1; @ print x; var y = #;", false);
+
+        var result = parser.parse();
+
+        assertThat(result.success()).isEmpty();
+        assertThat(result.error()).hasSize(2);
+        assertThat(result.error()).allMatch(e -> e instanceof UnexpectedCharacterException);
+    }
+
     @Test
     void shouldHandleUnexpectedToken() {
         Parser parser = new Parser("42 42;", false);
@@ -419,6 +436,17 @@ class ParserTest {
         assertThat(result.error().get(0)).isInstanceOf(UnexpectedEofException.class);
     }
 
+    @Test
+    void shouldHandleMissingIfBody() {
+        Parser parser = new Parser("if (true)", false);
+
+        var result = parser.parse();
+
+        assertThat(result.hasErr()).isTrue();
+        assertThat(result.error()).hasSize(1);
+        assertThat(result.error().get(0)).isInstanceOf(UnexpectedEofException.class);
+    }
+
     @Test
     void shouldHandleUnterminatedBlock() {
         Parser parser = new Parser("{ var x = 1;", false);
@@ -441,6 +469,22 @@ class ParserTest {
         assertThat(result.error().get(0)).isInstanceOf(UnexpectedTokenException.class);
     }
 
+    @Test
+    void shouldRecoverAfterEachError() {
+        Parser parser = new Parser("(1; print 2;", false);
+
+        var result = parser.parse();
+
+        // the group is missing its ')', and the ';' left over is unexpected
+        assertThat(result.error()).hasSize(2);
+        assertThat(result.error().get(0)).isInstanceOf(MissingTokenException.class)
+                .hasMessage("missing token ) got ;");
+        assertThat(result.error().get(1)).isInstanceOf(UnexpectedTokenException.class)
+                .hasMessage("Unexpected token ;");
+        assertThat(result.success()).hasSize(1);
+        assertThat(result.success().get(0)).isInstanceOf(PrintStmt.class);
+    }
+
     @Test
     void shouldHandleEmptyInput() {
         Parser parser = new Parser("", false);
@@ -885,4 +929,58 @@ class ParserTest {
         assertThat(leftOr.op().lexeme()).isEqualTo(Lexemes.OR);
         assertThat(rightOr.op().lexeme()).isEqualTo(Lexemes.OR);
     }
+
+    @Test
+    void shouldSplitAtTopLevelDeclarations() {
+        String source = "var a = 1; { print a; } if (a) print 1; else print 2; while (a) { a = (a - 1); }";
+        TokenBuffer tokens = new Scanner().buffer(Source.of(source), new ArrayList<>());
+
+        int[] bounds = Parser.declarationBounds(tokens, tokens.size());
+
+        assertThat(bounds).containsExactly(0, 5, 10, 21, tokens.size());
+    }
+
+    @Test
+    void shouldParseRangesLikeSequentialParser() {
+        String source = "var a = 1; { var b = a; print b; } if (a) print 1; else { print 2; } "
+                + "while (a > 0) a = a - 1; print \"done\"; a and (a or 2);";
+        var sequential = new Parser(source, false).parse();
+
+        for (int ranges = 1; ranges <= 8; ranges++) {
+            TokenBuffer tokens = new Scanner().buffer(Source.of(source), new ArrayList<>());
+            var parallel = new Parser(source, false).parse(tokens, ranges);
+
+            assertThat(parallel).isNotNull();
+            assertThat(parallel.isOk()).isTrue();
+            assertThat(parallel.success()).hasSameSizeAs(sequential.success());
+            var printer = new AstPrinter();
+            for (int i = 0; i < sequential.success().size(); i++) {
+                assertThat(printer.print(parallel.success().get(i)))
+                        .isEqualTo(printer.print(sequential.success().get(i)));
+            }
+            // every node has the same children and a token at the same span
+            assertThat(nodes(AstArena.of(parallel.success(), tokens)))
+                    .containsExactlyElementsOf(nodes(AstArena.of(sequential.success(), tokens)));
+        }
+    }
+
+    // each node's kind, token span and children, in the order flattened
+    private static List<String> nodes(AstArena arena) {
+        var nodes = new ArrayList<String>();
+        for (int node = 0; node < arena.size(); node++) {
+            int token = arena.token(node);
+            nodes.add(arena.kind(node) + " " + (token < 0 ? null : arena.tokens().span(token))
+                    + " " + arena.first(node) + " " + arena.second(node) + " " + arena.third(node)
+                    + " " + arena.childCount(node));
+        }
+        return nodes;
+    }
+
+    @Test
+    void shouldLeaveProgramsWithErrorsToSequentialParser() {
+        String source = "var a = 1; print (a; print a; var = 2;";
+        TokenBuffer tokens = new Scanner().buffer(Source.of(source), new ArrayList<>());
+
+        assertThat(new Parser(source, false).parse(tokens, 4)).isNull();
+    }
 }
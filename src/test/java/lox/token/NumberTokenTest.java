@@ -17,4 +17,18 @@ class NumberTokenTest {
         token = new DoubleToken("123.");
         assertThat(token.value()).isEqualTo(123.0);
     }
+
+    @Test
+    void parseMatchesParseDouble() {
+        String[] literals = {
+                "0", "7", "0.1", "0.3", "4.35", "123.", "1.7976931348623157",
+                "9007199254740993", "9007199254740993.0", "123456789012345678",
+                "1234567890123456789", "0.000000000000000000001", "3.14159265358979323846",
+        };
+        for (String literal : literals) {
+            var expected = Double.parseDouble(literal.endsWith(".") ? literal + "0" : literal);
+            assertThat(DoubleToken.parse(literal)).isEqualTo(expected);
+            assertThat(new DoubleToken(literal).doubleValue()).isEqualTo(expected);
+        }
+    }
 }
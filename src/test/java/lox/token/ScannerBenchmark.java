@@ -0,0 +1,101 @@
+package lox.token;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Rough allocation and throughput check for {@link Scanner#scan}.
+ *
+ * Not a unit test; run it directly, e.g.
+ * {@code java --enable-preview -cp target/classes:target/test-classes lox.token.ScannerBenchmark}
+ */
+public class ScannerBenchmark {
+
+    public static void main(String[] args) {
+        final int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final String source = generate(statements);
+        final var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().threadId();
+
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            new Scanner().scan(source);
+        }
+
+        final long allocBefore = mx.getThreadAllocatedBytes(tid);
+        final long start = System.nanoTime();
+        final var result = new Scanner().scan(source);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = mx.getThreadAllocatedBytes(tid) - allocBefore;
+
+        final int tokens = result.success().size();
+        System.out.printf("source: %,d chars, %,d tokens%n", source.length(), tokens);
+        System.out.printf("time: %,d ms%n", elapsed / 1_000_000);
+        System.out.printf("allocated: %,d bytes (%.1f bytes/token)%n",
+                allocated, (double) allocated / tokens);
+
+        final var text = lox.Source.of(source);
+        final long retained = retained(() -> new Scanner().buffer(text, new ArrayList<>()));
+        System.out.printf("retained by TokenBuffer: %,d bytes (%.1f bytes/token)%n",
+                retained, (double) retained / tokens);
+
+        throughput("typical", source);
+        throughput("comment-heavy", generateCommented(statements));
+        throughput("numeric", generateNumeric(statements));
+    }
+
+    // best of several runs, in MB of source per second
+    private static void throughput(final String name, final String source) {
+        final var text = lox.Source.of(source);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 15; i++) {
+            final long start = System.nanoTime();
+            new Scanner().buffer(text, new ArrayList<>());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%s: %.1f MB/s%n", name, source.length() / (best / 1e9) / 1e6);
+    }
+
+    // rough heap growth while the supplied object is reachable, source excluded
+    private static long retained(final Supplier<Object> supplier) {
+        final var runtime = Runtime.getRuntime();
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        final Object kept = supplier.get();
+        System.gc();
+        final long after = runtime.totalMemory() - runtime.freeMemory();
+        java.lang.ref.Reference.reachabilityFence(kept);
+        java.lang.ref.Reference.reachabilityFence(supplier);
+        return after - before;
+    }
+
+    static String generate(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("var counter").append(i).append(" = ").append(i).append(".5 * (other + 42);\n");
+            sb.append("// a comment about statement ").append(i).append('\n');
+            sb.append("if (counter").append(i).append(" >= 10 and flag) print \"value\"; else print nil;\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateCommented(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("    // ").append("explains what the next statement is for, at some length. ".repeat(2)).append('\n');
+            sb.append("    //\n");
+            sb.append("    var identifier_with_a_long_name").append(i).append(" = \"a string literal of some length\";\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateNumeric(final int statements) {
+        final var sb = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            sb.append("var limit").append(i).append(" = ").append(i * 1000 + 7)
+                    .append(" * 0.").append(i % 1000).append(" + 1024 - 3.25;\n");
+        }
+        return sb.toString();
+    }
+}
@@ -1,15 +1,26 @@
 package lox.token;
 
+import lox.Diagnostics;
 import lox.Result;
+import lox.Source;
 import lox.Span;
 import lox.token.Tokens.TokenBuilder;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static lox.token.Tokens.TokenBuilder;
 import static lox.token.Tokens.Lexemes;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class ScannerTest {
     @Test
@@ -34,8 +45,10 @@ public class ScannerTest {
                 new TokenBuilder(Lexemes.GREATER).build(),
                 new TokenBuilder(Lexemes.BANG).build());
 
+        TokenBuffer buffer = buffer(input);
         for (int i = 0; i < input.length(); i++) {
-            Span span = tokens.get(i).span();
+            assertThat(tokens.get(i).offset()).isEqualTo(i);
+            Span span = buffer.span(i);
             assertThat(span.sourceSpan().offset()).isEqualTo(i);
             assertThat(span.sourceSpan().length()).isEqualTo(1);
             assertThat(span.line()).isEqualTo(1);
@@ -54,9 +67,11 @@ public class ScannerTest {
                 new TokenBuilder(Lexemes.GREATER_EQUAL).build(),
                 new TokenBuilder(Lexemes.BANG_EQUAL).build());
 
+        TokenBuffer buffer = buffer(input);
         long expectedOffset = 0;
-        for (Token t : tokens) {
-            Span span = t.span();
+        for (int i = 0; i < tokens.size(); i++) {
+            assertThat(tokens.get(i).offset()).isEqualTo(expectedOffset);
+            Span span = buffer.span(i);
             assertThat(span.sourceSpan().offset()).isEqualTo(expectedOffset);
             long length = span.sourceSpan().length();
             assertThat(length).isEqualTo(2);
@@ -84,9 +99,10 @@ public class ScannerTest {
         Result<List<Token>, List<Throwable>> result = new Scanner().scan(input);
         assertThat(result.isOk()).isTrue();
         var tokens = result.success();
-        assertThat(tokens.get(0).span().line()).isEqualTo(1);
-        assertThat(tokens.get(1).span().line()).isEqualTo(2);
-        assertThat(tokens.get(2).span().line()).isEqualTo(3);
+        TokenBuffer buffer = buffer(input);
+        assertThat(buffer.span(0).line()).isEqualTo(1);
+        assertThat(buffer.span(1).line()).isEqualTo(2);
+        assertThat(buffer.span(2).line()).isEqualTo(3);
     }
 
     @Test
@@ -96,9 +112,11 @@ public class ScannerTest {
         assertThat(result.isOk()).isTrue();
         var tokens = result.success();
         assertThat(tokens.getFirst()).isEqualTo(new TokenBuilder(Lexemes.PLUS).build());
-        assertThat(tokens.getFirst().span().line()).isEqualTo(2);
-        assertThat(tokens.getFirst().span().sourceSpan().offset()).isEqualTo(input.indexOf('+'));
-        assertThat(tokens.getFirst().span().sourceSpan().length()).isEqualTo(1);
+        assertThat(tokens.getFirst().offset()).isEqualTo(input.indexOf('+'));
+        Span span = buffer(input).span(0);
+        assertThat(span.line()).isEqualTo(2);
+        assertThat(span.sourceSpan().offset()).isEqualTo(input.indexOf('+'));
+        assertThat(span.sourceSpan().length()).isEqualTo(1);
     }
 
     @Test
@@ -188,15 +206,19 @@ public class ScannerTest {
         var tokens = result.success();
         assertThat(tokens.size()).isEqualTo(2);
 
-        Token firstToken = tokens.getFirst();
-        assertThat(firstToken.span().sourceSpan().offset()).isEqualTo(0);
-        assertThat(firstToken.span().sourceSpan().length()).isEqualTo(2);
-        assertThat(firstToken.span().line()).isEqualTo(1);
+        assertThat(tokens.get(0).offset()).isEqualTo(0);
+        assertThat(tokens.get(1).offset()).isEqualTo(3);
+
+        TokenBuffer buffer = buffer(input);
+        Span first = buffer.span(0);
+        assertThat(first.sourceSpan().offset()).isEqualTo(0);
+        assertThat(first.sourceSpan().length()).isEqualTo(2);
+        assertThat(first.line()).isEqualTo(1);
 
-        Token secondToken = tokens.get(1);
-        assertThat(secondToken.span().sourceSpan().offset()).isEqualTo(3);
-        assertThat(secondToken.span().sourceSpan().length()).isEqualTo(4);
-        assertThat(secondToken.span().line()).isEqualTo(1);
+        Span second = buffer.span(1);
+        assertThat(second.sourceSpan().offset()).isEqualTo(3);
+        assertThat(second.sourceSpan().length()).isEqualTo(4);
+        assertThat(second.line()).isEqualTo(1);
     }
 
     @Test
@@ -238,6 +260,17 @@ public class ScannerTest {
                 new TokenBuilder(Lexemes.IDENTIFIER).withValue("camelCase").build());
     }
 
+    @Test
+    void scanIdentifiersThatLookLikeKeywords() {
+        String input = "andy fo fun_ classy For thiss tru or1 i";
+        Result<List<Token>, List<Throwable>> result = new Scanner().scan(input);
+        assertThat(result.isOk()).isTrue();
+        var tokens = result.success();
+        assertThat(tokens).hasSize(9);
+        assertThat(tokens).allMatch(t -> t.lexeme() == Lexemes.IDENTIFIER);
+        assertThat(((IdentifierToken) tokens.get(4)).value()).isEqualTo("For");
+    }
+
     @Test
     void scanMixedKeywordsAndIdentifiers() {
         String input = "var myVariable = true; if someCondition";
@@ -269,4 +302,270 @@ public class ScannerTest {
                 new TokenBuilder(Lexemes.STAR).build(),
                 new TokenBuilder(Lexemes.NUMBER).withValue("2").build());
     }
+
+    @Test
+    void bufferStoresTokensAndValues() {
+        List<Throwable> errors = new ArrayList<>();
+        TokenBuffer buffer = new Scanner().buffer(Source.of("var x = 12.;\nprint \"hi\" + x;"), errors);
+
+        assertThat(errors).isEmpty();
+        assertThat(buffer.size()).isEqualTo(10);
+        assertThat(buffer.lexeme(0)).isEqualTo(Lexemes.VAR);
+        assertThat(buffer.symbol(1).name()).isEqualTo("x");
+        assertThat(buffer.symbol(8)).isSameAs(buffer.symbol(1));
+        assertThat(buffer.number(3)).isEqualTo(12.0);
+        assertThat(buffer.text(3)).isEqualTo("12.");
+        assertThat(buffer.string(6)).isEqualTo("hi");
+        assertThat(buffer.start(6)).isEqualTo(19);
+        assertThat(buffer.length(6)).isEqualTo(4);
+        assertThat(buffer.line(4)).isEqualTo(1);
+        assertThat(buffer.line(5)).isEqualTo(2);
+        assertThat(buffer.token(6)).isEqualTo(new TokenBuilder(Lexemes.STRING).withValue("hi").build());
+    }
+
+    @Test
+    void bufferStartsSpanSeveralBlocks() {
+        String input = "a  bb ".repeat(TokenBuffer.BLOCK_SIZE);
+        TokenBuffer buffer = new Scanner().buffer(Source.of(input), new ArrayList<>());
+
+        assertThat(buffer.size()).isEqualTo(2 * TokenBuffer.BLOCK_SIZE);
+        for (int i = 0; i < buffer.size(); i += 2) {
+            assertThat(buffer.start(i)).isEqualTo(3L * i);
+            assertThat(buffer.start(i + 1)).isEqualTo(3L * i + 3);
+            assertThat(buffer.indexOf(3L * i + 3)).isEqualTo(i + 1);
+        }
+        assertThat(buffer.indexOf(1)).isEqualTo(-1);
+        assertThat(buffer.indexBefore(input.length())).isEqualTo(buffer.size() - 1);
+    }
+
+    @Test
+    void linesAreResolvedFromLineStarts() {
+        List<Throwable> errors = new ArrayList<>();
+        TokenBuffer buffer = new Scanner().buffer(Source.of("a \"multi\nline\"\n  b $"), errors);
+
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(buffer.line(0)).isEqualTo(1);
+        assertThat(buffer.line(1)).isEqualTo(1);
+        assertThat(buffer.line(2)).isEqualTo(3);
+        assertThat(buffer.column(2)).isEqualTo(3);
+        assertThat(buffer.span(2).line()).isEqualTo(3);
+        assertThat(buffer.token(2).offset()).isEqualTo(buffer.start(2));
+        assertThat(buffer.lines().lines()).isEqualTo(3);
+
+        assertThat(errors).hasSize(1);
+        var error = (ParseException) errors.get(0);
+        assertThat(error.getSpan().line()).isEqualTo(3);
+        assertThat(error.column()).isEqualTo(5);
+        assertThat(error.toString()).isEqualTo("[line 3] Error: Unexpected character: $");
+    }
+
+    @Test
+    void chunkedScanMatchesSequentialScan() {
+        String input = "var a = \"one\ntwo\nthree\";\n// \"not a string\nprint a;\n$ b \"open\nc";
+        List<Throwable> expectedErrors = new ArrayList<>();
+        TokenBuffer expected = new Scanner().buffer(Source.of(input), expectedErrors);
+
+        for (long chunkSize = 1; chunkSize <= input.length(); chunkSize++) {
+            List<Throwable> errors = new ArrayList<>();
+            TokenBuffer buffer = new Scanner().buffer(Source.of(input), errors, chunkSize);
+
+            assertThat(buffer.asList()).isEqualTo(expected.asList());
+            for (int i = 0; i < buffer.size(); i++) {
+                assertThat(buffer.span(i)).isEqualTo(expected.span(i));
+            }
+            assertThat(buffer.symbol(6)).isSameAs(buffer.symbol(1));
+            assertThat(errors).map(Object::toString)
+                    .containsExactlyElementsOf(expectedErrors.stream().map(Object::toString).toList());
+        }
+    }
+
+    @Test
+    void rescanMatchesFullScanOfEditedSource() {
+        String input = "var a = 1;\nprint a + \"two\nlines\";\n$ a = a * 2;";
+        var scanner = new Scanner();
+        TokenBuffer previous = scanner.buffer(Source.of(input), new ArrayList<>());
+
+        String[][] edits = {
+                // offset, removed, inserted
+                { "4", "1", "apple" },
+                { "8", "0", "2" },
+                { "12", "0", "\"" },
+                { "18", "14", "" },
+                { "0", "0", "// " },
+        };
+        for (String[] edit : edits) {
+            int offset = Integer.parseInt(edit[0]);
+            int removed = Integer.parseInt(edit[1]);
+            String edited = input.substring(0, offset) + edit[2] + input.substring(offset + removed);
+
+            List<Throwable> expectedErrors = new ArrayList<>();
+            TokenBuffer expected = new Scanner().buffer(Source.of(edited), expectedErrors);
+            List<Throwable> errors = new ArrayList<>();
+            TokenBuffer buffer = scanner.rescan(previous, offset, removed, edit[2], errors);
+
+            assertThat(buffer.asList()).isEqualTo(expected.asList());
+            for (int i = 0; i < buffer.size(); i++) {
+                assertThat(buffer.span(i)).isEqualTo(expected.span(i));
+            }
+            assertThat(errors).map(Object::toString)
+                    .containsExactlyElementsOf(expectedErrors.stream().map(Object::toString).toList());
+        }
+    }
+
+    @Test
+    void rescanAfterRescanMatchesFullScan() {
+        String input = "var a = \"one\";\n".repeat(200) + "print a;\n" + "a = a + 1;\n".repeat(200);
+        var scanner = new Scanner();
+        TokenBuffer buffer = scanner.buffer(Source.of(input), new ArrayList<>());
+
+        // type, then delete, in the middle and at both ends, each edit made to the previous result
+        int middle = input.indexOf("print") + 6;
+        String[] typed = { "b", "+", "\"", "x", "$", ";" };
+        for (String text : typed) {
+            buffer = scanner.rescan(buffer, middle, 0, text, new ArrayList<>());
+            input = input.substring(0, middle) + text + input.substring(middle);
+            middle++;
+        }
+        buffer = scanner.rescan(buffer, middle - 3, 3, "", new ArrayList<>());
+        input = input.substring(0, middle - 3) + input.substring(middle);
+        buffer = scanner.rescan(buffer, 0, 4, "", new ArrayList<>());
+        input = input.substring(4);
+        List<Throwable> errors = new ArrayList<>();
+        buffer = scanner.rescan(buffer, input.length(), 0, " \"open", errors);
+        input = input + " \"open";
+
+        List<Throwable> expectedErrors = new ArrayList<>();
+        TokenBuffer expected = new Scanner().buffer(Source.of(input), expectedErrors);
+        assertThat(buffer.source().toString()).isEqualTo(input);
+        assertThat(buffer.asList()).isEqualTo(expected.asList());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertThat(buffer.span(i)).isEqualTo(expected.span(i));
+        }
+        assertThat(buffer.lines().lines()).isEqualTo(expected.lines().lines());
+        assertThat(errors).map(Object::toString)
+                .containsExactlyElementsOf(expectedErrors.stream().map(Object::toString).toList());
+    }
+
+    @Test
+    void rescanRejectsMappedSource(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("utf8.lox");
+        Files.writeString(file, "var café = 1;");
+
+        try (Source source = Source.map(file)) {
+            var scanner = new Scanner();
+            TokenBuffer buffer = scanner.buffer(source, new ArrayList<>());
+            assertThatThrownBy(() -> scanner.rescan(buffer, 12, 1, "2", new ArrayList<>()))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> source.edit(12, 1, "2"))
+                    .isInstanceOf(UnsupportedOperationException.class);
+        }
+    }
+
+    @Test
+    void stringValuesOutliveReleasedSource() {
+        List<Throwable> errors = new ArrayList<>();
+        TokenStream stream = new Scanner().stream(Source.of("\"one\" \"two\nlines\""));
+
+        var first = (StringToken) stream.next();
+        var second = (StringToken) stream.next();
+        assertThat(first.value()).isEqualTo("one");
+        stream.release();
+
+        assertThat(second.value()).isEqualTo("two\nlines");
+        assertThat(second).isEqualTo(new TokenBuilder(Lexemes.STRING).withValue("two\nlines").build());
+
+        TokenBuffer buffer = new Scanner().buffer(Source.of("\"one\" \"two\""), errors);
+        assertThat(buffer.string(1)).isEqualTo("two");
+        assertThat(buffer.string(1)).isSameAs(buffer.string(1));
+    }
+
+    @Test
+    void errorsAreReportedWithoutExceptions() {
+        String input = "@#".repeat(5_000) + "\n\"open";
+        TokenStream stream = new Scanner().stream(Source.of(input));
+        while (stream.hasNext()) {
+            stream.next();
+        }
+
+        var diagnostics = stream.diagnostics();
+        assertThat(diagnostics.size()).isEqualTo(10_001);
+        assertThat(diagnostics.code(9_999)).isEqualTo(Diagnostics.Code.UNEXPECTED_CHARACTER);
+        assertThat(diagnostics.offset(9_999)).isEqualTo(9_999);
+        assertThat(diagnostics.code(10_000)).isEqualTo(Diagnostics.Code.UNTERMINATED_STRING);
+        assertThat(diagnostics.error(10_000).toString()).isEqualTo("[line 2] Error: Unterminated string.");
+        assertThat(diagnostics.error(0).getStackTrace()).isEmpty();
+    }
+
+    @Test
+    void streamMatchesLexemesAndTokenSets() {
+        TokenStream stream = new Scanner().stream(Source.of("a + 1;"));
+        TokenSet operators = TokenSet.of(Lexemes.PLUS, Lexemes.MINUS);
+
+        assertThat(stream.peekLexeme()).isEqualTo(Lexemes.IDENTIFIER);
+        assertThat(stream.nextIf(operators)).isNull();
+        assertThat(stream.match(Lexemes.SEMICOLON)).isFalse();
+        Token a = stream.peekToken();
+        assertThat(stream.next()).isSameAs(a);
+
+        assertThat(stream.nextIf(operators)).isEqualTo(new TokenBuilder(Lexemes.PLUS).build());
+        assertThat(stream.next()).isEqualTo(new TokenBuilder(Lexemes.NUMBER).withValue("1").build());
+        assertThat(stream.match(Lexemes.SEMICOLON)).isTrue();
+        assertThat(stream.peekLexeme()).isNull();
+        assertThat(stream.hasNext()).isFalse();
+    }
+
+    @Test
+    void streamScansOnDemand() {
+        TokenStream stream = new Scanner().stream(Source.of("print 1; @"));
+        var diagnostics = stream.diagnostics();
+
+        assertThat(stream.next()).isEqualTo(new TokenBuilder(Lexemes.PRINT).build());
+        assertThat(stream.peek()).contains(new TokenBuilder(Lexemes.NUMBER).withValue("1").build());
+        assertThat(diagnostics.isEmpty()).isTrue();
+
+        assertThat(stream.next().lexeme()).isEqualTo(Lexemes.NUMBER);
+        assertThat(stream.next().lexeme()).isEqualTo(Lexemes.SEMICOLON);
+        assertThat(stream.hasNext()).isFalse();
+        assertThat(diagnostics.size()).isEqualTo(1);
+        assertThat(diagnostics.code(0)).isEqualTo(Diagnostics.Code.UNEXPECTED_CHARACTER);
+        assertThat(diagnostics.offset(0)).isEqualTo(9);
+    }
+
+    @Test
+    void scanMappedUtf8Source(@TempDir Path dir) throws IOException {
+        String input = "var café = \"héllo 😀\";\nprint café;";
+        Path file = dir.resolve("utf8.lox");
+        Files.writeString(file, input);
+
+        try (Source source = Source.map(file)) {
+            Result<List<Token>, List<Throwable>> result = new Scanner().scan(source);
+            assertThat(result.hasErr()).isFalse();
+            var tokens = result.success();
+            assertThat(tokens).containsExactlyElementsOf(new Scanner().scan(input).success());
+            assertThat(((IdentifierToken) tokens.get(1)).value()).isEqualTo("café");
+            assertThat(((StringToken) tokens.get(3)).value()).isEqualTo("héllo 😀");
+            // offsets are in bytes
+            assertThat(tokens.get(5).offset())
+                    .isEqualTo(input.substring(0, input.indexOf("print")).getBytes(StandardCharsets.UTF_8).length);
+            assertThat(new Scanner().buffer(source, new ArrayList<>()).span(5).line()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void mapRejectsMalformedUtf8(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("malformed.lox");
+        // a stray continuation byte, an overlong '/', a surrogate and a
+        // sequence cut off by the end of the file
+        for (var bytes : List.of(new byte[] { 'a', (byte) 0x80 }, new byte[] { (byte) 0xc0, (byte) 0xaf },
+                new byte[] { (byte) 0xed, (byte) 0xa0, (byte) 0x80 }, new byte[] { 'x', (byte) 0xe2, (byte) 0x82 })) {
+            Files.write(file, bytes);
+
+            assertThatThrownBy(() -> Source.map(file)).isInstanceOf(MalformedInputException.class);
+            assertThatThrownBy(() -> Files.readString(file)).isInstanceOf(MalformedInputException.class);
+        }
+    }
+
+    private static TokenBuffer buffer(String input) {
+        return new Scanner().buffer(Source.of(input), new ArrayList<>());
+    }
 }
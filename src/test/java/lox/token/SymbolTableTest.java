@@ -0,0 +1,53 @@
+package lox.token;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import lox.Result;
+import lox.util.CharCursor;
+import org.junit.jupiter.api.Test;
+
+class SymbolTableTest {
+
+    @Test
+    void shouldInternSameNameToSameSymbol() {
+        var symbols = new SymbolTable();
+        var source = new CharCursor("foo bar foo");
+
+        var first = symbols.intern(source, 0, 3);
+        var second = symbols.intern(source, 8, 3);
+
+        assertThat(second).isSameAs(first);
+        assertThat(symbols.intern("foo")).isSameAs(first);
+        assertThat(symbols.intern(source, 4, 3)).isNotSameAs(first);
+        assertThat(first.hashCode()).isEqualTo("foo".hashCode());
+    }
+
+    @Test
+    void shouldHandOutDenseIds() {
+        var symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            var symbol = symbols.intern("name" + i);
+            assertThat(symbol.id()).isEqualTo(i);
+        }
+
+        assertThat(symbols.size()).isEqualTo(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(symbols.intern("name" + i).id()).isEqualTo(i);
+            assertThat(symbols.symbol(i).name()).isEqualTo("name" + i);
+        }
+    }
+
+    @Test
+    void shouldInternIdentifiersWhileScanning() {
+        var symbols = new SymbolTable();
+        Result<List<Token>, List<Throwable>> result = new Scanner(symbols).scan("x = x + y; x;");
+
+        var tokens = result.success();
+        var x = ((IdentifierToken) tokens.get(0)).symbol();
+        assertThat(((IdentifierToken) tokens.get(2)).symbol()).isSameAs(x);
+        assertThat(((IdentifierToken) tokens.get(6)).symbol()).isSameAs(x);
+        assertThat(symbols.size()).isEqualTo(2);
+    }
+}
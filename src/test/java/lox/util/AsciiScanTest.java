@@ -0,0 +1,74 @@
+package lox.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.Test;
+
+class AsciiScanTest {
+
+  private static final String ALPHABET = "aZz_09 \t\r\n\"/.;@`{[é€";
+
+  @Test
+  void runsEndAtTheFirstUnitOutsideThem() {
+    var random = new Random(42);
+    for (int n = 0; n < 2000; n++) {
+      var text = randomText(random, random.nextInt(200));
+      var chars = text.toCharArray();
+      var utf8 = text.getBytes(StandardCharsets.UTF_8);
+      var bytes = MemorySegment.ofArray(utf8);
+
+      for (int from = 0; from <= chars.length; from += 1 + random.nextInt(8)) {
+        int end = chars.length;
+        assertThat(AsciiScan.skipBlanks(chars, from, end)).isEqualTo(runEnd(chars, from, AsciiScan::isBlank));
+        assertThat(AsciiScan.skipWord(chars, from, end)).isEqualTo(runEnd(chars, from, AsciiScan::isWord));
+        assertThat(AsciiScan.skipDigits(chars, from, end)).isEqualTo(runEnd(chars, from, AsciiScan::isDigit));
+        assertThat(AsciiScan.indexOf(chars, from, end, '"')).isEqualTo(runEnd(chars, from, c -> c != '"'));
+      }
+
+      for (int from = 0; from <= utf8.length; from += 1 + random.nextInt(8)) {
+        long end = utf8.length;
+        assertThat(AsciiScan.skipBlanks(bytes, from, end)).isEqualTo(runEnd(utf8, from, AsciiScan::isBlank));
+        assertThat(AsciiScan.skipWord(bytes, from, end)).isEqualTo(runEnd(utf8, from, AsciiScan::isWord));
+        assertThat(AsciiScan.skipDigits(bytes, from, end)).isEqualTo(runEnd(utf8, from, AsciiScan::isDigit));
+        assertThat(AsciiScan.indexOf(bytes, from, end, '\n')).isEqualTo(runEnd(utf8, from, c -> c != '\n'));
+      }
+    }
+  }
+
+  @Test
+  void runsStopAtNonAscii() {
+    var chars = "abc_1é2".toCharArray();
+    assertThat(AsciiScan.skipWord(chars, 0, chars.length)).isEqualTo(5);
+    var bytes = MemorySegment.ofArray("abc_1é2".getBytes(StandardCharsets.UTF_8));
+    assertThat(AsciiScan.skipWord(bytes, 0, bytes.byteSize())).isEqualTo(5);
+  }
+
+  private static int runEnd(char[] in, int from, IntPredicate inRun) {
+    while (from < in.length && inRun.test(in[from])) {
+      ++from;
+    }
+    return from;
+  }
+
+  private static long runEnd(byte[] in, int from, IntPredicate inRun) {
+    while (from < in.length && inRun.test(in[from])) {
+      ++from;
+    }
+    return from;
+  }
+
+  // long runs of each class as well as short ones
+  private static String randomText(Random random, int runs) {
+    var sb = new StringBuilder();
+    for (int i = 0; i < runs; i++) {
+      var c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+      sb.append(String.valueOf(c).repeat(1 + random.nextInt(random.nextBoolean() ? 3 : 70)));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,125 @@
+package lox.vm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lox.Source;
+import lox.eval.ConstantFolder;
+import lox.eval.EvaluationResult;
+import lox.eval.Interpreter;
+import lox.eval.Resolver;
+import lox.eval.UndefinedVarException;
+import lox.parse.Parser;
+import lox.token.SymbolTable;
+
+class VirtualMachineTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final ConstantFolder folder = new ConstantFolder();
+    private final Resolver resolver = new Resolver();
+    private final VirtualMachine vm = new VirtualMachine();
+
+    private List<Chunk> compile(String source, BytecodeCompiler compiler) {
+        var chunks = new ArrayList<Chunk>();
+        for (var ast : new Parser(Source.of(source), false, symbols).parse().success()) {
+            var statement = folder.fold(ast);
+            resolver.resolve(statement);
+            chunks.add(compiler.compile(statement));
+        }
+        return chunks;
+    }
+
+    // the value of the last statement
+    private EvaluationResult<?> run(String source, BytecodeCompiler compiler) {
+        EvaluationResult<?> result = null;
+        for (var chunk : compile(source, compiler)) {
+            result = vm.execute(chunk);
+        }
+        return result;
+    }
+
+    @Test
+    void shouldRunLoopsOverLocals() {
+        var result = run("var s = 0; { var i = 0; while (i < 10) { var t = i * 2; s = s + t; i = i + 1; } } s;",
+                new BytecodeCompiler());
+
+        assertThat(result.value()).isEqualTo(90.0);
+    }
+
+    @Test
+    void shouldGiveTheValueOfTheStatementRunLast() {
+        assertThat(run("{ 1; 2; }", new BytecodeCompiler()).value()).isEqualTo(2.0);
+        assertThat(run("if (true) { \"a\"; } else 2;", new BytecodeCompiler()).value()).isEqualTo("a");
+        assertThat(run("{ 1; print 2; }", new BytecodeCompiler())).isNull();
+        assertThat(run("var a = 1; while (a < 3) a = a + 1;", new BytecodeCompiler())).isNull();
+    }
+
+    @Test
+    void shouldRunTheSameWithWideOperands() {
+        var source = "var a = 1; var b = \"x\"; { var c = a + 2; b = b + \"y\"; while (c < 5) c = c + 1; a = c; } "
+                + "a == 5 and b == \"xy\" or nil;";
+
+        assertThat(run(source, new BytecodeCompiler(true)).value()).isEqualTo(true);
+        assertThat(Disassembler.disassemble(compile("a = a + 1;", new BytecodeCompiler(true)).get(0)))
+                .startsWith("0000 WIDE GET_GLOBAL 0 'a'\n");
+    }
+
+    @Test
+    void shouldJumpFurtherThanTwoBytesReach() {
+        var body = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            body.append("n = n + 1; ");
+        }
+        var chunks = compile("var n = 0; var i = 0; while (i < 2) { " + body + "i = i + 1; }",
+                new BytecodeCompiler());
+
+        assertThat(chunks.get(2).size()).isGreaterThan(0xffff);
+        assertThat(Disassembler.disassemble(chunks.get(2))).contains("WIDE LOOP");
+        chunks.forEach(vm::execute);
+        assertThat(run("n;", new BytecodeCompiler()).value()).isEqualTo(20_000.0);
+    }
+
+    @Test
+    void shouldNameTheUndefinedGlobal() {
+        var chunks = compile("var a = x; print a;", new BytecodeCompiler());
+
+        assertThatThrownBy(() -> vm.execute(chunks.get(0))).isInstanceOf(UndefinedVarException.class)
+                .hasMessage("Undefined variable 'x'.");
+        // declared, but never defined
+        assertThatThrownBy(() -> vm.execute(chunks.get(1))).isInstanceOf(UndefinedVarException.class)
+                .hasMessage("Undefined variable 'a'.");
+    }
+
+    @Test
+    void shouldFailLikeTheInterpreter() {
+        var tree = new Interpreter(false).evaluate("print -\"a\";");
+        var vm = new Interpreter(false, Interpreter.Engine.VM).evaluate("print -\"a\";");
+
+        assertThat(vm.error().get(0).getMessage()).isEqualTo(tree.error().get(0).getMessage());
+        assertThat(vm.error().get(0).getMessage()).isEqualTo("invalid operation - for a");
+    }
+
+    @Test
+    void shouldDisassemble() {
+        var chunk = compile("var a = 1; { var b = a; if (b < 2 or false) print \"lo\"; }", new BytecodeCompiler()).get(1);
+
+        assertThat(Disassembler.disassemble(chunk)).isEqualTo("""
+                0000 GET_GLOBAL 0 'a'
+                0003 DEFINE_LOCAL 0
+                0006 GET_LOCAL 0
+                0009 NUMBER 0 '2'
+                0012 LESS
+                0013 OR 1 -> 0017
+                0016 FALSE
+                0017 JUMP_IF_FALSE 4 -> 0024
+                0020 STRING 0 'lo'
+                0023 PRINT
+                0024 RETURN
+                """);
+    }
+}